@@ -0,0 +1,448 @@
+package net.waterfallflower.fscriptrenewed.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>ExtensionProcessor - generates the dispatch class of each class with
+ * FSFunction or FSVariable members</p>
+ * <p>
+ * For a library class X it writes XDispatch in the same package: an
+ * extension finding names through a switch (name to index) and calling the
+ * members directly, converting values the way FSAnnotatedExtension does at
+ * run time. Its extensions() are the LibFunctionExtension and
+ * LibVarExtension objects to plug into an FSFastExtension, as EnumCoreLibs
+ * does. Members must be public; a library with instance members gets its
+ * object passed to the constructor of the dispatch class.</p>
+ * <p>
+ * The processor only knows the FScript classes by name, so this module
+ * does not depend on the one it is used by.</p>
+ */
+@SupportedAnnotationTypes({ExtensionProcessor.FUNCTION, ExtensionProcessor.VARIABLE})
+public class ExtensionProcessor extends AbstractProcessor {
+    static final String FUNCTION = "murlen.util.fscript.api.FSFunction";
+    static final String VARIABLE = "murlen.util.fscript.api.FSVariable";
+
+    private static final String EXCEPTION = "murlen.util.fscript.FSException";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        LinkedHashMap<TypeElement, Library> libraries = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations) {
+            for (Element member : round.getElementsAnnotatedWith(annotation)) {
+                TypeElement owner = (TypeElement) member.getEnclosingElement();
+                Library library = libraries.get(owner);
+                if (library == null)
+                    libraries.put(owner, library = new Library(owner));
+                library.add(annotation.getQualifiedName().toString(), member);
+            }
+        }
+        for (Library library : libraries.values()) {
+            if (library.valid)
+                library.generate();
+        }
+        return true;
+    }
+
+    private void error(String msg, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element);
+    }
+
+    //the value of the annotation, or the name of the member when empty
+    private static String name(Element member, String annotation) {
+        for (AnnotationMirror mirror : member.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(annotation))
+                continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet()) {
+                if (e.getKey().getSimpleName().contentEquals("value") && !e.getValue().getValue().toString().isEmpty())
+                    return e.getValue().getValue().toString();
+            }
+        }
+        return member.getSimpleName().toString();
+    }
+
+    private static String literal(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\')
+                b.append('\\').append(c);
+            else if (c < ' ' || c > '~')
+                b.append(String.format("\\u%04x", (int) c));
+            else
+                b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    private final class Library {
+        final TypeElement type;
+        final List<ExecutableElement> functions = new ArrayList<>();
+        final List<String> functionNames = new ArrayList<>();
+        final LinkedHashMap<String, Variable> variables = new LinkedHashMap<>();
+        boolean needsInstance;
+        boolean valid = true;
+
+        Library(TypeElement type) {
+            this.type = type;
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                error("FScript library must not be private", type);
+                valid = false;
+            }
+        }
+
+        void add(String annotation, Element member) {
+            if (!member.getModifiers().contains(Modifier.PUBLIC)) {
+                error("FScript library member must be public", member);
+                valid = false;
+                return;
+            }
+            if (!member.getModifiers().contains(Modifier.STATIC))
+                needsInstance = true;
+            if (annotation.equals(FUNCTION)) {
+                String name = name(member, FUNCTION);
+                if (functionNames.contains(name)) {
+                    error("duplicate FScript function " + name, member);
+                    valid = false;
+                }
+                functions.add((ExecutableElement) member);
+                functionNames.add(name);
+                return;
+            }
+            String name = name(member, VARIABLE);
+            Variable variable = variables.get(name);
+            if (variable == null)
+                variables.put(name, variable = new Variable(name));
+            if (member.getKind() == ElementKind.FIELD) {
+                if (variable.getter != null || variable.setter != null) {
+                    error("duplicate FScript variable " + name, member);
+                    valid = false;
+                }
+                variable.getter = member;
+                if (!member.getModifiers().contains(Modifier.FINAL))
+                    variable.setter = member;
+            } else if (((ExecutableElement) member).getParameters().isEmpty()) {
+                if (variable.getter != null) {
+                    error("duplicate FScript variable " + name, member);
+                    valid = false;
+                }
+                variable.getter = member;
+            } else if (((ExecutableElement) member).getParameters().size() == 1) {
+                if (variable.setter != null) {
+                    error("duplicate FScript variable " + name, member);
+                    valid = false;
+                }
+                variable.setter = member;
+            } else {
+                error("FScript variable method takes more than one parameter", member);
+                valid = false;
+            }
+        }
+
+        void generate() {
+            String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+            String name = type.getSimpleName() + "Dispatch";
+            StringBuilder out = new StringBuilder();
+            if (!write(out, pkg, name))
+                return;
+            try (Writer w = processingEnv.getFiler().createSourceFile(pkg.isEmpty() ? name : pkg + "." + name, type).openWriter()) {
+                w.write(out.toString());
+            } catch (IOException e) {
+                error("cannot write " + name + ": " + e.getMessage(), type);
+            }
+        }
+
+        //false when a member turned out to be unsupported, its error is reported
+        private boolean write(StringBuilder out, String pkg, String name) {
+            String owner = type.getQualifiedName().toString();
+            if (!pkg.isEmpty())
+                out.append("package ").append(pkg).append(";\n\n");
+            out.append("import murlen.util.fscript.BasicExtension;\n")
+                    .append("import murlen.util.fscript.FSConvert;\n")
+                    .append("import murlen.util.fscript.FSException;\n")
+                    .append("import murlen.util.fscript.FSUnsupportedException;\n")
+                    .append("import murlen.util.fscript.Parser;\n")
+                    .append("import murlen.util.fscript.api.*;\n")
+                    .append("import net.waterfallflower.fscriptrenewed.api.LibFunctionExtension;\n")
+                    .append("import net.waterfallflower.fscriptrenewed.api.LibVarExtension;\n\n")
+                    .append("import java.util.ArrayList;\n")
+                    .append("import java.util.Arrays;\n")
+                    .append("import java.util.Collection;\n")
+                    .append("import java.util.Collections;\n")
+                    .append("import java.util.List;\n\n");
+            out.append("/**\n * <p>").append(name).append(" - the FScript functions and variables of ")
+                    .append(type.getSimpleName()).append(", generated by ExtensionProcessor</p>\n */\n");
+            out.append("public final class ").append(name)
+                    .append(" extends BasicExtension implements FSNamedExtension, FSFunctionProvider {\n");
+            out.append("    private static final List<String> FUNCTION_NAMES = names(");
+            list(out, functionNames);
+            out.append(");\n    private static final List<String> VAR_NAMES = names(");
+            list(out, new ArrayList<>(variables.keySet()));
+            out.append(");\n\n");
+            if (needsInstance)
+                out.append("    private final ").append(owner).append(" library;\n");
+            out.append("    private final LibFunctionExtension[] functions;\n")
+                    .append("    private final LibVarExtension[] variables;\n\n");
+
+            if (needsInstance)
+                out.append("    public ").append(name).append("(").append(owner).append(" library) {\n")
+                        .append("        this.library = library;\n");
+            else
+                out.append("    public ").append(name).append("() {\n");
+            out.append("        functions = new LibFunctionExtension[]{");
+            for (int n = 0; n < functions.size(); n++)
+                out.append(n > 0 ? ", " : "").append("new Function").append(n).append("()");
+            out.append("};\n        variables = new LibVarExtension[]{");
+            for (int n = 0; n < variables.size(); n++)
+                out.append(n > 0 ? ", " : "").append("new Variable").append(n).append("()");
+            out.append("};\n    }\n\n");
+
+            out.append("    /**\n     * @return the functions and variables, to plug into an FSFastExtension\n     */\n")
+                    .append("    public Object[] extensions() {\n")
+                    .append("        ArrayList<Object> all = new ArrayList<>(Arrays.asList(functions));\n")
+                    .append("        all.addAll(Arrays.asList(variables));\n")
+                    .append("        return all.toArray();\n    }\n\n");
+
+            out.append("    private static List<String> names(String... names) {\n")
+                    .append("        return Collections.unmodifiableList(Arrays.asList(names));\n    }\n\n");
+            index(out, "functionIndex", functionNames);
+            index(out, "varIndex", new ArrayList<>(variables.keySet()));
+
+            out.append("    @Override\n    public Collection<String> getVarNames() {\n        return VAR_NAMES;\n    }\n\n")
+                    .append("    @Override\n    public Collection<String> getArrayNames() {\n        return Collections.emptyList();\n    }\n\n")
+                    .append("    @Override\n    public Collection<String> getFunctionNames() {\n        return FUNCTION_NAMES;\n    }\n\n")
+                    .append("    @Override\n    public FSFunctionExtension getFunction(String name) {\n")
+                    .append("        int n = functionIndex(name);\n")
+                    .append("        return (n < 0) ? null : functions[n];\n    }\n\n")
+                    .append("    @Override\n    public Object callFunction(String name, ArrayList<Object> params) throws FSException {\n")
+                    .append("        int n = functionIndex(name);\n")
+                    .append("        if (n < 0)\n            throw FSUnsupportedException.UNSUPPORTED;\n")
+                    .append("        return functions[n].callFunction(name, params);\n    }\n\n")
+                    .append("    @Override\n    public Object getVar(String name) throws FSException {\n")
+                    .append("        int n = varIndex(name);\n")
+                    .append("        if (n < 0)\n            throw FSUnsupportedException.UNSUPPORTED;\n")
+                    .append("        return variables[n].getVar(name);\n    }\n\n")
+                    .append("    @Override\n    public void setVar(String name, Object value) throws FSException {\n")
+                    .append("        int n = varIndex(name);\n")
+                    .append("        if (n < 0)\n            throw FSUnsupportedException.UNSUPPORTED;\n")
+                    .append("        variables[n].setVar(name, value);\n    }\n");
+
+            for (int n = 0; n < functions.size(); n++)
+                function(out, n, functions.get(n), functionNames.get(n));
+            int n = 0;
+            for (Variable variable : variables.values())
+                variable(out, n++, variable);
+            out.append("}\n");
+            return valid;
+        }
+
+        private void list(StringBuilder out, List<String> names) {
+            for (int n = 0; n < names.size(); n++)
+                out.append(n > 0 ? ", " : "").append(literal(names.get(n)));
+        }
+
+        private void index(StringBuilder out, String method, List<String> names) {
+            out.append("    private static int ").append(method).append("(String name) {\n")
+                    .append("        switch (name) {\n");
+            for (int n = 0; n < names.size(); n++)
+                out.append("            case ").append(literal(names.get(n))).append(": return ").append(n).append(";\n");
+            out.append("            default: return -1;\n        }\n    }\n\n");
+        }
+
+        private void function(StringBuilder out, int index, ExecutableElement method, String name) {
+            List<? extends VariableElement> params = method.getParameters();
+            boolean varArgs = method.isVarArgs() && params.size() == 1
+                    && params.get(0).asType().toString().equals("java.lang.Object[]");
+            String iface;
+            String signature;
+            if (varArgs || params.size() > 2) {
+                iface = "FSFunctionN";
+                signature = "call(Object... args)";
+            } else {
+                iface = "FSFunction" + params.size();
+                signature = "call" + params.size() + "(" + (params.isEmpty() ? "" : params.size() == 1 ? "Object a0" : "Object a0, Object a1") + ")";
+            }
+            out.append("\n    private final class Function").append(index).append(" implements LibFunctionExtension, ").append(iface).append(" {\n")
+                    .append("        public String getName() {\n            return ").append(literal(name)).append(";\n        }\n\n")
+                    .append("        public Object ").append(signature).append(" throws FSException {\n");
+            StringBuilder args = new StringBuilder();
+            if (varArgs) {
+                args.append("args");
+            } else {
+                if (params.size() > 2)
+                    out.append("            if (args.length != ").append(params.size()).append(")\n")
+                            .append("                throw new FSException(\"Wrong amount of arguments, func -> ").append(name.replace("\\", "\\\\").replace("\"", "\\\""))
+                            .append(" expected ").append(params.size()).append(" found \" + args.length);\n");
+                for (int n = 0; n < params.size(); n++)
+                    args.append(n > 0 ? ", " : "").append(argument(params.get(n), params.get(n).asType(), (params.size() > 2) ? "args[" + n + "]" : "a" + n));
+            }
+            String call = receiver(method) + "." + method.getSimpleName() + "(" + args + ")";
+            boolean wrap = throwsChecked(method);
+            String indent = wrap ? "                " : "            ";
+            if (wrap)
+                out.append("            try {\n");
+            if (method.getReturnType().getKind() == TypeKind.VOID)
+                out.append(indent).append(call).append(";\n").append(indent).append("return Parser.FS_TRUE;\n");
+            else
+                out.append(indent).append("return ").append(result(method.getReturnType(), call)).append(";\n");
+            if (wrap)
+                rethrow(out);
+            out.append("        }\n    }\n");
+        }
+
+        private void variable(StringBuilder out, int index, Variable variable) {
+            out.append("\n    private final class Variable").append(index).append(" implements LibVarExtension {\n")
+                    .append("        public String getName() {\n            return ").append(literal(variable.name)).append(";\n        }\n\n")
+                    .append("        public Object getVar(String name) throws FSException {\n");
+            if (variable.getter == null) {
+                out.append("            throw FSUnsupportedException.UNSUPPORTED;\n");
+            } else if (variable.getter.getKind() == ElementKind.FIELD) {
+                out.append("            return ").append(result(variable.getter.asType(), receiver(variable.getter) + "." + variable.getter.getSimpleName())).append(";\n");
+            } else {
+                ExecutableElement getter = (ExecutableElement) variable.getter;
+                accessor(out, getter, "return " + result(getter.getReturnType(), receiver(getter) + "." + getter.getSimpleName() + "()"));
+            }
+            out.append("        }\n\n        public void setVar(String name, Object value) throws FSException {\n");
+            if (variable.setter == null) {
+                out.append("            throw new FSException(\"Cannot set constant value \\\"\" + name + \"\\\"\");\n");
+            } else if (variable.setter.getKind() == ElementKind.FIELD) {
+                out.append("            ").append(receiver(variable.setter)).append(".").append(variable.setter.getSimpleName())
+                        .append(" = ").append(argument(variable.setter, variable.setter.asType(), "value")).append(";\n");
+            } else {
+                ExecutableElement setter = (ExecutableElement) variable.setter;
+                VariableElement param = setter.getParameters().get(0);
+                accessor(out, setter, receiver(setter) + "." + setter.getSimpleName() + "(" + argument(param, param.asType(), "value") + ")");
+            }
+            out.append("        }\n    }\n");
+        }
+
+        private void accessor(StringBuilder out, ExecutableElement method, String statement) {
+            if (!throwsChecked(method)) {
+                out.append("            ").append(statement).append(";\n");
+                return;
+            }
+            out.append("            try {\n                ").append(statement).append(";\n");
+            rethrow(out);
+        }
+
+        //closes a try block, checked exceptions other than FSException become one
+        private void rethrow(StringBuilder out) {
+            out.append("            } catch (RuntimeException e) {\n                throw e;\n")
+                    .append("            } catch (Exception e) {\n")
+                    .append("                throw (e instanceof FSException) ? (FSException) e : new FSException(e.getMessage());\n")
+                    .append("            }\n");
+        }
+
+        private String receiver(Element member) {
+            return member.getModifiers().contains(Modifier.STATIC) ? type.getQualifiedName().toString() : "library";
+        }
+
+        //whether calling the method may throw a checked exception other than an FSException
+        private boolean throwsChecked(ExecutableElement method) {
+            TypeElement fsException = processingEnv.getElementUtils().getTypeElement(EXCEPTION);
+            TypeElement runtime = processingEnv.getElementUtils().getTypeElement(RuntimeException.class.getName());
+            TypeElement error = processingEnv.getElementUtils().getTypeElement(Error.class.getName());
+            for (TypeMirror thrown : method.getThrownTypes()) {
+                if (fsException != null && processingEnv.getTypeUtils().isAssignable(thrown, fsException.asType()))
+                    continue;
+                if (processingEnv.getTypeUtils().isAssignable(thrown, runtime.asType())
+                        || processingEnv.getTypeUtils().isAssignable(thrown, error.asType()))
+                    continue;
+                return true;
+            }
+            return false;
+        }
+
+        //converts a script value to the type of a parameter or field
+        private String argument(Element element, TypeMirror type, String value) {
+            switch (type.getKind()) {
+                case INT:
+                    return "FSConvert.toInt(" + value + ")";
+                case LONG:
+                    return "FSConvert.toLong(" + value + ")";
+                case DOUBLE:
+                    return "FSConvert.toDouble(" + value + ")";
+                case BOOLEAN:
+                    return "FSConvert.toBoolean(" + value + ")";
+                case DECLARED:
+                case ARRAY:
+                    break;
+                default:
+                    error("unsupported FScript parameter type " + type, element);
+                    valid = false;
+                    return value;
+            }
+            String erased = processingEnv.getTypeUtils().erasure(type).toString();
+            switch (erased) {
+                case "java.lang.Integer":
+                    return "FSConvert.toInt(" + value + ")";
+                case "java.lang.Long":
+                    return "FSConvert.toLong(" + value + ")";
+                case "java.lang.Double":
+                    return "FSConvert.toDouble(" + value + ")";
+                case "java.lang.Boolean":
+                    return "FSConvert.toBoolean(" + value + ")";
+                case "java.lang.String":
+                    return "FSConvert.toString(" + value + ")";
+                case "java.lang.Object":
+                    return value;
+                default:
+                    return "(" + erased + ") " + value;
+            }
+        }
+
+        //converts a result to a script value
+        private String result(TypeMirror type, String value) {
+            switch (type.getKind()) {
+                case INT:
+                case LONG:
+                case SHORT:
+                case BYTE:
+                    return "FSConvert.fromLong(" + value + ")";
+                case DOUBLE:
+                case FLOAT:
+                    return "Double.valueOf(" + value + ")";
+                case BOOLEAN:
+                    return "FSConvert.fromBoolean(" + value + ")";
+                case CHAR:
+                    return "FSConvert.fromChar(" + value + ")";
+                default:
+                    return value;
+            }
+        }
+    }
+
+    private static final class Variable {
+        final String name;
+        Element getter; //field or method
+        Element setter;
+
+        Variable(String name) {
+            this.name = name;
+        }
+    }
+}
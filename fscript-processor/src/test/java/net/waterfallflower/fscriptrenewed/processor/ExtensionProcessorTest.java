@@ -0,0 +1,114 @@
+package net.waterfallflower.fscriptrenewed.processor;
+
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Libraries the processor accepts or refuses. This module does not see
+ * the FScript classes, so the annotations are compiled along with each
+ * library; the generated classes themselves are tested where they are
+ * used.
+ */
+public class ExtensionProcessorTest {
+
+    private static final String FUNCTION = "package murlen.util.fscript.api;\n"
+            + "public @interface FSFunction { String value() default \"\"; }\n";
+
+    private static final class Source extends SimpleJavaFileObject {
+        final String code;
+
+        Source(String name, String code) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    //compiles the library, returns the errors reported
+    private static List<String> compile(Path out, String library) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> errors = new ArrayList<>();
+        try (StandardJavaFileManager files = javac.getStandardFileManager(diagnostics, null, null)) {
+            files.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(out.toFile()));
+            files.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(out.toFile()));
+            JavaCompiler.CompilationTask task = javac.getTask(null, files, diagnostics, Collections.singletonList("-proc:only"), null,
+                    Arrays.asList(new Source("murlen.util.fscript.api.FSFunction", FUNCTION), new Source("lib.Lib", library)));
+            task.setProcessors(Collections.singletonList(new ExtensionProcessor()));
+            task.call();
+        }
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR)
+                errors.add(d.getMessage(null));
+        }
+        return errors;
+    }
+
+    private static boolean generated(Path out) {
+        return new File(out.toFile(), "lib/LibDispatch.java").exists();
+    }
+
+    @Test
+    public void unsupportedParameterType() throws IOException {
+        Path out = Files.createTempDirectory("processor");
+        List<String> errors = compile(out, "package lib;\n"
+                + "public class Lib {\n"
+                + "    @murlen.util.fscript.api.FSFunction public static int f(float a) { return 0; }\n"
+                + "    @murlen.util.fscript.api.FSFunction public static int g(int a) { return a; }\n"
+                + "}\n");
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("unsupported FScript parameter type float"));
+        assertFalse(generated(out));
+    }
+
+    @Test
+    public void nonPublicAndDuplicateMembers() throws IOException {
+        Path out = Files.createTempDirectory("processor");
+        List<String> errors = compile(out, "package lib;\n"
+                + "public class Lib {\n"
+                + "    @murlen.util.fscript.api.FSFunction static int f() { return 0; }\n"
+                + "    @murlen.util.fscript.api.FSFunction(\"h\") public static int g() { return 0; }\n"
+                + "    @murlen.util.fscript.api.FSFunction public static int h() { return 0; }\n"
+                + "}\n");
+        assertEquals(errors.toString(), 2, errors.size());
+        assertFalse(generated(out));
+    }
+
+    @Test
+    public void writesValidLibrary() throws IOException {
+        Path out = Files.createTempDirectory("processor");
+        List<String> errors = compile(out, "package lib;\n"
+                + "public class Lib {\n"
+                + "    @murlen.util.fscript.api.FSFunction public static int f(int a, String b) { return a; }\n"
+                + "}\n");
+        //the generated class does not compile here, the FScript classes are missing
+        for (String error : errors)
+            assertFalse(error, error.contains("FScript"));
+        assertTrue(generated(out));
+    }
+}
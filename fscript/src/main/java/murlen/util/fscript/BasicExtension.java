@@ -30,27 +30,27 @@ public abstract class BasicExtension implements FSExtension {
 
     @Override
     public Object callFunction(String name, ArrayList<Object> params) throws FSException {
-        throw new FSUnsupportedException(name);
+        throw FSUnsupportedException.UNSUPPORTED;
     }
 
     @Override
     public Object getVar(String name) throws FSException {
-        throw new FSUnsupportedException(name);
+        throw FSUnsupportedException.UNSUPPORTED;
     }
 
     @Override
     public void setVar(String name, Object value) throws FSException {
-        throw new FSUnsupportedException(name);
+        throw FSUnsupportedException.UNSUPPORTED;
     }
 
     @Override
     public Object getVar(String name, Object index) throws FSException {
-        throw new FSUnsupportedException(name);
+        throw FSUnsupportedException.UNSUPPORTED;
     }
 
     @Override
     public void setVar(String name, Object index, Object value) throws FSException {
-        throw new FSUnsupportedException(name);
+        throw FSUnsupportedException.UNSUPPORTED;
     }
     
 }
@@ -0,0 +1,354 @@
+package murlen.util.fscript;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <p>ClassFile - writes a JVM class file</p>
+ * <p>
+ * Only what JavaGen needs is supported: a class with methods, a constant
+ * pool of names, strings and numbers, and the instructions listed below.
+ * Classes are written as version 49 (Java 5) class files, which are
+ * checked by the type inferencing verifier, so no stack map frames have
+ * to be computed.</p>
+ */
+final class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    //instructions
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int SWAP = 0x5f;
+    static final int IADD = 0x60;
+    static final int DADD = 0x63;
+    static final int ISUB = 0x64;
+    static final int DSUB = 0x67;
+    static final int IMUL = 0x68;
+    static final int DMUL = 0x6b;
+    static final int IDIV = 0x6c;
+    static final int DDIV = 0x6f;
+    static final int IREM = 0x70;
+    static final int INEG = 0x74;
+    static final int DNEG = 0x77;
+    static final int I2D = 0x87;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+
+    //constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD = 9;
+    private static final int METHOD = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+    private final int thisClass;
+    private final int superClass;
+    private final ArrayList<Method> methods = new ArrayList<>();
+
+    /**
+     * @param name - internal name of the class, e.g. a/b/C
+     * @param superName - internal name of its super class
+     */
+    ClassFile(String name, String superName) throws IOException {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /**
+     * Adds a method, its code is then written to the returned Method
+     */
+    Method method(int access, String name, String desc) throws IOException {
+        Method m = new Method(access, utf8(name), utf8(desc));
+        methods.add(m);
+        return m;
+    }
+
+    byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int codeName = utf8("Code");
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); //interfaces
+        out.writeShort(0); //fields
+        out.writeShort(methods.size());
+        for (Method m : methods)
+            m.write(out, codeName);
+        out.writeShort(0); //attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    //constant pool entries, equal entries are shared
+
+    int utf8(String s) throws IOException {
+        Integer n = poolIndex.get("U" + s);
+        if (n != null) return n;
+        poolOut.writeByte(UTF8);
+        poolOut.writeUTF(s);
+        return add("U" + s, 1);
+    }
+
+    int classRef(String name) throws IOException {
+        Integer n = poolIndex.get("C" + name);
+        if (n != null) return n;
+        int utf = utf8(name);
+        poolOut.writeByte(CLASS);
+        poolOut.writeShort(utf);
+        return add("C" + name, 1);
+    }
+
+    int string(String s) throws IOException {
+        Integer n = poolIndex.get("S" + s);
+        if (n != null) return n;
+        int utf = utf8(s);
+        poolOut.writeByte(STRING);
+        poolOut.writeShort(utf);
+        return add("S" + s, 1);
+    }
+
+    int integer(int i) throws IOException {
+        Integer n = poolIndex.get("I" + i);
+        if (n != null) return n;
+        poolOut.writeByte(INTEGER);
+        poolOut.writeInt(i);
+        return add("I" + i, 1);
+    }
+
+    int doubleConst(double d) throws IOException {
+        String key = "D" + Double.doubleToRawLongBits(d);
+        Integer n = poolIndex.get(key);
+        if (n != null) return n;
+        poolOut.writeByte(DOUBLE);
+        poolOut.writeDouble(d);
+        return add(key, 2);
+    }
+
+    int fieldRef(String owner, String name, String desc) throws IOException {
+        return memberRef(FIELD, owner, name, desc);
+    }
+
+    int methodRef(String owner, String name, String desc) throws IOException {
+        return memberRef(METHOD, owner, name, desc);
+    }
+
+    private int memberRef(int tag, String owner, String name, String desc) throws IOException {
+        String key = tag + owner + '.' + name + desc;
+        Integer n = poolIndex.get(key);
+        if (n != null) return n;
+        int cls = classRef(owner);
+        int nameAndType = nameAndType(name, desc);
+        poolOut.writeByte(tag);
+        poolOut.writeShort(cls);
+        poolOut.writeShort(nameAndType);
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String desc) throws IOException {
+        String key = "N" + name + ' ' + desc;
+        Integer n = poolIndex.get(key);
+        if (n != null) return n;
+        int nameIndex = utf8(name);
+        int descIndex = utf8(desc);
+        poolOut.writeByte(NAME_AND_TYPE);
+        poolOut.writeShort(nameIndex);
+        poolOut.writeShort(descIndex);
+        return add(key, 1);
+    }
+
+    private int add(String key, int slots) {
+        int n = poolSize;
+        poolSize += slots;
+        if (poolSize > 0xffff)
+            throw new IllegalStateException("constant pool too large");
+        poolIndex.put(key, n);
+        return n;
+    }
+
+    /**
+     * The code of a method. Branches go to labels, which are numbered from
+     * 0 and placed with mark(), the offsets are filled in by write().
+     */
+    final class Method {
+        private final int access;
+        private final int name;
+        private final int desc;
+        private byte[] code = new byte[256];
+        private int length;
+        private int[] labels = new int[16]; //code offset of each label, -1 until placed
+        private int labelCount;
+        private int[] fixups = new int[32]; //branch offset, label pairs
+        private int fixupCount;
+        int maxStack;
+        int maxLocals;
+
+        private Method(int access, int name, int desc) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        void op(int op) {
+            u1(op);
+        }
+
+        void op(int op, int operand) {
+            u1(op);
+            u1(operand);
+        }
+
+        //pushes an int constant with the shortest instruction
+        void push(int i) throws IOException {
+            if (i >= -1 && i <= 5) {
+                u1(ICONST_0 + i);
+            } else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+                op(BIPUSH, i & 0xff);
+            } else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(i);
+            } else {
+                u1(LDC_W);
+                u2(integer(i));
+            }
+        }
+
+        void push(double d) throws IOException {
+            u1(LDC2_W);
+            u2(doubleConst(d));
+        }
+
+        void push(String s) throws IOException {
+            u1(LDC_W);
+            u2(string(s));
+        }
+
+        void aload(int local) {
+            op(ALOAD, local);
+        }
+
+        void astore(int local) {
+            op(ASTORE, local);
+        }
+
+        //new, checkcast
+        void type(int op, String cls) throws IOException {
+            u1(op);
+            u2(classRef(cls));
+        }
+
+        void field(int op, String owner, String name, String desc) throws IOException {
+            u1(op);
+            u2(fieldRef(owner, name, desc));
+        }
+
+        void invoke(int op, String owner, String name, String desc) throws IOException {
+            u1(op);
+            u2(methodRef(owner, name, desc));
+        }
+
+        int newLabel() {
+            if (labelCount == labels.length) labels = Arrays.copyOf(labels, labelCount * 2);
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labels[label] = length;
+        }
+
+        //goto or a conditional branch
+        void jump(int op, int label) {
+            if (fixupCount + 2 > fixups.length) fixups = Arrays.copyOf(fixups, fixups.length * 2);
+            fixups[fixupCount++] = length;
+            fixups[fixupCount++] = label;
+            u1(op);
+            u2(0);
+        }
+
+        private void u1(int b) {
+            if (length == code.length) code = Arrays.copyOf(code, length * 2);
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            for (int n = 0; n < fixupCount; n += 2) {
+                int at = fixups[n];
+                int offset = labels[fixups[n + 1]] - at;
+                if (labels[fixups[n + 1]] < 0 || offset != (short) offset)
+                    throw new IllegalStateException("branch out of range");
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+            if (length > 0xffff)
+                throw new IllegalStateException("method too large");
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(desc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0); //exception table
+            out.writeShort(0); //attributes
+        }
+    }
+}
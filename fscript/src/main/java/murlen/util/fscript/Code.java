@@ -0,0 +1,544 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>Code - compiled FScript bytecode and the loop that runs it</p>
+ * <p>
+ * A program is an int[] of instructions, each an opcode followed by its
+ * operands, plus a pool of constants (literals, names, messages and
+ * function entries) the operands refer to. Code is produced by CodeGen.</p>
+ * <p>
+ * Values of unknown type live on an Object stack. Expressions whose type
+ * is known when compiling use a stack of primitives instead (ints sign
+ * extended, doubles as their bits), and are only boxed by BOX_I/BOX_D when
+ * the value leaves the expression. Both stacks are empty between
+ * statements.</p>
+ * <p>
+ * The loop in run() only handles the primitive instructions and jumps.
+ * The instructions working on objects mostly call into the Parser anyway,
+ * they are left to objectOp() so that the loop stays small.</p>
+ * <p>
+ * The source line of every instruction is kept in a separate table. The
+ * current line is only passed on to the Parser by instructions which can
+ * fail or call out of the loop, where it may be seen in error messages.</p>
+ * <p>
+ * Instructions using host variables, arrays or functions refer to a
+ * HostSite of their own, which caches the extension handling the name.</p>
+ * <p>
+ * Code which is run often (a function called in a loop) is turned into a
+ * JVM class by JavaGen, which then runs instead. So is a while loop which
+ * iterates often, the class is entered at its next iteration and runs the
+ * loop to its end (on-stack replacement). The FScript sets how often is
+ * often.</p>
+ * <p>
+ * A Code may be run by several threads at once (see CompiledScript). The
+ * counters are then updated without locking, which at worst generates a
+ * class twice, the classes themselves are safe to share.</p>
+ */
+final class Code {
+    //opcodes, the operands follow the opcode in the code array
+    static final int ICONST = 1; //value
+    static final int ILOAD = 2; //local - declared int variable
+    static final int ISTORE = 3; //local - declared int variable
+    static final int IADD = 4;
+    static final int ISUB = 5;
+    static final int IMUL = 6;
+    static final int IDIV = 7;
+    static final int IMOD = 8;
+    static final int IEQ = 9;
+    static final int INE = 10;
+    static final int ILT = 11;
+    static final int ILE = 12;
+    static final int IGT = 13;
+    static final int IGE = 14;
+    static final int IAND = 15;
+    static final int IOR = 16;
+    static final int INEG = 17;
+    static final int INOT = 18;
+    static final int IJUMP_FALSE = 19; //target
+    static final int I2D = 20;
+    static final int BOX_I = 21;
+
+    static final int DCONST = 22; //k
+    static final int DLOAD = 23; //local - declared double variable
+    static final int DSTORE = 24; //local - declared double variable
+    static final int DADD = 25;
+    static final int DSUB = 26;
+    static final int DMUL = 27;
+    static final int DDIV = 28;
+    static final int DEQ = 29; //double comparisons push an int
+    static final int DNE = 30;
+    static final int DLT = 31;
+    static final int DLE = 32;
+    static final int DGT = 33;
+    static final int DGE = 34;
+    static final int DNEG = 35;
+    static final int BOX_D = 36;
+
+    static final int JUMP = 37; //target
+    static final int LOOP = 38; //target, loop - jump back to the start of a while loop
+    static final int ICALL = 57; //site k - pop int argument, push result
+    static final int DCALL = 58; //site k - pop double argument, push result
+
+    //run by objectOp()
+    static final int CONST = 39; //k - push constant
+    static final int NULL = 40; //push a new null FSObject
+    static final int LOAD = 41; //local, global, site k - push variable (or host variable)
+    static final int STORE = 42; //local, global, site k - pop into variable (or host variable)
+    static final int DEFINE = 43; //local, type, name k - declare a variable with its default value
+    static final int INIT = 44; //local, name k - pop into a just declared variable
+    static final int INDEX = 45; //site k - pop index, push host array entry
+    static final int STORE_INDEX = 46; //site k - pop value and index into host array entry
+    static final int CALL = 47; //site k, argc - pop arguments, push result
+    static final int POP = 48; //discard object
+    static final int NEG = 49; //unary minus
+    static final int NOT = 50; //unary not
+    static final int BINOP = 51; //op - binary operator on objects
+    static final int JUMP_FALSE = 52; //target, message k - pop condition, jump when false
+    static final int RETURN = 53; //pop return value
+    static final int FUNC = 54; //name k, entry k - define function
+    static final int ERROR = 55; //message k - raise a compile error
+    static final int END = 56; //end of code, no return value
+
+    //given back instead of a pc when the code is done
+    static final int RETURNED = -1;
+    static final int ENDED = -2;
+
+    final int[] code;
+    final int[] lines; //source line of each instruction
+    final Object[] consts;
+    final int maxObjects; //stack sizes needed
+    final int maxPrimitives;
+    private int runs;
+    private volatile JavaCode compiled; //this code as a class, once it got hot
+    private final int[] iterations; //per while loop
+    private final JavaCode[] loops; //while loops as classes, once they got hot
+
+    Code(int[] code, int[] lines, Object[] consts, int maxObjects, int maxPrimitives, int loopCount) {
+        this.code = code;
+        this.lines = lines;
+        this.consts = consts;
+        this.maxObjects = maxObjects;
+        this.maxPrimitives = maxPrimitives;
+        iterations = new int[loopCount];
+        loops = new JavaCode[loopCount];
+    }
+
+    //the Object stack of one run
+    private static final class Stack {
+        final Object[] items;
+        int top = -1;
+
+        Stack(int size) {
+            items = new Object[size];
+        }
+
+        void push(Object o) {
+            items[++top] = o;
+        }
+
+        Object pop() {
+            Object o = items[top];
+            items[top--] = null;
+            return o;
+        }
+    }
+
+    /**
+     * Runs the code in the scope of a parser
+     * @return true when a return statement was executed, the value
+     * returned is then left in Parser.retVal
+     */
+    boolean run(Parser p) throws IOException, FSException {
+        JavaCode compiled = this.compiled;
+        if (compiled == null && ++runs == p.getHost().getCallThreshold())
+            this.compiled = compiled = JavaGen.generate(this, 0, code.length);
+        if (compiled != null)
+            return compiled.run(p) == RETURNED;
+
+        final int[] code = this.code;
+        final Stack os = new Stack(maxObjects);
+        final long[] ps = new long[maxPrimitives];
+        int psp = -1;
+        int pc = 0;
+        //reloaded after anything calling out, which could grow the frame
+        Object[] locals = p.vars.values;
+
+        for (;;) {
+            int op = code[pc++];
+            switch (op) {
+                case ICONST:
+                    ps[++psp] = code[pc++];
+                    break;
+                case ILOAD:
+                    ps[++psp] = (Integer) locals[code[pc++]];
+                    break;
+                case ISTORE:
+                    locals[code[pc++]] = (int) ps[psp--];
+                    break;
+                case IADD:
+                    psp--;
+                    ps[psp] = (int) ps[psp] + (int) ps[psp + 1];
+                    break;
+                case ISUB:
+                    psp--;
+                    ps[psp] = (int) ps[psp] - (int) ps[psp + 1];
+                    break;
+                case IMUL:
+                    psp--;
+                    ps[psp] = (int) ps[psp] * (int) ps[psp + 1];
+                    break;
+                case IDIV:
+                    psp--;
+                    ps[psp] = (int) ps[psp] / (int) ps[psp + 1];
+                    break;
+                case IMOD:
+                    psp--;
+                    ps[psp] = (int) ps[psp] % (int) ps[psp + 1];
+                    break;
+                //ints are kept sign extended, so they compare as longs
+                case IEQ:
+                    psp--;
+                    ps[psp] = (ps[psp] == ps[psp + 1]) ? 1 : 0;
+                    break;
+                case INE:
+                    psp--;
+                    ps[psp] = (ps[psp] != ps[psp + 1]) ? 1 : 0;
+                    break;
+                case ILT:
+                    psp--;
+                    ps[psp] = (ps[psp] < ps[psp + 1]) ? 1 : 0;
+                    break;
+                case ILE:
+                    psp--;
+                    ps[psp] = (ps[psp] <= ps[psp + 1]) ? 1 : 0;
+                    break;
+                case IGT:
+                    psp--;
+                    ps[psp] = (ps[psp] > ps[psp + 1]) ? 1 : 0;
+                    break;
+                case IGE:
+                    psp--;
+                    ps[psp] = (ps[psp] >= ps[psp + 1]) ? 1 : 0;
+                    break;
+                case IAND:
+                    psp--;
+                    ps[psp] = (ps[psp] != 0 && ps[psp + 1] != 0) ? 1 : 0;
+                    break;
+                case IOR:
+                    psp--;
+                    ps[psp] = (ps[psp] != 0 || ps[psp + 1] != 0) ? 1 : 0;
+                    break;
+                case INEG:
+                    ps[psp] = -(int) ps[psp];
+                    break;
+                case INOT:
+                    ps[psp] = (ps[psp] == 0) ? 1 : 0;
+                    break;
+                case IJUMP_FALSE:
+                    if (ps[psp--] == 0)
+                        pc = code[pc];
+                    else
+                        pc++;
+                    break;
+                case I2D:
+                    ps[psp] = bits((int) ps[psp]);
+                    break;
+                case BOX_I:
+                    os.push((int) ps[psp--]);
+                    break;
+
+                case DCONST:
+                    ps[++psp] = bits((Double) consts[code[pc++]]);
+                    break;
+                case DLOAD:
+                    ps[++psp] = bits((Double) locals[code[pc++]]);
+                    break;
+                case DSTORE:
+                    locals[code[pc++]] = value(ps[psp--]);
+                    break;
+                case DADD:
+                    psp--;
+                    ps[psp] = bits(value(ps[psp]) + value(ps[psp + 1]));
+                    break;
+                case DSUB:
+                    psp--;
+                    ps[psp] = bits(value(ps[psp]) - value(ps[psp + 1]));
+                    break;
+                case DMUL:
+                    psp--;
+                    ps[psp] = bits(value(ps[psp]) * value(ps[psp + 1]));
+                    break;
+                case DDIV:
+                    psp--;
+                    ps[psp] = bits(value(ps[psp]) / value(ps[psp + 1]));
+                    break;
+                //== and != compare as Double.equals() does
+                case DEQ:
+                    psp--;
+                    ps[psp] = (Double.doubleToLongBits(value(ps[psp])) == Double.doubleToLongBits(value(ps[psp + 1]))) ? 1 : 0;
+                    break;
+                case DNE:
+                    psp--;
+                    ps[psp] = (Double.doubleToLongBits(value(ps[psp])) != Double.doubleToLongBits(value(ps[psp + 1]))) ? 1 : 0;
+                    break;
+                case DLT:
+                    psp--;
+                    ps[psp] = (value(ps[psp]) < value(ps[psp + 1])) ? 1 : 0;
+                    break;
+                case DLE:
+                    psp--;
+                    ps[psp] = (value(ps[psp]) <= value(ps[psp + 1])) ? 1 : 0;
+                    break;
+                case DGT:
+                    psp--;
+                    ps[psp] = (value(ps[psp]) > value(ps[psp + 1])) ? 1 : 0;
+                    break;
+                case DGE:
+                    psp--;
+                    ps[psp] = (value(ps[psp]) >= value(ps[psp + 1])) ? 1 : 0;
+                    break;
+                case DNEG:
+                    ps[psp] = bits(-value(ps[psp]));
+                    break;
+                case BOX_D:
+                    os.push(value(ps[psp--]));
+                    break;
+
+                //a host function of one int/double argument can take it unboxed
+                case ICALL:
+                    p.setLine(lines[pc - 1]);
+                    os.push(p.callFunction((HostSite) consts[code[pc++]], (int) ps[psp--]));
+                    locals = p.vars.values;
+                    break;
+                case DCALL:
+                    p.setLine(lines[pc - 1]);
+                    os.push(p.callFunction((HostSite) consts[code[pc++]], value(ps[psp--])));
+                    locals = p.vars.values;
+                    break;
+
+                case JUMP:
+                    pc = code[pc];
+                    break;
+                case LOOP:
+                    if (++iterations[code[pc + 1]] < p.getHost().getLoopThreshold()) {
+                        pc = code[pc];
+                        break;
+                    }
+                    pc = loop(p, pc);
+                    if (pc < 0)
+                        return pc == RETURNED;
+                    locals = p.vars.values;
+                    break;
+
+                default:
+                    pc = objectOp(op, pc, p, os);
+                    if (pc < 0)
+                        return pc == RETURNED;
+                    locals = p.vars.values;
+            }
+        }
+    }
+
+    /**
+     * Runs the rest of a hot while loop as a class
+     * @param pc - the position of the operands of its LOOP instruction
+     * @return the position to continue at, or RETURNED
+     */
+    private int loop(Parser p, int pc) throws IOException, FSException {
+        int start = code[pc];
+        int n = code[pc + 1];
+        if (loops[n] == null) {
+            if (p.getHost().getLoopThreshold() > 0)
+                loops[n] = JavaGen.generate(this, start, pc + 2);
+            if (loops[n] == null) {
+                //stays interpreted, do not try again
+                iterations[n] = Integer.MIN_VALUE;
+                return start;
+            }
+        }
+        return loops[n].run(p);
+    }
+
+    /**
+     * Runs one of the instructions working on objects
+     * @param pc - the position after the opcode
+     * @return the position of the next instruction, or RETURNED/ENDED
+     */
+    private int objectOp(int op, int pc, Parser p, Stack os) throws IOException, FSException {
+        final int[] code = this.code;
+        switch (op) {
+            case CONST:
+                os.push(consts[code[pc]]);
+                return pc + 1;
+            case NULL:
+                //FSObject is mutable, so a new one is needed every time
+                os.push(new FSObject(null));
+                return pc;
+            case POP:
+                os.pop();
+                return pc;
+            case FUNC:
+                p.addFunction((String) consts[code[pc]], (Parser.FuncEntry) consts[code[pc + 1]]);
+                return pc + 2;
+            case END:
+                return ENDED;
+        }
+
+        //the rest can fail or call out
+        p.setLine(lines[pc - 1]);
+        switch (op) {
+            case LOAD: {
+                Object val = p.getSlot(code[pc], code[pc + 1]);
+                if (val == null)
+                    val = getHostVar(p, (HostSite) consts[code[pc + 2]], null);
+                os.push(val);
+                return pc + 3;
+            }
+            case STORE:
+                store(p, code[pc], code[pc + 1], (HostSite) consts[code[pc + 2]], os.pop());
+                return pc + 3;
+            case DEFINE:
+                define(p, code[pc], code[pc + 1], (String) consts[code[pc + 2]]);
+                return pc + 3;
+            case INIT: {
+                Object val = os.pop();
+                if (val == null) p.parseError("set variable " + consts[code[pc + 1]] + " with null value");
+                p.setSlot(code[pc], -1, val);
+                return pc + 2;
+            }
+            case INDEX:
+                os.push(getHostVar(p, (HostSite) consts[code[pc]], os.pop()));
+                return pc + 1;
+            case STORE_INDEX: {
+                Object val = os.pop();
+                Object index = os.pop();
+                try {
+                    p.getHost().setVarEntry((HostSite) consts[code[pc]], index, val);
+                } catch (Exception e) {
+                    p.parseError(e.getMessage());
+                }
+                return pc + 1;
+            }
+            case CALL: {
+                HostSite site = (HostSite) consts[code[pc]];
+                int argc = code[pc + 1];
+                Object[] items = os.items;
+                if (argc <= 2) {
+                    Object b = (argc == 2) ? os.pop() : null;
+                    Object a = (argc >= 1) ? os.pop() : null;
+                    os.push(p.callFunction(site, argc, a, b));
+                    return pc + 2;
+                }
+                Object[] args = new Object[argc];
+                int first = os.top - argc + 1;
+                System.arraycopy(items, first, args, 0, argc);
+                Arrays.fill(items, first, os.top + 1, null);
+                os.top -= argc;
+                os.push(p.callFunction(site, args));
+                return pc + 2;
+            }
+            case NEG:
+                os.push(p.evalNegate(os.pop()));
+                return pc;
+            case NOT:
+                os.push(p.evalNot(os.pop()));
+                return pc;
+            case BINOP: {
+                Object rVal = os.pop();
+                os.push(p.evalOp(code[pc], os.pop(), rVal));
+                return pc + 1;
+            }
+            case JUMP_FALSE:
+                if (p.evalCondition(os.pop(), (String) consts[code[pc + 1]]) == 0)
+                    return code[pc];
+                return pc + 2;
+            case RETURN:
+                p.retVal = os.pop();
+                return RETURNED;
+            case ERROR:
+                p.parseError((String) consts[code[pc]]);
+                return pc + 1;
+        }
+        throw new IllegalStateException("bad opcode " + op + " at " + (pc - 1));
+    }
+
+    /**
+     * @return the number of operands following an opcode
+     */
+    static int operands(int op) {
+        switch (op) {
+            case LOAD:
+            case STORE:
+            case DEFINE:
+                return 3;
+            case INIT:
+            case CALL:
+            case JUMP_FALSE:
+            case FUNC:
+            case LOOP:
+                return 2;
+            case ICONST:
+            case ILOAD:
+            case ISTORE:
+            case IJUMP_FALSE:
+            case DCONST:
+            case DLOAD:
+            case DSTORE:
+            case JUMP:
+            case CONST:
+            case INDEX:
+            case STORE_INDEX:
+            case ICALL:
+            case DCALL:
+            case BINOP:
+            case ERROR:
+                return 1;
+        }
+        return 0;
+    }
+
+    //doubles are kept on the primitive stack as their bits
+    private static long bits(double d) {
+        return Double.doubleToRawLongBits(d);
+    }
+
+    private static double value(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    static Object getHostVar(Parser p, HostSite site, Object index) throws FSException {
+        try {
+            return p.getHost().getVarEntry(site, index);
+        } catch (Exception e) {
+            p.parseError(e.getMessage());
+        }
+        return null;
+    }
+
+    //assignment to a script variable, or to the host when not defined in the script
+    static void store(Parser p, int local, int global, HostSite site, Object val) throws FSException {
+        if (val == null) {
+            if (p.getSlot(local, global) != null)
+                p.parseError("set variable " + site.name + " with null value");
+        } else if (p.setSlot(local, global, val)) {
+            return;
+        }
+        try {
+            p.getHost().setVarEntry(site, null, val);
+        } catch (Exception e) {
+            p.parseError(e.getMessage());
+        }
+    }
+
+    static void define(Parser p, int local, int type, String name) throws FSException {
+        switch (type) {
+            case LexAnn.TT_DEFINT: p.addSlot(local, name, Parser.FS_FALSE); break;
+            case LexAnn.TT_DEFSTRING: p.addSlot(local, name, ""); break;
+            case LexAnn.TT_DEFDOUBLE: p.addSlot(local, name, (double) 0); break;
+            case LexAnn.TT_DEFOBJECT: p.addSlot(local, name, new FSObject()); break;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package murlen.util.fscript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <p>CodeGen - turns the tree built by ScriptCompiler into Code</p>
+ * <p>
+ * Every function body becomes a Code of its own, stored in its FuncEntry.
+ * Typed expressions (see Expr.type()) are generated with the int/double
+ * instructions of Code, everything else with the Object ones.</p>
+ */
+final class CodeGen {
+    private int[] code = new int[64];
+    private int[] lines = new int[64]; //source line of each instruction
+    private int pc;
+    private int line; //source line of the statement being generated
+    private final ArrayList<Object> consts = new ArrayList<>();
+    private final HashMap<Object, Integer> constIndex = new HashMap<>();
+    private int objects, primitives; //current stack depths
+    private int maxObjects, maxPrimitives;
+    private int loops; //while loops generated
+
+    /**
+     * Generates the code for a block of statements, and for the bodies of
+     * the functions defined in it
+     */
+    static Code generate(Stmt.Block block) {
+        CodeGen gen = new CodeGen();
+        gen.stmt(block);
+        gen.emit(Code.END);
+        return gen.toCode();
+    }
+
+    private Code toCode() {
+        return new Code(Arrays.copyOf(code, pc), Arrays.copyOf(lines, pc), consts.toArray(), maxObjects, maxPrimitives, loops);
+    }
+
+    private void stmt(Stmt s) {
+        if (s instanceof Stmt.Block) {
+            for (Stmt child : ((Stmt.Block) s).stmts) {
+                line = child.line;
+                stmt(child);
+            }
+        } else if (s instanceof Stmt.VarDef) {
+            Stmt.VarDef def = (Stmt.VarDef) s;
+            emit(Code.DEFINE, def.var.local, def.type, constant(def.var.name));
+            if (def.init != null) {
+                value(def.init);
+                emit(Code.INIT, def.var.local, constant(def.var.name));
+                objects--;
+            }
+        } else if (s instanceof Stmt.Assign) {
+            Stmt.Assign assign = (Stmt.Assign) s;
+            int type = assign.value.type();
+            if (assign.type == Expr.T_INT && type == Expr.T_INT) {
+                intValue(assign.value);
+                emit(Code.ISTORE, assign.var.local);
+                primitives--;
+            } else if (assign.type == Expr.T_DOUBLE && type == Expr.T_DOUBLE) {
+                doubleValue(assign.value);
+                emit(Code.DSTORE, assign.var.local);
+                primitives--;
+            } else {
+                value(assign.value);
+                emit(Code.STORE, assign.var.local, assign.var.global, constant(new HostSite(assign.var.name)));
+                objects--;
+            }
+        } else if (s instanceof Stmt.ArrayAssign) {
+            Stmt.ArrayAssign assign = (Stmt.ArrayAssign) s;
+            value(assign.index);
+            value(assign.value);
+            emit(Code.STORE_INDEX, constant(new HostSite(assign.name)));
+            objects -= 2;
+        } else if (s instanceof Stmt.Call) {
+            value(((Stmt.Call) s).call);
+            emit(Code.POP);
+            objects--;
+        } else if (s instanceof Stmt.If) {
+            Stmt.If stmt = (Stmt.If) s;
+            int jump = condition(stmt.cond, "If condition needs to be Integer");
+            stmt(stmt.then);
+            if (stmt.orElse != null) {
+                emit(Code.JUMP, 0);
+                int end = pc - 1;
+                code[jump] = pc;
+                line = stmt.orElse.line;
+                stmt(stmt.orElse);
+                code[end] = pc;
+            } else {
+                code[jump] = pc;
+            }
+        } else if (s instanceof Stmt.While) {
+            Stmt.While stmt = (Stmt.While) s;
+            int start = pc;
+            int jump = condition(stmt.cond, "While condition needs to be Integer");
+            stmt(stmt.body);
+            line = stmt.line;
+            emit(Code.LOOP, start, loops++);
+            code[jump] = pc;
+        } else if (s instanceof Stmt.Return) {
+            value(((Stmt.Return) s).value);
+            emit(Code.RETURN);
+            objects--;
+        } else if (s instanceof Stmt.FuncDef) {
+            Stmt.FuncDef def = (Stmt.FuncDef) s;
+            def.entry.body = generate(def.body);
+            emit(Code.FUNC, constant(def.name), constant(def.entry));
+        } else if (s instanceof Stmt.Error) {
+            emit(Code.ERROR, constant(((Stmt.Error) s).message));
+        } else {
+            throw new IllegalStateException("unknown statement " + s);
+        }
+    }
+
+    //generates an if/while test, returns the position of the jump target to patch
+    private int condition(Expr cond, String err) {
+        if (cond.type() == Expr.T_INT) {
+            intValue(cond);
+            emit(Code.IJUMP_FALSE, 0);
+            primitives--;
+            return pc - 1;
+        }
+        value(cond);
+        emit(Code.JUMP_FALSE, 0, constant(err));
+        objects--;
+        return pc - 2;
+    }
+
+    //pushes the value of an expression on the Object stack
+    private void value(Expr e) {
+        switch (e.type()) {
+            case Expr.T_INT:
+                intValue(e);
+                emit(Code.BOX_I);
+                primitives--;
+                push();
+                return;
+            case Expr.T_DOUBLE:
+                doubleValue(e);
+                emit(Code.BOX_D);
+                primitives--;
+                push();
+                return;
+        }
+
+        if (e instanceof Expr.Const) {
+            emit(Code.CONST, constant(((Expr.Const) e).value));
+            push();
+        } else if (e instanceof Expr.Null) {
+            emit(Code.NULL);
+            push();
+        } else if (e instanceof Expr.Var) {
+            Frame.Ref var = ((Expr.Var) e).var;
+            emit(Code.LOAD, var.local, var.global, constant(new HostSite(var.name)));
+            push();
+        } else if (e instanceof Expr.Index) {
+            Expr.Index index = (Expr.Index) e;
+            value(index.index);
+            emit(Code.INDEX, constant(new HostSite(index.name)));
+        } else if (e instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) e;
+            int argType = (call.args.length == 1) ? call.args[0].type() : Expr.T_ANY;
+            if (argType == Expr.T_INT) {
+                //the argument stays unboxed for a host function taking an int
+                intValue(call.args[0]);
+                emit(Code.ICALL, constant(new HostSite(call.name)));
+                primitives--;
+            } else if (argType == Expr.T_DOUBLE) {
+                doubleValue(call.args[0]);
+                emit(Code.DCALL, constant(new HostSite(call.name)));
+                primitives--;
+            } else {
+                for (Expr arg : call.args)
+                    value(arg);
+                emit(Code.CALL, constant(new HostSite(call.name)), call.args.length);
+                objects -= call.args.length;
+            }
+            push();
+        } else if (e instanceof Expr.Negate) {
+            value(((Expr.Negate) e).operand);
+            emit(Code.NEG);
+        } else if (e instanceof Expr.Not) {
+            value(((Expr.Not) e).operand);
+            emit(Code.NOT);
+        } else if (e instanceof Expr.Binary) {
+            Expr.Binary b = (Expr.Binary) e;
+            value(b.left);
+            value(b.right);
+            emit(Code.BINOP, b.op);
+            objects--;
+        } else {
+            throw new IllegalStateException("unknown expression " + e);
+        }
+    }
+
+    //pushes the value of a T_INT expression on the int stack
+    private void intValue(Expr e) {
+        if (e instanceof Expr.Const) {
+            emit(Code.ICONST, (Integer) ((Expr.Const) e).value);
+            pushPrimitive();
+        } else if (e instanceof Expr.Var) {
+            emit(Code.ILOAD, ((Expr.Var) e).var.local);
+            pushPrimitive();
+        } else if (e instanceof Expr.Negate) {
+            intValue(((Expr.Negate) e).operand);
+            emit(Code.INEG);
+        } else if (e instanceof Expr.Not) {
+            intValue(((Expr.Not) e).operand);
+            emit(Code.INOT);
+        } else if (e instanceof Expr.Binary) {
+            Expr.Binary b = (Expr.Binary) e;
+            if (b.isDoubleCompare()) {
+                doubleValue(b.left);
+                doubleValue(b.right);
+                emit(doubleOp(b.op));
+                primitives -= 2;
+                pushPrimitive();
+            } else {
+                intValue(b.left);
+                intValue(b.right);
+                emit(intOp(b.op));
+                primitives--;
+            }
+        } else {
+            throw new IllegalStateException("not an int expression " + e);
+        }
+    }
+
+    //pushes the value of a T_INT or T_DOUBLE expression on the double stack
+    private void doubleValue(Expr e) {
+        if (e.type() == Expr.T_INT) {
+            intValue(e);
+            emit(Code.I2D);
+            primitives--;
+            pushPrimitive();
+        } else if (e instanceof Expr.Const) {
+            emit(Code.DCONST, constant(((Expr.Const) e).value));
+            pushPrimitive();
+        } else if (e instanceof Expr.Var) {
+            emit(Code.DLOAD, ((Expr.Var) e).var.local);
+            pushPrimitive();
+        } else if (e instanceof Expr.Negate) {
+            doubleValue(((Expr.Negate) e).operand);
+            emit(Code.DNEG);
+        } else if (e instanceof Expr.Binary) {
+            Expr.Binary b = (Expr.Binary) e;
+            doubleValue(b.left);
+            doubleValue(b.right);
+            emit(doubleOp(b.op));
+            primitives--;
+        } else {
+            throw new IllegalStateException("not a double expression " + e);
+        }
+    }
+
+    private static int intOp(int op) {
+        switch (op) {
+            case LexAnn.TT_PLUS: return Code.IADD;
+            case LexAnn.TT_MINUS: return Code.ISUB;
+            case LexAnn.TT_MULT: return Code.IMUL;
+            case LexAnn.TT_DIV: return Code.IDIV;
+            case LexAnn.TT_MOD: return Code.IMOD;
+            case LexAnn.TT_LEQ: return Code.IEQ;
+            case LexAnn.TT_LNEQ: return Code.INE;
+            case LexAnn.TT_LLS: return Code.ILT;
+            case LexAnn.TT_LLSE: return Code.ILE;
+            case LexAnn.TT_LGR: return Code.IGT;
+            case LexAnn.TT_LGRE: return Code.IGE;
+            case LexAnn.TT_LAND: return Code.IAND;
+            case LexAnn.TT_LOR: return Code.IOR;
+        }
+        throw new IllegalStateException("operator " + op);
+    }
+
+    private static int doubleOp(int op) {
+        switch (op) {
+            case LexAnn.TT_PLUS: return Code.DADD;
+            case LexAnn.TT_MINUS: return Code.DSUB;
+            case LexAnn.TT_MULT: return Code.DMUL;
+            case LexAnn.TT_DIV: return Code.DDIV;
+            case LexAnn.TT_LEQ: return Code.DEQ;
+            case LexAnn.TT_LNEQ: return Code.DNE;
+            case LexAnn.TT_LLS: return Code.DLT;
+            case LexAnn.TT_LLSE: return Code.DLE;
+            case LexAnn.TT_LGR: return Code.DGT;
+            case LexAnn.TT_LGRE: return Code.DGE;
+        }
+        throw new IllegalStateException("operator " + op);
+    }
+
+    //index of a constant in the pool, equal constants are shared
+    private int constant(Object value) {
+        Integer n = constIndex.get(value);
+        if (n == null) {
+            n = consts.size();
+            consts.add(value);
+            constIndex.put(value, n);
+        }
+        return n;
+    }
+
+    private void push() {
+        if (++objects > maxObjects) maxObjects = objects;
+    }
+
+    private void pushPrimitive() {
+        if (++primitives > maxPrimitives) maxPrimitives = primitives;
+    }
+
+    private void emit(int... ops) {
+        if (pc + ops.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, pc + ops.length));
+            lines = Arrays.copyOf(lines, code.length);
+        }
+        for (int op : ops) {
+            lines[pc] = line;
+            code[pc++] = op;
+        }
+    }
+}
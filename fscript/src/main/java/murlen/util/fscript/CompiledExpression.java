@@ -0,0 +1,74 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * <p>CompiledExpression - an expression compiled once, to be evaluated any
+ * number of times by FScript.evaluate()</p>
+ * <p>
+ * The expression may use parameters, which get their values from the
+ * arguments of each evaluation, everything else is looked up as in the
+ * script: in its global variables, then the host. An expression is compiled
+ * for the globals of one FScript and can only be evaluated by that one.</p>
+ * <p>
+ * Compiling adds no variables to the script. A name which is not a global
+ * yet is looked up in the host, and the expression is compiled again once
+ * the script defines it.</p>
+ */
+public final class CompiledExpression {
+    final LineLoader line; //the expression as a return statement
+    final Frame.Scope globals; //scope whose slots the code uses
+    final Frame.Scope params; //slots of the parameters, in order
+    final int paramCount;
+    private Code code;
+    private String[] unknown; //names which were neither parameters nor globals
+    private int globalCount; //size of the globals scope when compiled
+
+    CompiledExpression(String expr, Frame.Scope globals, String[] params) throws IOException {
+        line = LineLoader.of(expr.startsWith("return ") ? expr : "return " + expr);
+        this.globals = globals;
+        this.params = new Frame.Scope();
+        for (String param : params)
+            this.params.define(param);
+        paramCount = this.params.size();
+        if (paramCount != params.length)
+            throw new IllegalArgumentException("duplicate parameter name");
+        compile();
+    }
+
+    private void compile() throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        globalCount = globals.size();
+        code = CodeGen.generate(new ScriptCompiler(line, globals, params, names).compile(0, 0));
+        unknown = names.toArray(new String[0]);
+    }
+
+    /**
+     * @return the code, compiled again when a name it looks up in the host
+     * has become a global since
+     */
+    synchronized Code code() throws IOException {
+        if (globals.size() != globalCount) {
+            globalCount = globals.size();
+            for (String name : unknown) {
+                if (globals.indexOf(name) >= 0) {
+                    compile();
+                    break;
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * @return the number of arguments an evaluation takes
+     */
+    public int getParameterCount() {
+        return paramCount;
+    }
+
+    public String toString() {
+        return line.getLineAsString(0);
+    }
+}
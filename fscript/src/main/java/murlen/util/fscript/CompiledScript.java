@@ -0,0 +1,50 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>CompiledScript - a script compiled once, to be run any number of times</p>
+ * <p>
+ * Unlike FScript, which holds the state of one run, a CompiledScript only
+ * holds what does not change when the script runs: its lines, its compiled
+ * code, the functions it defines and the slots of its global variables.
+ * It can therefore be shared by any number of threads, each running it in
+ * an ExecutionContext of its own:</p>
+ * <pre>
+ * CompiledScript script = new CompiledScript(reader);
+ * ...
+ * Object result = script.newContext(host).run();
+ * </pre>
+ * <p>
+ * The host FScript supplies the host variables, functions and extensions.
+ * A host shared by contexts running at the same time must be thread safe
+ * itself, otherwise give each context a host of its own (an FScript is
+ * cheap to create, it is the loading and compiling which is not).</p>
+ */
+public final class CompiledScript {
+    final LineLoader code;
+    final Frame.Scope globals;
+    final Code body; //null for an empty script
+
+    /**
+     * Loads and compiles a script
+     * @param is the script source
+     */
+    public CompiledScript(Reader is) throws IOException {
+        code = new LineLoader();
+        code.load(is);
+        globals = new Frame.Scope();
+        body = (code.lineCount() == 0) ? null
+                : CodeGen.generate(new ScriptCompiler(code, globals).compile(0, code.lineCount() - 1));
+    }
+
+    /**
+     * Creates a context to run the script in, with variables of its own
+     * @param host the FScript supplying host variables, functions and extensions
+     * @return the new context
+     */
+    public ExecutionContext newContext(FScript host) {
+        return new ExecutionContext(this, host);
+    }
+}
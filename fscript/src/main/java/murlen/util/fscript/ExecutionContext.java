@@ -0,0 +1,110 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * <p>ExecutionContext - one run of a CompiledScript</p>
+ * <p>
+ * Holds the variables, the functions defined and the call stack of the
+ * script as it runs, and its error state afterwards. A context is meant to
+ * be used by one thread at a time, the CompiledScript it runs may be shared.</p>
+ * <p>
+ * While the context runs, the FSParserExtensions registered with the host,
+ * and the script space methods of the host (getScriptVar() ...) called on
+ * the same thread, work with the variables of this context.</p>
+ */
+public final class ExecutionContext {
+    private final CompiledScript script;
+    private final FScript host;
+    private final Parser parser;
+
+    ExecutionContext(CompiledScript script, FScript host) {
+        this.script = script;
+        this.host = host;
+        parser = new Parser(host, new LineLoader(script.code), script.globals);
+    }
+
+    /**
+     * Runs the script, starting with no variables defined
+     * @return any return value of the script's execution (will be one of
+     * FScript's supported type objects, Integer,String,Double)
+     */
+    public Object run() throws IOException, FSException {
+        parser.reset();
+        if (script.body == null)
+            return null;
+        Parser outer = host.bindParser(parser);
+        try {
+            return parser.exec(script.body, script.code.lineCount() - 1);
+        } finally {
+            host.bindParser(outer);
+        }
+    }
+
+    /**
+     * Sets a variable in script space, see FScript.setScriptVar()
+     * @param name the name of the variable
+     * @param value the value to set variable to (String,Integer)
+     */
+    public void setScriptVar(String name, Object value) throws FSException {
+        Parser outer = host.bindParser(parser);
+        try {
+            parser.setVar(name, value);
+        } finally {
+            host.bindParser(outer);
+        }
+    }
+
+    /**
+     * Gets a variable in script space, see FScript.getScriptVar()
+     * @param name the name of the variable
+     * @return the value of the variable (String,Integer)
+     */
+    public Object getScriptVar(String name) {
+        Parser outer = host.bindParser(parser);
+        try {
+            return parser.getVar(name);
+        } finally {
+            host.bindParser(outer);
+        }
+    }
+
+    /**
+     * Calls a function defined by the script (once run) or the host, see
+     * FScript.callScriptFunction()
+     * @param name the name of the function
+     * @param params the parameters to pass (must be correct type and number)
+     * @return the return value of the function (String,Integer)
+     */
+    public Object callScriptFunction(String name, ArrayList<Object> params) throws IOException, FSException {
+        Parser outer = host.bindParser(parser);
+        try {
+            return parser.callFunction(name, params);
+        } finally {
+            host.bindParser(outer);
+        }
+    }
+
+    /**
+     * @param name the name of a function
+     * @return true when the script has defined it, which it does as it runs
+     */
+    public boolean hasScriptFunction(String name) {
+        return parser.hasFunction(name);
+    }
+
+    /**
+     * Returns more details on the last error, see FScript.getError()
+     */
+    public String[] getError() {
+        return parser.getError();
+    }
+
+    /**
+     * get the current context (executed line, variables etc)
+     */
+    public String getContext() {
+        return parser.getContext();
+    }
+}
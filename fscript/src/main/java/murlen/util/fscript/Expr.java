@@ -0,0 +1,152 @@
+package murlen.util.fscript;
+
+/**
+ * <p>Expr - a compiled expression, as produced by ScriptCompiler</p>
+ * <p>
+ * Expressions are immutable syntax tree nodes, CodeGen turns them into
+ * bytecode for Code to run.</p>
+ * <p>
+ * Expressions whose type is known when compiling (T_INT or T_DOUBLE) are
+ * computed on primitives by the generated code, and only boxed when the
+ * value leaves the expression.</p>
+ */
+abstract class Expr {
+    static final int T_ANY = 0; //type only known at run time
+    static final int T_INT = 1; //always an Integer
+    static final int T_DOUBLE = 2; //always a Double
+
+    /**
+     * @return the type of the value, as far as it is known when compiling
+     */
+    int type() {
+        return T_ANY;
+    }
+
+    //literal number or string
+    static final class Const extends Expr {
+        final Object value;
+
+        Const(Object value) {
+            this.value = value;
+        }
+
+        int type() {
+            return (value instanceof Integer) ? T_INT : (value instanceof Double) ? T_DOUBLE : T_ANY;
+        }
+    }
+
+    //null literal
+    static final class Null extends Expr {
+    }
+
+    //script variable, falls back to the host when not defined in the script
+    static final class Var extends Expr {
+        final Frame.Ref var;
+        final int type; //known when the variable is certainly declared at this point
+
+        Var(Frame.Ref var, int type) {
+            this.var = var;
+            this.type = type;
+        }
+
+        int type() {
+            return type;
+        }
+    }
+
+    //indexed host variable
+    static final class Index extends Expr {
+        final String name;
+        final Expr index;
+
+        Index(String name, Expr index) {
+            this.name = name;
+            this.index = index;
+        }
+    }
+
+    //function call, either to a script function or to the host
+    static final class Call extends Expr {
+        final String name;
+        final Expr[] args;
+
+        Call(String name, Expr[] args) {
+            this.name = name;
+            this.args = args;
+        }
+    }
+
+    //unary minus
+    static final class Negate extends Expr {
+        final Expr operand;
+
+        Negate(Expr operand) {
+            this.operand = operand;
+        }
+
+        int type() {
+            return operand.type();
+        }
+    }
+
+    //unary not
+    static final class Not extends Expr {
+        final Expr operand;
+
+        Not(Expr operand) {
+            this.operand = operand;
+        }
+
+        int type() {
+            return (operand.type() == T_INT) ? T_INT : T_ANY;
+        }
+    }
+
+    //binary operator, op is one of the LexAnn.TT_xxx operator tokens
+    static final class Binary extends Expr {
+        final int op;
+        final Expr left;
+        final Expr right;
+        private final int type;
+
+        Binary(int op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            type = typeOf(op, left.type(), right.type());
+        }
+
+        int type() {
+            return type;
+        }
+
+        //true for a comparison of two doubles, which gives an int
+        boolean isDoubleCompare() {
+            return type == T_INT && left.type() == T_DOUBLE;
+        }
+
+        //result type of the operator, T_ANY when it must be checked at run time
+        private static int typeOf(int op, int lType, int rType) {
+            if (lType == T_INT && rType == T_INT)
+                return T_INT;
+            if (lType == T_ANY || rType == T_ANY)
+                return T_ANY;
+            switch (op) {
+                case LexAnn.TT_PLUS:
+                case LexAnn.TT_MINUS:
+                case LexAnn.TT_MULT:
+                case LexAnn.TT_DIV:
+                    return T_DOUBLE;
+                case LexAnn.TT_LEQ:
+                case LexAnn.TT_LNEQ:
+                case LexAnn.TT_LLS:
+                case LexAnn.TT_LLSE:
+                case LexAnn.TT_LGR:
+                case LexAnn.TT_LGRE:
+                    //mixed int/double comparisons are type errors
+                    return (lType == T_DOUBLE && rType == T_DOUBLE) ? T_INT : T_ANY;
+            }
+            return T_ANY;
+        }
+    }
+}
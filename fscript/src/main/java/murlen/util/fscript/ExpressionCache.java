@@ -0,0 +1,126 @@
+package murlen.util.fscript;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>ExpressionCache - the expressions compiled by FScript.evaluateExpression()</p>
+ * <p>
+ * Keyed by the text of the expression, holding the most recently used ones
+ * up to its capacity. It may be used by several threads at once, and
+ * counts hits and misses to show how well it works.</p>
+ * <p>
+ * Lookups take no lock: each entry remembers when it was last used, and
+ * when a new expression pushes the cache over its capacity the entries
+ * used longest ago are dropped, an eighth of the capacity at once, so the
+ * scan is paid once for that many new expressions. Recency is therefore
+ * only approximate between threads.</p>
+ */
+public final class ExpressionCache {
+    private final Map<String, Entry> map = new ConcurrentHashMap<>();
+    private volatile int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ExpressionCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //the cached expression, null on a miss
+    CompiledExpression get(String expr) {
+        Entry e = map.get(expr);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        e.lastUsed = System.nanoTime();
+        return e.expr;
+    }
+
+    void put(String expr, CompiledExpression e) {
+        if (capacity <= 0)
+            return;
+        map.put(expr, new Entry(e));
+        if (map.size() > capacity)
+            evict();
+    }
+
+    //only new expressions evict, so hits never wait for the scan
+    private synchronized void evict() {
+        int size = map.size();
+        if (size <= capacity)
+            return;
+        //down to 7/8 of the capacity, the oldest ones by a sorted snapshot
+        int drop = size - capacity + capacity / 8;
+        long[] used = new long[size];
+        int n = 0;
+        for (Entry e : map.values()) {
+            if (n == used.length) break;
+            used[n++] = e.lastUsed;
+        }
+        if (n == 0)
+            return;
+        Arrays.sort(used, 0, n);
+        long limit = used[Math.min(drop, n) - 1];
+        map.values().removeIf(e -> e.lastUsed <= limit);
+    }
+
+    /**
+     * Sets how many expressions are kept, 0 disables caching
+     * @param capacity the maximum number of expressions
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        if (capacity <= 0)
+            map.clear();
+        else
+            evict();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the number of lookups which found a compiled expression
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups which had to compile the expression
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Forgets all expressions, and resets the counts
+     */
+    public void clear() {
+        map.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    public String toString() {
+        return "ExpressionCache[size=" + map.size() + ", capacity=" + capacity + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    private static final class Entry {
+        final CompiledExpression expr;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(CompiledExpression expr) {
+            this.expr = expr;
+        }
+    }
+}
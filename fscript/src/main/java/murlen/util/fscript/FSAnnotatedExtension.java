@@ -0,0 +1,363 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSFunction;
+import murlen.util.fscript.api.FSFunction0;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunction2;
+import murlen.util.fscript.api.FSFunctionExtension;
+import murlen.util.fscript.api.FSFunctionN;
+import murlen.util.fscript.api.FSFunctionProvider;
+import murlen.util.fscript.api.FSNamedExtension;
+import murlen.util.fscript.api.FSVariable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * <p>FSAnnotatedExtension - an extension made of the public methods and
+ * fields of a plain Java class, marked with FSFunction and FSVariable</p>
+ * <p>
+ * The class is scanned once, when the extension is created, binding each
+ * member to a MethodHandle which converts the script values as FSConvert
+ * does. Results come back as Integer, Double or the object returned,
+ * true/false as 1/0 and void as 1 (like a script function without return).
+ * The functions are handed to FScript as objects taking their arguments
+ * without a list, so a call does not look the name up again.</p>
+ * <p>
+ * Subclass it and mark members of the subclass, or pass the library (an
+ * object, or a class for static members only) to the constructor.</p>
+ * <p>
+ * The fscript-processor module generates the same dispatch at compile time
+ * (a <i>Library</i>Dispatch class next to each annotated class), which
+ * needs no reflection when the extension is created.</p>
+ */
+public class FSAnnotatedExtension extends BasicExtension implements FSNamedExtension, FSFunctionProvider {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle TO_INT, TO_LONG, TO_DOUBLE, TO_BOOLEAN, TO_STRING,
+            FROM_LONG, FROM_BOOLEAN, FROM_CHAR;
+
+    static {
+        try {
+            TO_INT = converter("toInt", int.class, Object.class);
+            TO_LONG = converter("toLong", long.class, Object.class);
+            TO_DOUBLE = converter("toDouble", double.class, Object.class);
+            TO_BOOLEAN = converter("toBoolean", boolean.class, Object.class);
+            TO_STRING = converter("toString", String.class, Object.class);
+            FROM_LONG = converter("fromLong", Object.class, long.class);
+            FROM_BOOLEAN = converter("fromBoolean", Object.class, boolean.class);
+            FROM_CHAR = converter("fromChar", Object.class, char.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final HashMap<String, FSFunctionExtension> functions = new HashMap<>();
+    private final HashMap<String, MethodHandle> getters = new HashMap<>();
+    private final HashMap<String, MethodHandle> setters = new HashMap<>();
+
+    /**
+     * An extension of the members of this (sub)class
+     */
+    protected FSAnnotatedExtension() {
+        scan(getClass(), this);
+    }
+
+    /**
+     * @param library an object whose class has FSFunction and FSVariable
+     * members
+     */
+    public FSAnnotatedExtension(Object library) {
+        scan(library.getClass(), library);
+    }
+
+    /**
+     * @param library a class with static FSFunction and FSVariable members
+     */
+    public FSAnnotatedExtension(Class<?> library) {
+        scan(library, null);
+    }
+
+    private void scan(Class<?> cls, Object library) {
+        try {
+            for (Method method : cls.getMethods()) {
+                FSFunction function = method.getAnnotation(FSFunction.class);
+                if (function != null)
+                    addFunction(name(function.value(), method), method, bind(LOOKUP.unreflect(method), method, library));
+                FSVariable variable = method.getAnnotation(FSVariable.class);
+                if (variable != null)
+                    addAccessor(name(variable.value(), method), method, bind(LOOKUP.unreflect(method), method, library));
+            }
+            for (Field field : cls.getFields()) {
+                FSVariable variable = field.getAnnotation(FSVariable.class);
+                if (variable == null)
+                    continue;
+                String name = name(variable.value(), field);
+                getters.put(name, result(bind(LOOKUP.unreflectGetter(field), field, library)));
+                if (!Modifier.isFinal(field.getModifiers()))
+                    setters.put(name, setter(bind(LOOKUP.unreflectSetter(field), field, library)));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(cls.getName() + " is not public", e);
+        }
+    }
+
+    private static String name(String name, Member member) {
+        return name.isEmpty() ? member.getName() : name;
+    }
+
+    private static MethodHandle bind(MethodHandle handle, Member member, Object library) {
+        handle = handle.asFixedArity();
+        if (Modifier.isStatic(member.getModifiers()))
+            return handle;
+        if (library == null)
+            throw new IllegalArgumentException(member + " is not static");
+        return handle.bindTo(library);
+    }
+
+    private void addFunction(String name, Method method, MethodHandle handle) {
+        Class<?>[] types = method.getParameterTypes();
+        if (method.isVarArgs() && types.length == 1 && types[0] == Object[].class) {
+            functions.put(name, new VarArgs(result(handle)));
+            return;
+        }
+        handle = arguments(result(handle));
+        switch (types.length) {
+            case 0:
+                functions.put(name, new Fixed0(handle));
+                break;
+            case 1:
+                functions.put(name, new Fixed1(handle));
+                break;
+            case 2:
+                functions.put(name, new Fixed2(handle));
+                break;
+            default:
+                functions.put(name, new FixedN(handle.asSpreader(Object[].class, types.length), types.length));
+        }
+    }
+
+    private void addAccessor(String name, Method method, MethodHandle handle) {
+        if (method.getParameterCount() == 0)
+            getters.put(name, result(handle));
+        else if (method.getParameterCount() == 1)
+            setters.put(name, setter(handle));
+        else
+            throw new IllegalArgumentException(method + " takes more than one parameter");
+    }
+
+    //converts each parameter from a script value
+    private static MethodHandle arguments(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int n = 0; n < type.parameterCount(); n++) {
+            MethodHandle converter = converter(type.parameterType(n));
+            if (converter != null)
+                handle = MethodHandles.filterArguments(handle, n, converter);
+        }
+        return handle.asType(handle.type().generic().changeReturnType(handle.type().returnType()));
+    }
+
+    //takes a script value, any result is dropped
+    private static MethodHandle setter(MethodHandle handle) {
+        handle = arguments(handle);
+        return handle.asType(handle.type().changeReturnType(void.class));
+    }
+
+    private static MethodHandle converter(Class<?> type) {
+        if (type == int.class || type == Integer.class)
+            return TO_INT.asType(MethodType.methodType(type, Object.class));
+        if (type == long.class || type == Long.class)
+            return TO_LONG.asType(MethodType.methodType(type, Object.class));
+        if (type == double.class || type == Double.class)
+            return TO_DOUBLE.asType(MethodType.methodType(type, Object.class));
+        if (type == boolean.class || type == Boolean.class)
+            return TO_BOOLEAN.asType(MethodType.methodType(type, Object.class));
+        if (type == String.class)
+            return TO_STRING;
+        if (type.isPrimitive())
+            throw new IllegalArgumentException("unsupported parameter type " + type);
+        return null;
+    }
+
+    //converts the result to a script value
+    private static MethodHandle result(MethodHandle handle) {
+        Class<?> type = handle.type().returnType();
+        if (type == void.class)
+            handle = MethodHandles.filterReturnValue(handle, MethodHandles.constant(Object.class, Parser.FS_TRUE));
+        else if (type == long.class || type == int.class || type == short.class || type == byte.class)
+            handle = MethodHandles.filterReturnValue(handle, FROM_LONG.asType(MethodType.methodType(Object.class, type)));
+        else if (type == float.class)
+            handle = MethodHandles.filterReturnValue(handle, MethodHandles.identity(double.class).asType(MethodType.methodType(Object.class, float.class)));
+        else if (type == boolean.class)
+            handle = MethodHandles.filterReturnValue(handle, FROM_BOOLEAN);
+        else if (type == char.class)
+            handle = MethodHandles.filterReturnValue(handle, FROM_CHAR);
+        return handle.asType(handle.type().changeReturnType(Object.class));
+    }
+
+    private static MethodHandle converter(String name, Class<?> to, Class<?> from) throws ReflectiveOperationException {
+        return LOOKUP.findStatic(FSConvert.class, name, MethodType.methodType(to, from));
+    }
+
+    @Override
+    public Collection<String> getVarNames() {
+        ArrayList<String> names = new ArrayList<>(getters.keySet());
+        for (String name : setters.keySet())
+            if (!getters.containsKey(name)) names.add(name);
+        return names;
+    }
+
+    @Override
+    public Collection<String> getArrayNames() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<String> getFunctionNames() {
+        return functions.keySet();
+    }
+
+    @Override
+    public FSFunctionExtension getFunction(String name) {
+        return functions.get(name);
+    }
+
+    @Override
+    public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        FSFunctionExtension function = functions.get(name);
+        if (function == null)
+            throw FSUnsupportedException.UNSUPPORTED;
+        return function.callFunction(name, params);
+    }
+
+    @Override
+    public Object getVar(String name) throws FSException {
+        MethodHandle getter = getters.get(name);
+        if (getter == null)
+            throw FSUnsupportedException.UNSUPPORTED;
+        try {
+            return (Object) getter.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setVar(String name, Object value) throws FSException {
+        MethodHandle setter = setters.get(name);
+        if (setter == null) {
+            if (getters.containsKey(name))
+                throw new FSException("Cannot set constant value \"" + name + "\"");
+            throw FSUnsupportedException.UNSUPPORTED;
+        }
+        try {
+            setter.invokeExact(value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    //exceptions other than FSExceptions get their message kept
+    private static FSException rethrow(Throwable t) {
+        if (t instanceof FSException)
+            return (FSException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new FSException(t.getMessage());
+    }
+
+    private static final class Fixed0 implements FSFunction0 {
+        private final MethodHandle handle;
+
+        Fixed0(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        public Object call0() throws FSException {
+            try {
+                return (Object) handle.invokeExact();
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class Fixed1 implements FSFunction1 {
+        private final MethodHandle handle;
+
+        Fixed1(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        public Object call1(Object a) throws FSException {
+            try {
+                return (Object) handle.invokeExact(a);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class Fixed2 implements FSFunction2 {
+        private final MethodHandle handle;
+
+        Fixed2(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        public Object call2(Object a, Object b) throws FSException {
+            try {
+                return (Object) handle.invokeExact(a, b);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    //more than two parameters, spread from the array
+    private static final class FixedN implements FSFunctionN {
+        private final MethodHandle handle;
+        private final int arity;
+
+        FixedN(MethodHandle handle, int arity) {
+            this.handle = handle;
+            this.arity = arity;
+        }
+
+        public Object call(Object... args) throws FSException {
+            if (args.length != arity)
+                throw new FSException("Wrong amount of arguments, expected " + arity + " found " + args.length);
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class VarArgs implements FSFunctionN {
+        private final MethodHandle handle;
+
+        VarArgs(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        public Object call(Object... args) throws FSException {
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package murlen.util.fscript;
+
+/**
+ * <p>FSConvert - conversions between script values and Java types, as done
+ * for the members of annotated extensions</p>
+ * <p>
+ * Used by FSAnnotatedExtension and by the dispatch classes generated from
+ * FSFunction and FSVariable at compile time. Any number widens to a double,
+ * ints and longs take Integers, booleans are non zero Integers.</p>
+ */
+public final class FSConvert {
+
+    private FSConvert() {
+    }
+
+    public static int toInt(Object o) throws FSException {
+        if (o instanceof Integer)
+            return (Integer) o;
+        throw new FSException("Expected an integer, found " + o);
+    }
+
+    public static long toLong(Object o) throws FSException {
+        return toInt(o);
+    }
+
+    public static double toDouble(Object o) throws FSException {
+        if (o instanceof Number)
+            return ((Number) o).doubleValue();
+        throw new FSException("Expected a number, found " + o);
+    }
+
+    public static boolean toBoolean(Object o) throws FSException {
+        return toInt(o) != 0;
+    }
+
+    public static String toString(Object o) throws FSException {
+        if (o instanceof String)
+            return (String) o;
+        throw new FSException("Expected a string, found " + o);
+    }
+
+    /**
+     * @return an Integer when it fits, a Double otherwise
+     */
+    public static Object fromLong(long l) {
+        return (l == (int) l) ? (Object) (int) l : (Object) (double) l;
+    }
+
+    public static Object fromBoolean(boolean b) {
+        return b ? Parser.FS_TRUE : Parser.FS_FALSE;
+    }
+
+    public static Object fromChar(char c) {
+        return String.valueOf(c);
+    }
+}
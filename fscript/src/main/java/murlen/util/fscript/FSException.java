@@ -31,5 +31,13 @@ public class FSException extends Exception {
     public FSException(String msg) {
         super(msg);
     }
+
+    /**
+     * For exceptions used to signal rather than to report, which need no
+     * stack trace
+     */
+    protected FSException(String msg, boolean writableStackTrace) {
+        super(msg, null, false, writableStackTrace);
+    }
 }
 
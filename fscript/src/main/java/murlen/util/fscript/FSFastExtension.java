@@ -0,0 +1,269 @@
+package murlen.util.fscript;
+import murlen.util.fscript.api.FSArrayExtension;
+import murlen.util.fscript.api.FSFunctionExtension;
+import murlen.util.fscript.api.FSFunctionProvider;
+import murlen.util.fscript.api.FSVarExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>FastExtension - general extension in which other (simple) extensions
+ * can be plugged.
+ * </p>
+ * <p>
+ * Lookups take no locks, so one FastExtension can serve several threads.
+ * Once all extensions are added, freeze() replaces the maps by perfect hash
+ * tables, finding each name with a single probe.</p>
+ * <p>
+ * Functions are handed to FScript as objects (FSFunctionProvider), so one
+ * implementing FSFunction1, FSFunction2, ... is called without a list of
+ * parameters. Replacing a function which has already been called is not
+ * seen by code which found it before.</p>
+ * <p>
+ * <I>Copyright (C) 2002 </I></p>
+ * <p>
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.</p>
+ * <p>
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.</p>
+ *
+ * <p>You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the Free
+ * Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA </p>
+ *
+ * @author Joachim Van der Auwera
+ *
+ * modifications by Joachim Van der Auwera
+ * 02.08.2002 started
+ *
+ * 11.08.2002 (murlen) Changed function names to add<X>Extension + java doc
+ */
+public class FSFastExtension implements FSFunctionProvider {
+    ConcurrentHashMap<String, FSVarExtension> variables = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, FSFunctionExtension> functions = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, FSArrayExtension> arrays = new ConcurrentHashMap<>();
+    private volatile Frozen frozen;
+
+    /**
+     * Add new FSVarExtension to this FastExtension
+     * @param name - the name of the variable (must be unique amongst varables)
+     * @param var - the FSVarExtension object implementing the varaible
+     */
+    public void addVarExtension(String name, FSVarExtension var) {
+        checkNotFrozen();
+        variables.put(name, var);
+    }
+
+    /**
+     * Add new FSArrayExtension to this FastExtension
+     * @param name - the name of the array (must be unique amongst arrays)
+     * @param array - the FSArrayExtension object implementing the array
+     */
+    public void addArrayExtension(String name, FSArrayExtension array) {
+        checkNotFrozen();
+        arrays.put(name, array);
+    }
+
+    /**
+     * Add new FSFunctionExtension to this FastExtension
+     * @param name - the name of the function (must be unique amongs functions)
+     * @param fnc - the FSFunctionExtension object implementing the function
+     */
+    public void addFunctionExtension(String name, FSFunctionExtension fnc) {
+        checkNotFrozen();
+        functions.put(name, fnc);
+    }
+
+    /**
+     * Ends the registration: the names are put in perfect hash tables, and
+     * adding more extensions throws IllegalStateException. Freezing again
+     * does nothing.
+     */
+    public synchronized void freeze() {
+        if (frozen == null)
+            frozen = new Frozen(variables, functions, arrays);
+    }
+
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen != null)
+            throw new IllegalStateException("FSFastExtension is frozen");
+    }
+
+    private FSVarExtension variable(String name) {
+        Frozen f = frozen;
+        return (f != null) ? f.variables.get(name) : variables.get(name);
+    }
+
+    private FSArrayExtension array(String name) {
+        Frozen f = frozen;
+        return (f != null) ? f.arrays.get(name) : arrays.get(name);
+    }
+
+    private FSFunctionExtension function(String name) {
+        Frozen f = frozen;
+        return (f != null) ? f.functions.get(name) : functions.get(name);
+    }
+
+    public Object getVar(String name) throws FSException {
+        FSVarExtension var = variable(name);
+        if (var != null)
+            return var.getVar(name);
+        throw FSUnsupportedException.UNSUPPORTED;
+    }
+
+    //FSExtension implementation code below here.
+
+    public void setVar(String name, Object value) throws FSException {
+        FSVarExtension var = variable(name);
+        if (var != null) {
+            var.setVar(name, value);
+            return;
+        }
+        throw FSUnsupportedException.UNSUPPORTED;
+    }
+
+    public Object getVar(String name, Object index) throws FSException {
+        FSArrayExtension var = array(name);
+        if (var != null)
+            return var.getVar(name, index);
+        throw FSUnsupportedException.UNSUPPORTED;
+    }
+
+    public void setVar(String name, Object index, Object value) throws FSException {
+        FSArrayExtension var = array(name);
+        if (var != null) {
+            var.setVar(name, index, value);
+            return;
+        }
+        throw FSUnsupportedException.UNSUPPORTED;
+    }
+
+    public FSFunctionExtension getFunction(String name) {
+        return function(name);
+    }
+
+    public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        FSFunctionExtension var = function(name);
+        if (var != null)
+            return var.callFunction(name, params);
+        throw FSUnsupportedException.UNSUPPORTED;
+    }
+
+    private static final class Frozen {
+        final Table<FSVarExtension> variables;
+        final Table<FSFunctionExtension> functions;
+        final Table<FSArrayExtension> arrays;
+
+        Frozen(Map<String, FSVarExtension> variables, Map<String, FSFunctionExtension> functions, Map<String, FSArrayExtension> arrays) {
+            this.variables = new Table<>(variables);
+            this.functions = new Table<>(functions);
+            this.arrays = new Table<>(arrays);
+        }
+    }
+
+    /**
+     * Perfect hash table (hash and displace): the hash code of a name picks
+     * a bucket, whose displacement is chosen so that all names of the bucket
+     * land in free slots. Names with equal hash codes cannot be separated,
+     * such a table keeps a plain map instead.
+     */
+    private static final class Table<V> {
+        private int[] displacements;
+        private String[] keys;
+        private Object[] values;
+        private Map<String, V> map;
+
+        Table(Map<String, V> source) {
+            int n = source.size();
+            HashSet<Integer> hashes = new HashSet<>();
+            for (String key : source.keySet())
+                hashes.add(key.hashCode());
+            if (hashes.size() < n || !build(source, n)) {
+                keys = null;
+                map = new HashMap<>(source);
+            }
+        }
+
+        private boolean build(Map<String, V> source, int n) {
+            int slots = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) * 2;
+            int buckets = Math.max(slots / 4, 1);
+            ArrayList<ArrayList<String>> members = new ArrayList<>();
+            for (int b = 0; b < buckets; b++)
+                members.add(new ArrayList<String>());
+            for (String key : source.keySet())
+                members.get(mix(key.hashCode(), 0) & (buckets - 1)).add(key);
+
+            //the biggest buckets are placed first, while there is most room
+            Integer[] order = new Integer[buckets];
+            for (int b = 0; b < buckets; b++)
+                order[b] = b;
+            Arrays.sort(order, (a, b) -> members.get(b).size() - members.get(a).size());
+
+            displacements = new int[buckets];
+            keys = new String[slots];
+            values = new Object[slots];
+            int[] taken = new int[members.get(order[0]).size()];
+            for (int b : order) {
+                ArrayList<String> bucket = members.get(b);
+                if (bucket.isEmpty())
+                    break;
+                int d = 1;
+                while (!place(bucket, d, taken)) {
+                    if (++d == 1 << 20)
+                        return false;
+                }
+                displacements[b] = d;
+                for (String key : bucket)
+                    values[mix(key.hashCode(), d) & (slots - 1)] = source.get(key);
+            }
+            return true;
+        }
+
+        //puts the keys of a bucket in their slots for displacement d, if all are free
+        private boolean place(ArrayList<String> bucket, int d, int[] taken) {
+            for (int i = 0; i < bucket.size(); i++) {
+                int slot = mix(bucket.get(i).hashCode(), d) & (keys.length - 1);
+                boolean used = keys[slot] != null;
+                for (int j = 0; j < i && !used; j++)
+                    used = taken[j] == slot;
+                if (used)
+                    return false;
+                taken[i] = slot;
+            }
+            for (int i = 0; i < bucket.size(); i++)
+                keys[taken[i]] = bucket.get(i);
+            return true;
+        }
+
+        private static int mix(int h, int d) {
+            h = (h ^ d) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(String name) {
+            if (keys == null)
+                return map.get(name);
+            int h = name.hashCode();
+            int d = displacements[mix(h, 0) & (displacements.length - 1)];
+            int slot = mix(h, d) & (keys.length - 1);
+            String key = keys[slot];
+            return (key == name || name.equals(key)) ? (V) values[slot] : null;
+        }
+    }
+
+}
\ No newline at end of file
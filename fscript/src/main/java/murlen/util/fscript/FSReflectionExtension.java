@@ -0,0 +1,424 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSParserExtension;
+import murlen.util.fscript.introspection.ConstructorInvoker;
+import murlen.util.fscript.introspection.IntrospectorBase;
+import murlen.util.fscript.introspection.MethodInvoker;
+import murlen.util.fscript.introspection.PropertyAccessor;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>ReflectionExtension - general extension for object access where either
+ * the class handles the processing (if it implements FSExtension),
+ * or reflection is used.
+ * </b>
+ * <p>
+ * <I>Copyright (C) 2002-2003 </I></p>
+ * <p>
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.</p>
+ * <p>
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.</p>
+ *
+ * <p>You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the Free
+ * Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA </p>
+ *
+ * @author Joachim Van der Auwera
+ * @author murlen
+ *
+ * modifications by Joachim Van der Auwera
+ * 05.08.2002 started (Joachim)
+ * 08.09.2002 major changes to allow overloading of params for methods/fields
+ *      and use of static methods/fields. (murlen)
+ * 08-10.10.2002 use Velocity introspection code for better handling of native
+ *      types and improved speed
+ * 18.11.2002 imporved exception handling
+ * 28.01.2003 fixed problem with return handling on objectMethod()
+ * 15.03.2003 pluggable exception handling
+ * 28.02.2004 make nulls typed
+ */
+
+public class FSReflectionExtension implements FSParserExtension {
+    private volatile Parser parser; //set last, for threads which never set one
+    private final ThreadLocal<Parser> threadParser = new ThreadLocal<>();
+    IntrospectorBase introspector = new IntrospectorBase();
+    ExceptionHandler exceptionHandler = (name, exc) -> {
+        throw new FSException("Error calling method " + name + " " + exc.getMessage());
+    };
+    FSObject nullObj = new FSObject(null);
+    private static final Object[] NO_ARGS = new Object[0];
+    private final Map<String, String[]> paths = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the parser for the calling thread, so one extension can serve
+     * ExecutionContexts running at the same time
+     */
+    public void setParser(Parser parser) {
+        this.parser = parser;
+        threadParser.set(parser);
+    }
+
+    private Parser parser() {
+        Parser p = threadParser.get();
+        return (p != null) ? p : parser;
+    }
+
+    public Object getVar(String name) throws FSException {
+        String[] path = path(name);
+        if (path != null) {
+            Object object = target(path);
+            if (object != null) return getObjectVar(object, path[path.length-1]);
+        }
+        throw new FSUnsupportedException();
+    }
+
+    public void setVar(String name, Object value) throws FSException {
+        String[] path = path(name);
+        if (path != null) {
+            Object object = target(path);
+            if (object != null) {
+                setObjectVar(object, path[path.length-1], value);
+                return;
+            }
+        }
+        throw new FSUnsupportedException();
+    }
+
+    public Object getVar(String name, Object index) throws FSException {
+        Object object = indexed(name);
+        if (object == null) throw new FSUnsupportedException();
+        if (index instanceof FSObject) index = ((FSObject)index).getObject();
+
+        try {
+            if (object instanceof Object[]) {
+                Object[] array = (Object[])object;
+                return normalize(array[toIndex(name, index)], array.getClass().getComponentType());
+            } else if (object instanceof int[]) {
+                return ((int[])object)[toIndex(name, index)];
+            } else if (object instanceof double[]) {
+                return ((double[])object)[toIndex(name, index)];
+            } else if (object instanceof List) {
+                return normalize(((List<?>)object).get(toIndex(name, index)), Object.class);
+            } else if (object instanceof Map) {
+                return normalize(((Map<?, ?>)object).get(index), Object.class);
+            } else if (object.getClass().isArray()) {
+                return normalize(Array.get(object, toIndex(name, index)), object.getClass().getComponentType());
+            }
+        } catch (FSException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FSException("Could not access " + name + "[" + index + "] " + e.getMessage());
+        }
+        throw new FSException("variable " + name + " is not an array, List or Map");
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setVar(String name, Object index, Object value) throws FSException {
+        Object object = indexed(name);
+        if (object == null) throw new FSUnsupportedException();
+        if (index instanceof FSObject) index = ((FSObject)index).getObject();
+        if (value instanceof FSObject) value = ((FSObject)value).getObject();
+
+        try {
+            if (object instanceof Object[]) {
+                ((Object[])object)[toIndex(name, index)] = value;
+            } else if (object instanceof int[] && value instanceof Integer) {
+                ((int[])object)[toIndex(name, index)] = (Integer)value;
+            } else if (object instanceof double[] && value instanceof Number) {
+                ((double[])object)[toIndex(name, index)] = ((Number)value).doubleValue();
+            } else if (object instanceof List) {
+                ((List<Object>)object).set(toIndex(name, index), value);
+            } else if (object instanceof Map) {
+                ((Map<Object, Object>)object).put(index, value);
+            } else if (object.getClass().isArray()) {
+                Array.set(object, toIndex(name, index), value);
+            } else {
+                throw new FSException("variable " + name + " is not an array, List or Map");
+            }
+        } catch (FSException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FSException("Could not access " + name + "[" + index + "] " + e.getMessage());
+        }
+    }
+
+    public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        String[] path = path(name);
+
+        if (path != null) {
+            Object object = target(path);
+            if (object != null) return objectMethod(object, path[path.length-1], params.toArray());
+        } else if (name.equals("create")) {
+            // create a new object
+            return createObject(params.get(0).toString(), params);
+        } else if (name.equals("getClass")) {
+            // get a class object - this lets us call static methods etc.
+            return new FSObject(getClass((String)params.get(0)));
+        } else if (name.equals("null")) {
+            // get a typed null object
+            return new FSObject(null, getClass((String)params.get(0)));
+        }
+        throw new FSUnsupportedException();
+    }
+
+    /*
+     * Splits a dotted name into the variable, the properties leading to
+     * the target object and the member of the target. The names come from
+     * the script, so each one is split only once.
+     */
+    private String[] path(String name) throws FSException {
+        if (name.indexOf('.') <= 0) return null;
+        String[] path = paths.get(name);
+        if (path == null) {
+            path = name.split("\\.", -1);
+            for (String part : path) {
+                if (part.isEmpty()) throw new FSException("invalid name " + name);
+            }
+            paths.put(name, path);
+        }
+        return path;
+    }
+
+    /*
+     * Returns the object whose member is the last part of a path, null if
+     * the variable is not an object at all
+     */
+    private Object target(String[] path) throws FSException {
+        Object object = parser().getVar(path[0]);
+
+        // we only work with FSObjects
+        if (!(object instanceof FSObject)) return null;
+        object = ((FSObject)object).getObject();
+
+        for (int i = 1; ; i++) {
+            if (object == null) {
+                throw new FSException("variable " + String.join(".", Arrays.copyOf(path, i)) + " is null");
+            }
+            if (i == path.length-1) return object;
+            object = getObjectVar(object, path[i]);
+            if (object instanceof FSObject) object = ((FSObject)object).getObject();
+        }
+    }
+
+    /*
+     * Returns the (unwrapped) object indexed by name[index], name being a
+     * script variable or a dotted path, null if it is not an object at all
+     */
+    private Object indexed(String name) throws FSException {
+        Object object;
+        String[] path = path(name);
+
+        if (path != null) {
+            object = target(path);
+            if (object == null) return null;
+            object = getObjectVar(object, path[path.length-1]);
+        } else {
+            // only script variables, anything else belongs to the host
+            Parser p = parser();
+            if (!p.hasVar(name)) return null;
+            object = p.getVar(name);
+        }
+
+        // we only work with FSObjects
+        if (!(object instanceof FSObject)) return null;
+        object = ((FSObject)object).getObject();
+        if (object == null) throw new FSException("variable " + name + " is null");
+        return object;
+    }
+
+    private static int toIndex(String name, Object index) throws FSException {
+        if (index instanceof Integer) return (Integer)index;
+        throw new FSException("index of " + name + " is not an int: " + index);
+    }
+
+    private static Object normalize(Object o, Class<?> c) {
+        return MethodInvoker.normalize(o, c);
+    }
+
+    /*
+     * Called to invoke a method of a given object - tries to be fairly
+     * comprehensive when it comes to checking types/etc so we don't get
+     * bad calls
+     */
+    protected Object objectMethod(Object target, String methodName, Object[] params) throws FSException {
+        MethodInvoker invoker;
+        try {
+            Class<?> c = (target instanceof Class) ? (Class<?>)target : target.getClass();
+            invoker = introspector.getInvoker(c, methodName, params);
+        } catch (Exception ex) {
+            throw new FSException("Error calling method "+methodName+ex.getMessage());
+        }
+        if (invoker == null) throw new FSReflectionException("Error method " + methodName + " does not exists or ambigous");
+        return invoke(invoker, target, params, methodName);
+    }
+
+    private Object invoke(MethodInvoker invoker, Object target, Object[] params, String methodName) throws FSException {
+        try {
+            // the invoker unwraps the FSObjects and normalizes the result
+            return invoker.invoke(target, params);
+        } catch (Exception ex) {
+            exceptionHandler.handle(methodName, ex);
+            return nullObj;
+        }
+    }
+
+
+    /*
+     * Creates an object of class <className>, the constructor arguments
+     * follow the class name in params
+     */
+    private Object createObject(String className, ArrayList<Object> params)
+    throws FSException {
+        try {
+            Class<?> c = getClass(className);
+
+            if (c == null) return null;
+
+            // build array of our params
+            Object[] o = new Object[params.size()-1];
+            Object tmpObj;
+
+            for (int i = 0; i < o.length ; i++) {
+                //unwrap fsobjects
+                tmpObj = params.get(i+1);
+                if (tmpObj instanceof FSObject) {
+                    o[i] = ((FSObject)tmpObj).getObject();
+                } else {
+                    o[i] = tmpObj;
+                }
+            }
+
+            // find appropriate constructor and use it to create object
+            ConstructorInvoker constructor = introspector.getConstructor(c, o);
+            if (constructor != null) return constructor.newInstance(o);
+        } catch (Exception e) {
+            throw new FSException("Error Creating new object "+e.getMessage());
+        }
+
+        return null;
+    }
+
+    /*
+     * Returns a reference to a Class object of type <name>
+     */
+    private Class<?> getClass(String name) throws FSException {
+        try {
+            return introspector.loadClass(Thread.currentThread().getContextClassLoader(), name);
+        } catch (Exception e) {
+            throw new FSException("Error getting class "+name+" "+e.getMessage());
+        }
+
+    }
+
+    /*
+     * Sets a field of an object (also tries java brans style set)
+     */
+    protected void setObjectVar(Object o, String name, Object value) throws FSException {
+        PropertyAccessor property = property(o, name);
+        Object[] arr = new Object[1];
+        arr[0] = value;
+
+        MethodInvoker setter;
+        try {
+            setter = property.getSetter(arr);
+        } catch (Exception ex) {
+            throw new FSException("Error calling method "+property.getSetterName()+ex.getMessage());
+        }
+        if (setter != null) {
+            invoke(setter, o, arr, property.getSetterName());
+        } else if (property.hasField()) {
+            // method not found, use direct field access
+            try {
+                property.setField(o, value);
+            }
+            catch (Exception e) {
+                throw new FSException("Could not access " + name + " " + e.getMessage());
+            }
+        } else {
+            // oops field not found
+            throw new FSReflectionException("Error method " + property.getSetterName() + " does not exists or ambigous");
+        }
+    }
+
+    /*
+     * Returns a field of an object (also tries java beans style get)
+     */
+    protected Object getObjectVar(Object o, String name) throws FSException {
+        PropertyAccessor property = property(o, name);
+
+        MethodInvoker getter = property.getGetter();
+        if (getter != null) {
+            return invoke(getter, o, NO_ARGS, property.getGetterName());
+        } else if (property.hasField()) {
+            // method not found, use direct field access
+            try {
+                return property.getField(o);
+            }
+            catch (Exception e) {
+                throw new FSException("Could not access " + name + " " + e.getMessage());
+            }
+        } else {
+            // oops field not found
+            throw new FSReflectionException("Error method " + property.getGetterName() + " does not exists or ambigous");
+        }
+    }
+
+    private PropertyAccessor property(Object o, String name) throws FSException {
+        try {
+            Class<?> c = (o instanceof Class) ? (Class<?>)o : o.getClass();
+            return introspector.getProperty(c, name);
+        } catch (Exception ex) {
+            throw new FSException("Error calling method get"+name+ex.getMessage());
+        }
+    }
+
+    /**
+     * set the exception handler routine which should be called for all exceptions caused by the
+     * referenced getter and setter methods (not the exceptions while trying to call, but only the
+     * exceptions thrown by the called code).
+     * @param eh the exception handler which should be used
+     */
+    public void setExceptionHandler(ExceptionHandler eh) {
+        exceptionHandler = eh;
+    }
+
+    /**
+     * set the introspector used to look up methods, e.g. one with a bound on the number of
+     * cached classes.
+     * @param introspector the introspector which should be used
+     */
+    public void setIntrospector(IntrospectorBase introspector) {
+        this.introspector = introspector;
+    }
+
+    /**
+     * @return the introspector used to look up methods, which also reports cache statistics
+     */
+    public IntrospectorBase getIntrospector() {
+        return introspector;
+    }
+
+    public interface ExceptionHandler {
+        void handle(String name, Exception exc) throws FSException;
+    }
+
+    // marker for method not found exceptions
+    public static class FSReflectionException extends FSException {
+        public FSReflectionException() {}
+        public FSReflectionException(String msg) { super(msg); }
+    }
+
+}
+
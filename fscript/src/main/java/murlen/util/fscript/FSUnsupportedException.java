@@ -25,7 +25,18 @@ package murlen.util.fscript;
  */
 
 public class FSUnsupportedException extends FSException {
-    public FSUnsupportedException() {}
+    /**
+     *Thrown by extensions for the names they do not support. Unlike a new
+     *exception it costs nothing to throw, so extensions which are tried for
+     *every name (see FSNamedExtension) should use this one.
+     **/
+    public static final FSUnsupportedException UNSUPPORTED = new FSUnsupportedException();
+
+    //these exceptions are caught by FScript to try the next extension,
+    //so they are created without a stack trace
+    public FSUnsupportedException() {
+        super(null, false);
+    }
     
     /**
      *Exception specifically used to indicate that extensions/subclasses
@@ -33,7 +44,7 @@ public class FSUnsupportedException extends FSException {
      *@param name the name of function/variable not supported
      **/
     public FSUnsupportedException(String name) {
-        super("Unrecognized External: " + name);
+        super("Unrecognized External: " + name, false);
     }
 }
 
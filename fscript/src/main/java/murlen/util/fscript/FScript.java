@@ -0,0 +1,761 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSDoubleFunction;
+import murlen.util.fscript.api.FSExtension;
+import murlen.util.fscript.api.FSFunction0;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunction2;
+import murlen.util.fscript.api.FSFunctionExtension;
+import murlen.util.fscript.api.FSFunctionN;
+import murlen.util.fscript.api.FSFunctionProvider;
+import murlen.util.fscript.api.FSIntFunction;
+import murlen.util.fscript.api.FSNamedExtension;
+import murlen.util.fscript.api.FSParserExtension;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Femto Script - This is the main FScript package class</p>
+ * <p>
+ * <I>Copyright (C) 2000-2003 murlen.</I></p>
+ * <p>
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.</p>
+ * <p>
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.</p>
+ *
+ * <p>You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the Free
+ * Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA </p>
+ * @author murlen
+ * @author Joachim Van der Auwera
+ * @version 1.12
+ *
+ * modifications by Joachim Van der Auwera
+ * 02.08.2002 added support for FSParserExtension
+ * 15.03.2003 getContext()
+ */
+
+public class FScript implements FSExtension {
+    
+    private final Parser parser;
+    private final LineLoader code;
+    private final ArrayList<FSExtension> extensions;
+    //the extensions to try for a name, see index()
+    private FSExtension[] unnamed = new FSExtension[0];
+    private HashMap<String, FSExtension[]> varIndex = new HashMap<>();
+    private HashMap<String, FSExtension[]> arrayIndex = new HashMap<>();
+    private HashMap<String, FSExtension[]> functionIndex = new HashMap<>();
+    private static final int VARS = 0, ARRAYS = 1, FUNCTIONS = 2;
+    private int version; //of the registered extensions, checked by HostSite
+    //sites of the host names used by the line interpreter
+    private final ConcurrentHashMap<String, HostSite> varSites = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostSite> arraySites = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostSite> functionSites = new ConcurrentHashMap<>();
+    private Code compiled; // compiled form of the loaded code, null when not compiled yet
+    private boolean compile = true;
+    private int callThreshold = 1000;
+    private int loopThreshold = 1000;
+    private final ExpressionCache expressions = new ExpressionCache(1024);
+    private final ThreadLocal<Parser> boundParser = new ThreadLocal<>(); //of an ExecutionContext, see bindParser()
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final String[] NO_PARAMS = new String[0];
+    
+    /** Constructor */
+    public FScript() {
+        parser = new Parser(this);
+        code = new LineLoader();
+        parser.setCode(code);
+        extensions = new ArrayList<>();
+        
+    }
+    /**
+     * Loads FScript parser with text from an InputStreamReader
+     * @param is the input stream
+     */
+    public void load(Reader is) throws IOException {
+        code.load(is);
+        compiled = null;
+    }
+    
+    /**
+     * Load an individual line into the parser, intended for
+     * document processing applications
+     * @param line the line to load
+     */
+    public void loadLine(String line) {
+        code.addLine(line);
+        compiled = null;
+    }
+    
+    /**
+     *Registers language extensions
+     *@param extension the extension to register
+     **/
+    public void registerExtension(FSExtension extension) {
+        if (extension instanceof FSParserExtension)
+            ((FSParserExtension)extension).setParser(scriptParser());
+        extensions.add(extension);
+        index();
+    }
+    
+    /**
+     *Removes a previously registered extenison
+     *@param extension the extension to remove
+     **/
+    public void unRegisterExtension(FSExtension extension){
+        extensions.remove(extension);
+        index();
+    }
+
+    /**
+     * Binds the FSParserExtensions to the parser running on this thread, an
+     * ExecutionContext's while it runs with this host, so they see the
+     * variables of that context. The script space methods use it as well.
+     * @param p the parser, the own one to undo the binding
+     * @return the parser bound before, to restore afterwards
+     */
+    Parser bindParser(Parser p) {
+        Parser outer = scriptParser();
+        if (p == outer)
+            return outer;
+        if (p == parser)
+            boundParser.remove();
+        else
+            boundParser.set(p);
+        for (FSExtension extension : extensions) {
+            if (extension instanceof FSParserExtension)
+                ((FSParserExtension) extension).setParser(p);
+        }
+        return outer;
+    }
+
+    //the parser host code on this thread works with
+    private Parser scriptParser() {
+        Parser p = boundParser.get();
+        return (p != null) ? p : parser;
+    }
+
+    /**
+     * Rebuilds the index of the extensions to try for each name. A name
+     * listed by FSNamedExtensions maps to those, and to the extensions which
+     * do not list their names, in the order they were registered. Any other
+     * name only needs the latter.
+     */
+    private void index() {
+        ArrayList<FSExtension> others = new ArrayList<>();
+        for (FSExtension extension : extensions) {
+            if (!(extension instanceof FSNamedExtension))
+                others.add(extension);
+        }
+        unnamed = others.toArray(new FSExtension[0]);
+        version++;
+        varIndex = index(VARS);
+        arrayIndex = index(ARRAYS);
+        functionIndex = index(FUNCTIONS);
+    }
+
+    private HashMap<String, FSExtension[]> index(int kind) {
+        IdentityHashMap<FSExtension, HashSet<String>> names = new IdentityHashMap<>();
+        HashSet<String> all = new HashSet<>();
+        for (FSExtension extension : extensions) {
+            if (extension instanceof FSNamedExtension) {
+                FSNamedExtension named = (FSNamedExtension) extension;
+                Collection<String> list = (kind == VARS) ? named.getVarNames()
+                        : (kind == ARRAYS) ? named.getArrayNames() : named.getFunctionNames();
+                HashSet<String> set = (list == null) ? new HashSet<>() : new HashSet<>(list);
+                names.put(extension, set);
+                all.addAll(set);
+            }
+        }
+
+        HashMap<String, FSExtension[]> index = new HashMap<>();
+        for (String name : all) {
+            ArrayList<FSExtension> handlers = new ArrayList<>();
+            for (FSExtension extension : extensions) {
+                HashSet<String> set = names.get(extension);
+                if (set == null || set.contains(name))
+                    handlers.add(extension);
+            }
+            index.put(name, handlers.toArray(new FSExtension[0]));
+        }
+        return index;
+    }
+
+    private FSExtension[] handlers(HashMap<String, FSExtension[]> index, String name) {
+        FSExtension[] handlers = index.get(name);
+        return (handlers != null) ? handlers : unnamed;
+    }
+    
+    /**
+     * Chooses whether run() and cont() compile the loaded code before running
+     * it (the default), or interpret the lines directly. Interpreting avoids
+     * the compile step for code which only runs once.
+     * <p>Either way the code moves on to a faster form once it turns out to
+     * be hot, see setCompileThresholds(): interpreted functions and loops
+     * get compiled, compiled ones are turned into JVM classes.</p>
+     * @param compile false to interpret
+     */
+    public void setCompiled(boolean compile) {
+        this.compile = compile;
+    }
+
+    /**
+     * Sets how soon hot code moves on to a faster form. A function moves on
+     * after being called the given number of times, a while loop after
+     * that many iterations (even while it is still running).
+     * <p>The defaults are 1000 for both, 0 means never.</p>
+     * @param calls calls of a function before it is compiled
+     * @param loops iterations of a while loop before it is compiled
+     */
+    public void setCompileThresholds(int calls, int loops) {
+        callThreshold = calls;
+        loopThreshold = loops;
+    }
+
+    int getCallThreshold() {
+        return callThreshold;
+    }
+
+    int getLoopThreshold() {
+        return loopThreshold;
+    }
+
+    /**
+     * Run the parser over currently loaded code
+     * <p>The code is compiled the first time it is run, later runs reuse
+     * the compiled form until more code is loaded.</p>
+     *@return any return value of the script's execution (will be one of
+     *FScript's supported type objects, Integer,String,Double)
+     */
+    public Object run() throws IOException, FSException {
+        //reset the internal variable state
+        parser.reset();
+        if (!compile)
+            return parser.parse(0, code.lineCount() - 1);
+        if (code.lineCount() == 0)
+            return null;
+        if (compiled == null)
+            compiled = compile(0);
+        return parser.exec(compiled, code.lineCount() - 1);
+    }
+    
+    /**
+     * Evaluates an expression against the variables of the script (after
+     * run() these are its globals, in a callback from a script function
+     * its local variables come first).
+     * <p>The expression is compiled the first time, and kept in the
+     * expression cache for the next evaluations of the same text.</p>
+     * @param expr the expression
+     * @return the value of the expression
+     */
+    public Object evaluateExpression(String expr) throws IOException, FSException {
+        Parser p = scriptParser();
+        if (p != parser) //an ExecutionContext runs, the cache is for the globals of this script
+            return p.eval(new CompiledExpression(expr, p.getScope(), NO_PARAMS), NO_ARGS);
+
+        CompiledExpression e = expressions.get(expr);
+        if (e == null) {
+            e = compileExpression(expr);
+            expressions.put(expr, e);
+        }
+        return parser.eval(e, NO_ARGS);
+    }
+
+    /**
+     * Compiles an expression for evaluate()
+     * @param expr the expression
+     * @param params the names of its parameters, which it uses like variables
+     * @return the compiled expression, only valid for this FScript
+     */
+    public CompiledExpression compileExpression(String expr, String... params) throws IOException {
+        return new CompiledExpression(expr, parser.getScope(), params);
+    }
+
+    /**
+     * Evaluates a compiled expression against the variables of the script,
+     * as evaluateExpression() does
+     * @param expr the expression, as compiled by this FScript
+     * @param args the values of its parameters
+     * @return the value of the expression
+     */
+    public Object evaluate(CompiledExpression expr, Object... args) throws IOException, FSException {
+        return parser.eval(expr, args);
+    }
+
+    /**
+     * @return the cache of the expressions compiled by evaluateExpression()
+     */
+    public ExpressionCache getExpressionCache() {
+        return expressions;
+    }
+    
+    /**
+     * Resets the internal code store
+     */
+    public void reset() {
+        code.reset();
+        parser.reset();
+        compiled = null;
+    }
+    
+    /**
+     * Continues execution from current point - only really
+     * useful in a document processing application where you may
+     * wish to add code, execute, add some more code..etc..
+     *@return any return value of the script's execution (will be one of
+     *FScript's supported type objects, Integer,String,Double)
+     */
+    public Object cont() throws IOException, FSException {
+        if (code.getCurLine() == 0)
+            return run();
+        int from = code.getCurLine() + 1;
+        if (!compile)
+            return parser.parse(from, code.lineCount() - 1);
+        if (code.lineCount() <= from)
+            return null;
+        return parser.exec(compile(from), code.lineCount() - 1);
+    }
+
+    //compiles the loaded code from a line on to bytecode
+    private Code compile(int from) throws IOException {
+        return CodeGen.generate(new ScriptCompiler(code, parser.getScope()).compile(from, code.lineCount() - 1));
+    }
+    
+    /**
+     * Returns more details on any error states, indicated by
+     * FSExceptions.
+     * @return String, see below <br>
+     * s[0]=the error text <BR>
+     * s[1]=the line number <BR>
+     * s[2]=the line text <BR>
+     * s[3]=the current token <BR>
+     * s[4]=a variable dump (current scope) <BR>
+     * s[5]=a global variable dump (only if currnent scope is not global <BR>
+     */
+    public String[] getError() {
+        return parser.getError();
+    }
+    
+    /**
+     * Override this method to allow external access to variables
+     * in your code.
+     * @param name the name of the variable the parser is requesting
+     * e.g
+     * add this...
+     * <br>
+     * if (name.equals("one") { return new Integer(1) }
+     * <br>
+     * to allow the code
+     * <br>
+     * a=one
+     * <br>
+     * to work in FScript
+     * @return Object - currently expected to be String or Integer
+     */
+    public Object getVar(String name) throws FSException {
+        throw new FSUnsupportedException(name);
+    }
+    
+    /**
+     * Override this method to allow external access to variables
+     * in your code.
+     *<p>As getVar(String name) but allows an index variable to be
+     *passed so code such as :
+     * name=list[2]
+     * is possible
+     * @param name the name of the variable the parser is requesting
+     * @return Object - currently expected to be String, Integer or Double
+     */
+    public Object getVar(String name, Object index) throws FSException {
+        throw new FSUnsupportedException(name);
+    }
+    
+    /**
+     *Entry point for parser (checks against extensions)
+     **/
+    Object getVarEntry(String name, Object index) throws FSException {
+        for (FSExtension extension : handlers((index == null) ? varIndex : arrayIndex, name)) {
+            try {
+                return (index == null) ? extension.getVar(name) : extension.getVar(name, index);
+            } catch (FSUnsupportedException e) {
+                //Do nothing continue looping through extensions
+            }
+        }
+
+        //make call to (hopefully) subclass
+        return (index == null) ? getVar(name) : getVar(name, index);
+    }
+
+    /**
+     *Entry point for compiled code, going straight to the extension which
+     *handled the site last time
+     **/
+    Object getVarEntry(HostSite site, Object index) throws FSException {
+        HostSite.Handler cached = site.handler(this, version);
+        FSExtension declined = null;
+        FSUnsupportedException unsupported = null;
+        if (cached != null) {
+            try {
+                return getVar(extension(cached), site.name, index);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                declined = extension(cached);
+                unsupported = e;
+            }
+        }
+
+        for (FSExtension extension : handlers((index == null) ? varIndex : arrayIndex, site.name)) {
+            if (extension == declined)
+                continue;
+            try {
+                Object val = getVar(extension, site.name, index);
+                site.setHandler(this, version, extension);
+                return val;
+            } catch (FSUnsupportedException e) {
+                //Do nothing continue looping through extensions
+            }
+        }
+
+        //make call to (hopefully) subclass
+        if (declined == this)
+            throw unsupported;
+        site.setHandler(this, version, null);
+        return getVar(this, site.name, index);
+    }
+
+    private static Object getVar(FSExtension extension, String name, Object index) throws FSException {
+        return (index == null) ? extension.getVar(name) : extension.getVar(name, index);
+    }
+
+    //the extension a handler calls, null standing for this host
+    private FSExtension extension(HostSite.Handler handler) {
+        return (handler.extension != null) ? handler.extension : this;
+    }
+    
+    /**
+     * Logical inverse of getVar
+     * @param name the variable name
+     * @param value the value to set it to
+     */
+    public void setVar(String name, Object value) throws FSException {
+        throw new FSUnsupportedException(name);
+    }
+    
+    /**
+     * Logical inverse of getVar (with index)
+     * @param name the variable name
+     * @param index the index into the 'array'
+     * @param value the value to set it to
+     */
+    public void setVar(String name, Object index, Object value) throws FSException {
+        throw new FSUnsupportedException(name);
+    }
+    
+    
+    /**
+     *Entry point for parser (checks against extensions), only the first
+     *extension handling the name is set
+     **/
+    void setVarEntry(String name, Object index, Object value) throws FSException {
+        setVarEntry(site((index == null) ? varSites : arraySites, name), index, value);
+    }
+
+    private static HostSite site(ConcurrentHashMap<String, HostSite> sites, String name) {
+        HostSite site = sites.get(name);
+        if (site == null) {
+            site = new HostSite(name);
+            HostSite other = sites.putIfAbsent(name, site);
+            if (other != null) site = other;
+        }
+        return site;
+    }
+
+    /**
+     *Entry point for compiled code, going straight to the extension which
+     *handled the site last time
+     **/
+    void setVarEntry(HostSite site, Object index, Object value) throws FSException {
+        HostSite.Handler cached = site.handler(this, version);
+        FSExtension declined = null;
+        FSUnsupportedException unsupported = null;
+        if (cached != null) {
+            try {
+                setVar(extension(cached), site.name, index, value);
+                return;
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                declined = extension(cached);
+                unsupported = e;
+            }
+        }
+
+        for (FSExtension extension : handlers((index == null) ? varIndex : arrayIndex, site.name)) {
+            if (extension == declined)
+                continue;
+            try {
+                setVar(extension, site.name, index, value);
+                site.setHandler(this, version, extension);
+                return;
+            } catch (FSUnsupportedException e) {
+                //Do nothing continue looping through extensions
+            }
+        }
+
+        //make call to (hopefully) subclass
+        if (declined == this)
+            throw unsupported;
+        site.setHandler(this, version, null);
+        setVar(this, site.name, index, value);
+    }
+
+    private static void setVar(FSExtension extension, String name, Object index, Object value) throws FSException {
+        if (index == null)
+            extension.setVar(name, value);
+        else
+            extension.setVar(name, index, value);
+    }
+    
+    /**
+     * Override this call to implement custom functions
+     * See the BasicIO class for an example
+     *
+     * @param name the function name
+     * @param params an ArrayList of parameter values
+     * @return an Object, currently expected to be Integer or String
+     */
+    public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        throw new FSUnsupportedException(name);
+    }
+    
+    /**
+     *Entry point for parser (checks against extensions)
+     **/
+    Object callFunctionEntry(String name, ArrayList<Object> params) throws FSException {
+        return callFunctionEntry(site(functionSites, name), params);
+    }
+
+    /**
+     *Entry point for parser, for a call of up to two arguments
+     **/
+    Object callFunctionEntry(String name, int argc, Object a, Object b) throws FSException {
+        return callFunctionEntry(site(functionSites, name), argc, a, b);
+    }
+
+    /**
+     *Entry point for compiled code, going straight to the extension which
+     *handled the site last time
+     **/
+    Object callFunctionEntry(HostSite site, ArrayList<Object> params) throws FSException {
+        return callFunctionEntry(site, functionHandler(site), params);
+    }
+
+    private Object callFunctionEntry(HostSite site, HostSite.Handler cached, ArrayList<Object> params) throws FSException {
+        if (cached != null) {
+            try {
+                return (cached.function != null) ? cached.function.callFunction(site.name, params) : extension(cached).callFunction(site.name, params);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                return lookupFunction(site, params, extension(cached), e);
+            }
+        }
+        return lookupFunction(site, params, null, null);
+    }
+
+    //tries the handlers of the name but the one which declined already, the host last
+    private Object lookupFunction(HostSite site, ArrayList<Object> params, FSExtension declined, FSUnsupportedException unsupported) throws FSException {
+        for (FSExtension fsExtension : handlers(functionIndex, site.name)) {
+            if (fsExtension == declined)
+                continue;
+            try {
+                Object val = fsExtension.callFunction(site.name, params);
+                site.setHandler(this, version, fsExtension);
+                return val;
+            } catch (FSUnsupportedException e) {
+                //Do nothing continue looping through extensions
+            }
+        }
+
+        //make call to (hopefully) subclass
+        if (declined == this)
+            throw unsupported;
+        site.setHandler(this, version, null);
+        return callFunction(site.name, params);
+    }
+
+    /**
+     *Entry point for compiled code, for a call of up to two arguments: a
+     *function object which takes them as they are needs no list
+     **/
+    Object callFunctionEntry(HostSite site, int argc, Object a, Object b) throws FSException {
+        return callFunctionEntry(site, functionHandler(site), argc, a, b);
+    }
+
+    private Object callFunctionEntry(HostSite site, HostSite.Handler cached, int argc, Object a, Object b) throws FSException {
+        if (cached != null && cached.function != null) {
+            try {
+                return call(cached.function, site.name, argc, a, b);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                return lookupFunction(site, arguments(argc, a, b), cached.extension, e);
+            }
+        }
+        return callFunctionEntry(site, cached, arguments(argc, a, b));
+    }
+
+    /**
+     *Entry point for compiled code, for a call of more than two arguments:
+     *an FSFunctionN gets the array as it is
+     **/
+    Object callFunctionEntry(HostSite site, Object[] args) throws FSException {
+        HostSite.Handler cached = functionHandler(site);
+        if (cached != null && cached.function instanceof FSFunctionN) {
+            try {
+                return ((FSFunctionN) cached.function).call(args);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                return lookupFunction(site, new ArrayList<>(Arrays.asList(args)), cached.extension, e);
+            }
+        }
+        return callFunctionEntry(site, cached, new ArrayList<>(Arrays.asList(args)));
+    }
+
+    /**
+     *Entry point for compiled code, for a call of one argument computed as
+     *an int: an FSIntFunction or FSDoubleFunction gets it unboxed
+     **/
+    Object callFunctionEntry(HostSite site, int a) throws FSException {
+        HostSite.Handler cached = functionHandler(site);
+        if (cached != null && (cached.function instanceof FSIntFunction || cached.function instanceof FSDoubleFunction)) {
+            try {
+                return (cached.function instanceof FSIntFunction) ? (Object) ((FSIntFunction) cached.function).callInt(a)
+                        : (Object) ((FSDoubleFunction) cached.function).callDouble(a);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                return lookupFunction(site, arguments(1, a, null), cached.extension, e);
+            }
+        }
+        return callFunctionEntry(site, cached, 1, a, null);
+    }
+
+    /**
+     *Entry point for compiled code, for a call of one argument computed as
+     *a double: an FSDoubleFunction gets it unboxed
+     **/
+    Object callFunctionEntry(HostSite site, double a) throws FSException {
+        HostSite.Handler cached = functionHandler(site);
+        if (cached != null && cached.function instanceof FSDoubleFunction) {
+            try {
+                return ((FSDoubleFunction) cached.function).callDouble(a);
+            } catch (FSUnsupportedException e) {
+                //not handled there any more, look it up again without asking it twice
+                return lookupFunction(site, arguments(1, a, null), cached.extension, e);
+            }
+        }
+        return callFunctionEntry(site, cached, 1, a, null);
+    }
+
+    //the handler of a function site, a function object from a provider if there is one
+    private HostSite.Handler functionHandler(HostSite site) {
+        HostSite.Handler cached = site.handler(this, version);
+        return (cached != null) ? cached : resolveFunction(site);
+    }
+
+    //asks the FSFunctionProviders in front of the handlers for a function object
+    private HostSite.Handler resolveFunction(HostSite site) {
+        for (FSExtension extension : handlers(functionIndex, site.name)) {
+            //any other extension can only tell by being called
+            if (!(extension instanceof FSFunctionProvider))
+                return null;
+            FSFunctionExtension function = ((FSFunctionProvider) extension).getFunction(site.name);
+            if (function != null)
+                return site.setHandler(this, version, extension, function);
+        }
+        return null;
+    }
+
+    private static Object call(FSFunctionExtension f, String name, int argc, Object a, Object b) throws FSException {
+        switch (argc) {
+            case 0:
+                if (f instanceof FSFunction0)
+                    return ((FSFunction0) f).call0();
+                break;
+            case 1:
+                if (f instanceof FSFunction1)
+                    return ((FSFunction1) f).call1(a);
+                if (f instanceof FSIntFunction && a instanceof Integer)
+                    return ((FSIntFunction) f).callInt((Integer) a);
+                if (f instanceof FSDoubleFunction && a instanceof Number)
+                    return ((FSDoubleFunction) f).callDouble(((Number) a).doubleValue());
+                break;
+            case 2:
+                if (f instanceof FSFunction2)
+                    return ((FSFunction2) f).call2(a, b);
+                break;
+        }
+        if (f instanceof FSFunctionN)
+            return ((FSFunctionN) f).call((argc == 0) ? NO_ARGS : (argc == 1) ? new Object[]{a} : new Object[]{a, b});
+        return f.callFunction(name, arguments(argc, a, b));
+    }
+
+    static ArrayList<Object> arguments(int argc, Object a, Object b) {
+        ArrayList<Object> params = new ArrayList<>(4);
+        if (argc > 0) params.add(a);
+        if (argc > 1) params.add(b);
+        return params;
+    }
+    
+    /**
+     *Sets a variable in script space = the value passed in - the variable
+     *must be have the correct type - note that if the varialble is not defined in the
+     *script, calls will be made to subclass setVar methods - therefore this method
+     *should be used with caution from within an overriden setVar.
+     *@param name the name of the variable
+     *@param value the value to set variable to (String,Integer)*/
+    public final void setScriptVar(String name, Object value) throws FSException {
+        scriptParser().setVar(name, value);
+    }
+    
+    /**
+     *Gets a variable in script space note that if the varialble is not defined in the
+     *script, calls will be made to subclass getVar methods - therefore this method
+     *should be used with caution from within an overriden getVar.
+     *@param name the name of the variable
+     *@return the value of the variable (String,Integer)*/
+    public final Object getScriptVar(String name) throws FSException {
+        return scriptParser().getVar(name);
+    }
+    
+    /**Calls a function in the script - note that if the function is not defined calls
+     *will be made to the subclass callFunction methods - therefore this method should
+     *be used with caution from within an overriden callFunction.
+     *@param name the name of the function
+     *@param params the parameters to pass (must be correct type and number)
+     *@return the return value of the function (String,Integer)
+     */
+    public final Object callScriptFunction(String name, ArrayList<Object> params) throws IOException, FSException {
+        return scriptParser().callFunction(name, params);
+    }
+    
+    /**
+     * get the current context (executed line, variables etc)
+     * @return
+     */
+    public String getContext() {
+        return scriptParser().getContext();
+    }
+    
+}
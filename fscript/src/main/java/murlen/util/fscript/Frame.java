@@ -0,0 +1,133 @@
+package murlen.util.fscript;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <p>Frame - the variables of one scope (the globals, or one function call)</p>
+ * <p>
+ * Variables live in a plain array, the Scope maps their names to slots.
+ * Compiled code knows the slot of every variable it uses, so it never needs
+ * the names. A null value means the variable is not (yet) defined.</p>
+ */
+final class Frame {
+
+    /**
+     * Maps variable names to slots. Names are only ever added, so a slot
+     * handed out to compiled code stays valid.
+     */
+    static final class Scope {
+        private final HashMap<String, Integer> slots = new HashMap<>();
+        private String[] names = new String[8];
+        private int size;
+
+        /**
+         * @return the slot of name, or -1 when it has none
+         */
+        int indexOf(String name) {
+            Integer n = slots.get(name);
+            return (n == null) ? -1 : n;
+        }
+
+        /**
+         * @return the slot of name, a new one if it has none yet
+         */
+        int define(String name) {
+            Integer n = slots.get(name);
+            if (n != null) return n;
+            if (size == names.length) names = Arrays.copyOf(names, size * 2);
+            names[size] = name;
+            slots.put(name, size);
+            return size++;
+        }
+
+        String name(int slot) {
+            return names[slot];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A variable as used by compiled code, its slots are filled in by
+     * ScriptCompiler once the enclosing function (or script) is compiled.
+     */
+    static final class Ref {
+        final String name;
+        int local = -1; //slot in the frame the code runs in
+        int global = -1; //slot in the globals, -1 for code outside functions
+
+        Ref(String name) {
+            this.name = name;
+        }
+    }
+
+    final Scope scope;
+    Object[] values;
+
+    Frame(Scope scope) {
+        this.scope = scope;
+        values = new Object[Math.max(scope.size(), 4)];
+    }
+
+    /**
+     * @return the slot of a defined variable, -1 if it is not defined
+     */
+    int indexOf(String name) {
+        int n = scope.indexOf(name);
+        return (n >= 0 && n < values.length && values[n] != null) ? n : -1;
+    }
+
+    /**
+     * @return the value of a variable, null if it is not defined
+     */
+    Object get(String name) {
+        int n = scope.indexOf(name);
+        return (n >= 0 && n < values.length) ? values[n] : null;
+    }
+
+    /**
+     * Sets a variable, giving it a slot when needed
+     */
+    void put(String name, Object value) {
+        int n = scope.define(name);
+        fit();
+        values[n] = value;
+    }
+
+    /**
+     * Grows the values to cover all slots of the scope
+     */
+    void fit() {
+        if (values.length < scope.size())
+            values = Arrays.copyOf(values, Math.max(scope.size(), values.length * 2));
+    }
+
+    /**
+     * @return a frame holding the defined variables of this one, in a scope of its own
+     */
+    Frame copy() {
+        Frame f = new Frame(new Scope());
+        for (int n = 0; n < values.length && n < scope.size(); n++) {
+            if (values[n] != null)
+                f.put(scope.name(n), values[n]);
+        }
+        return f;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder("{");
+        for (int n = 0; n < values.length && n < scope.size(); n++) {
+            if (values[n] == null) continue;
+            if (s.length() > 1) s.append(", ");
+            s.append(scope.name(n)).append('=').append(values[n]);
+        }
+        return s.append('}').toString();
+    }
+}
@@ -0,0 +1,98 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSExtension;
+import murlen.util.fscript.api.FSFunctionExtension;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * <p>HostSite - a place in compiled code which reads or assigns a host
+ * variable or array, or calls a host function</p>
+ * <p>
+ * It remembers the extension (or the FScript itself) which handled its name
+ * the last time, so the next time that one is called directly (an inline
+ * cache). A handler is only valid for the FScript which found it, as long
+ * as that one has the same extensions registered. Compiled code may be run
+ * by several hosts at once (see ExecutionContext), so a site keeps the
+ * handlers of the last few hosts, the oldest one making way for a new host.
+ * A handler which stops supporting the name is simply looked up again. For
+ * a function, it also keeps the function object an FSFunctionProvider gave
+ * for the name.</p>
+ */
+final class HostSite {
+    private static final int HOSTS = 8; //handlers kept, one per host
+    private static final Handler[] NONE = new Handler[0];
+
+    final String name;
+    private volatile Handler[] handlers = NONE; //replaced as a whole
+
+    //replaced as a whole, so threads sharing the code see a consistent one
+    static final class Handler {
+        private final WeakReference<FScript> host; //weak, so a site does not keep hosts alive
+        final int version;
+        final FSExtension extension; //null for the host itself
+        final FSFunctionExtension function; //given by an FSFunctionProvider, or null
+
+        Handler(FScript host, int version, FSExtension extension, FSFunctionExtension function) {
+            this.host = new WeakReference<>(host);
+            this.version = version;
+            this.extension = extension;
+            this.function = function;
+        }
+    }
+
+    HostSite(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the handler found last time, null when there is none for
+     * this host and version of its extensions
+     */
+    Handler handler(FScript host, int version) {
+        for (Handler h : handlers) {
+            if (h.host.get() == host)
+                return (h.version == version) ? h : null;
+        }
+        return null;
+    }
+
+    /**
+     * Remembers the handler of a host, an extension or null for the host
+     * itself
+     */
+    void setHandler(FScript host, int version, FSExtension extension) {
+        setHandler(host, version, extension, null);
+    }
+
+    Handler setHandler(FScript host, int version, FSExtension extension, FSFunctionExtension function) {
+        Handler h = new Handler(host, version, extension, function);
+        Handler[] old = handlers;
+        Handler[] a = null;
+        for (int n = 0; n < old.length; n++) {
+            FScript other = old[n].host.get();
+            if (other == host || other == null) {
+                a = old.clone();
+                a[n] = h;
+                break;
+            }
+        }
+        if (a == null) {
+            if (old.length < HOSTS) {
+                a = Arrays.copyOf(old, old.length + 1);
+            } else {
+                a = new Handler[HOSTS];
+                System.arraycopy(old, 1, a, 0, HOSTS - 1);
+            }
+            a[a.length - 1] = h;
+        }
+        //racing threads may lose each other's handler, they find it again
+        handlers = a;
+        return h;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,138 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+
+/**
+ * <p>JavaCode - super class of the classes JavaGen generates</p>
+ * <p>
+ * A generated class is defined into this package (see JavaGen), so it
+ * can use the package private members of this class. The static methods
+ * are what the generated code calls for everything it can not do with
+ * plain JVM instructions, mostly the instructions of Code working on
+ * objects.</p>
+ */
+abstract class JavaCode {
+    final Object[] consts; //the constants of the Code this was generated from
+
+    JavaCode(Object[] consts) {
+        this.consts = consts;
+    }
+
+    /**
+     * Runs the code in the scope of a parser
+     * @return Code.RETURNED when a return statement was executed, the value
+     * returned is then left in Parser.retVal, or Code.ENDED
+     */
+    abstract int run(Parser p) throws IOException, FSException;
+
+    static Object[] values(Parser p) {
+        return p.vars.values;
+    }
+
+    static Object newNull() {
+        return new FSObject(null);
+    }
+
+    static Object load(Parser p, int line, int local, int global, Object site) throws FSException {
+        p.setLine(line);
+        Object val = p.getSlot(local, global);
+        return (val != null) ? val : Code.getHostVar(p, (HostSite) site, null);
+    }
+
+    static void store(Object val, Parser p, int line, int local, int global, Object site) throws FSException {
+        p.setLine(line);
+        Code.store(p, local, global, (HostSite) site, val);
+    }
+
+    static void define(Parser p, int line, int local, int type, String name) throws FSException {
+        p.setLine(line);
+        Code.define(p, local, type, name);
+    }
+
+    static void init(Object val, Parser p, int line, int local, String name) throws FSException {
+        p.setLine(line);
+        if (val == null) p.parseError("set variable " + name + " with null value");
+        p.setSlot(local, -1, val);
+    }
+
+    static Object index(Object index, Parser p, int line, Object site) throws FSException {
+        p.setLine(line);
+        return Code.getHostVar(p, (HostSite) site, index);
+    }
+
+    static void storeIndex(Object index, Object val, Parser p, int line, Object site) throws FSException {
+        p.setLine(line);
+        try {
+            p.getHost().setVarEntry((HostSite) site, index, val);
+        } catch (Exception e) {
+            p.parseError(e.getMessage());
+        }
+    }
+
+    static Object call(Object[] args, Parser p, int line, Object site) throws IOException, FSException {
+        p.setLine(line);
+        return p.callFunction((HostSite) site, args);
+    }
+
+    static Object call(int a, Parser p, int line, Object site) throws IOException, FSException {
+        p.setLine(line);
+        return p.callFunction((HostSite) site, a);
+    }
+
+    static Object call(double a, Parser p, int line, Object site) throws IOException, FSException {
+        p.setLine(line);
+        return p.callFunction((HostSite) site, a);
+    }
+
+    static Object call(Object a, Object b, Parser p, int line, Object site, int argc) throws IOException, FSException {
+        p.setLine(line);
+        return p.callFunction((HostSite) site, argc, a, b);
+    }
+
+    static Object negate(Object val, Parser p, int line) throws FSException {
+        p.setLine(line);
+        return p.evalNegate(val);
+    }
+
+    static Object not(Object val, Parser p, int line) throws FSException {
+        p.setLine(line);
+        return p.evalNot(val);
+    }
+
+    static Object binop(Object lVal, Object rVal, Parser p, int line, int op) throws FSException {
+        p.setLine(line);
+        return p.evalOp(op, lVal, rVal);
+    }
+
+    static int condition(Object cond, Parser p, int line, String message) throws FSException {
+        p.setLine(line);
+        return p.evalCondition(cond, message);
+    }
+
+    static void ret(Object val, Parser p, int line) {
+        p.setLine(line);
+        p.retVal = val;
+    }
+
+    static void func(Parser p, String name, Object entry) {
+        p.addFunction(name, (Parser.FuncEntry) entry);
+    }
+
+    static void error(Parser p, int line, String message) throws FSException {
+        p.setLine(line);
+        p.parseError(message);
+    }
+
+    static int and(int a, int b) {
+        return (a != 0 && b != 0) ? 1 : 0;
+    }
+
+    static int or(int a, int b) {
+        return (a != 0 || b != 0) ? 1 : 0;
+    }
+
+    //== on doubles compares as Double.equals() does
+    static int equal(double a, double b) {
+        return (Double.doubleToLongBits(a) == Double.doubleToLongBits(b)) ? 1 : 0;
+    }
+}
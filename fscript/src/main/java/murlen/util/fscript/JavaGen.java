@@ -0,0 +1,470 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>JavaGen - turns Code into a JVM class</p>
+ * <p>
+ * Every instruction of the Code is translated on its own into JVM
+ * instructions doing the same, so the JIT can compile the result like any
+ * other Java method. The Code's stacks become the JVM operand stack, typed
+ * values stay ints and doubles on it. Variables stay in the Parser's frame,
+ * and everything working on objects is done by calling the static methods
+ * of JavaCode, the super class of the generated class.</p>
+ * <p>
+ * A class may also run just a part of a Code, a hot while loop entered at
+ * the start of its next iteration. Jumps out of the part then return the
+ * position the Code continues at.</p>
+ * <p>
+ * Each class is defined into this package, as a hidden class (or an
+ * anonymous one before Java 15), so it can use the package private
+ * members of JavaCode and still be unloaded together with the Code it
+ * was generated from. Where neither is possible code stays in Code.</p>
+ */
+final class JavaGen {
+    private static final String SUPER = "murlen/util/fscript/JavaCode";
+    private static final String PARSER = "Lmurlen/util/fscript/Parser;";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String STRING = "Ljava/lang/String;";
+    private static final int THIS = 0, PARSER_ARG = 1, VALUES = 2, ARGS = 3; //JVM locals
+
+    private static final AtomicInteger classes = new AtomicInteger(); //for unique class names
+
+    private final Code source;
+    private final ClassFile.Method m;
+    private final int from, to; //the part of the Code translated
+    private final int[] labels; //label of each jump target in the Code, -1 for others
+    private int maxArgs;
+
+    private JavaGen(Code source, ClassFile.Method m, int from, int to) {
+        this.source = source;
+        this.m = m;
+        this.from = from;
+        this.to = to;
+        labels = new int[source.code.length + 1];
+        Arrays.fill(labels, -1);
+    }
+
+    private static final MethodHandle DEFINE = definer(); //(byte[])Class, null when classes can not be defined
+
+    //finds how to define an unloadable class next to JavaCode
+    private static MethodHandle definer() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            //Java 15 on: lookup.defineHiddenClass(bytes, true).lookupClass()
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Object noOptions = Array.newInstance(option, 0);
+            MethodHandle define = lookup.findVirtual(MethodHandles.Lookup.class, "defineHiddenClass",
+                    MethodType.methodType(MethodHandles.Lookup.class, byte[].class, boolean.class, noOptions.getClass()));
+            define = MethodHandles.insertArguments(define, 2, true, noOptions).bindTo(lookup);
+            return MethodHandles.filterReturnValue(define, lookup.findVirtual(MethodHandles.Lookup.class,
+                    "lookupClass", MethodType.methodType(Class.class)));
+        } catch (ReflectiveOperationException ignored) {}
+        try {
+            //before: unsafe.defineAnonymousClass(JavaCode.class, bytes, null)
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            MethodHandle define = lookup.findVirtual(unsafeClass, "defineAnonymousClass",
+                    MethodType.methodType(Class.class, Class.class, byte[].class, Object[].class));
+            return MethodHandles.insertArguments(define, 2, (Object) null)
+                    .bindTo(theUnsafe.get(null)).bindTo(JavaCode.class);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {}
+        return null;
+    }
+
+    private static Class<?> define(byte[] b) throws ReflectiveOperationException {
+        try {
+            return (Class<?>) DEFINE.invokeExact(b);
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Generates and loads a class running the instructions of a Code from
+     * position from up to to, starting at from with empty stacks
+     * @return an instance of the class, or null when the Code can not be
+     * turned into a class, it then has to stay interpreted
+     */
+    static JavaCode generate(Code c, int from, int to) {
+        if (DEFINE == null)
+            return null;
+        String name = "murlen/util/fscript/GeneratedCode" + classes.incrementAndGet();
+        try {
+            ClassFile cf = new ClassFile(name, SUPER);
+            ClassFile.Method init = cf.method(ClassFile.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V");
+            init.aload(THIS);
+            init.aload(1);
+            init.invoke(ClassFile.INVOKESPECIAL, SUPER, "<init>", "([Ljava/lang/Object;)V");
+            init.op(ClassFile.RETURN);
+            init.maxStack = 2;
+            init.maxLocals = 2;
+
+            ClassFile.Method run = cf.method(ClassFile.ACC_PUBLIC, "run", "(" + PARSER + ")I");
+            JavaGen gen = new JavaGen(c, run, from, to);
+            gen.translate();
+            //each value takes at most two slots, plus what the helpers need
+            run.maxStack = 2 * (c.maxObjects + c.maxPrimitives) + 8;
+            run.maxLocals = ARGS + gen.maxArgs;
+
+            Class<?> cls = define(cf.toByteArray());
+            return (JavaCode) cls.getConstructor(Object[].class).newInstance((Object) c.consts);
+        } catch (IOException | IllegalStateException | LinkageError | ReflectiveOperationException e) {
+            //too large for a class, or otherwise not translatable
+            return null;
+        }
+    }
+
+    private void translate() throws IOException {
+        final int[] code = source.code;
+        labels[to] = m.newLabel();
+        for (int pc = from; pc < to; pc += 1 + Code.operands(code[pc])) {
+            switch (code[pc]) {
+                case Code.JUMP:
+                case Code.LOOP:
+                case Code.IJUMP_FALSE:
+                case Code.JUMP_FALSE:
+                    int target = code[pc + 1];
+                    if (labels[target] < 0) labels[target] = m.newLabel();
+            }
+        }
+
+        m.aload(PARSER_ARG);
+        m.invoke(ClassFile.INVOKESTATIC, SUPER, "values", "(" + PARSER + ")[Ljava/lang/Object;");
+        m.astore(VALUES);
+
+        int pc = from;
+        while (pc < to) {
+            if (labels[pc] >= 0) m.mark(labels[pc]);
+            pc = instruction(pc);
+        }
+
+        //leaving the part translated, the Code goes on at the target
+        for (int target = 0; target < labels.length; target++) {
+            if (labels[target] >= 0 && (target < from || target >= to)) {
+                m.mark(labels[target]);
+                m.push(target);
+                m.op(ClassFile.IRETURN);
+            }
+        }
+    }
+
+    //translates the instruction at pc, returns the position of the next one
+    private int instruction(int pc) throws IOException {
+        final int[] code = source.code;
+        final int op = code[pc];
+        final int line = source.lines[pc];
+        final int next = pc + 1 + Code.operands(op);
+        switch (op) {
+            case Code.ICONST:
+                m.push(code[pc + 1]);
+                break;
+            case Code.ILOAD:
+                loadValue(code[pc + 1], "java/lang/Integer", "intValue", "()I");
+                break;
+            case Code.ISTORE:
+                box("java/lang/Integer", "(I)");
+                storeValue(code[pc + 1]);
+                break;
+            case Code.IADD: m.op(ClassFile.IADD); break;
+            case Code.ISUB: m.op(ClassFile.ISUB); break;
+            case Code.IMUL: m.op(ClassFile.IMUL); break;
+            case Code.IDIV: m.op(ClassFile.IDIV); break;
+            case Code.IMOD: m.op(ClassFile.IREM); break;
+            case Code.IEQ: return compare(ClassFile.IF_ICMPEQ, next);
+            case Code.INE: return compare(ClassFile.IF_ICMPNE, next);
+            case Code.ILT: return compare(ClassFile.IF_ICMPLT, next);
+            case Code.ILE: return compare(ClassFile.IF_ICMPLE, next);
+            case Code.IGT: return compare(ClassFile.IF_ICMPGT, next);
+            case Code.IGE: return compare(ClassFile.IF_ICMPGE, next);
+            case Code.IAND:
+                m.invoke(ClassFile.INVOKESTATIC, SUPER, "and", "(II)I");
+                break;
+            case Code.IOR:
+                m.invoke(ClassFile.INVOKESTATIC, SUPER, "or", "(II)I");
+                break;
+            case Code.INEG: m.op(ClassFile.INEG); break;
+            case Code.INOT: return compare(ClassFile.IFEQ, next);
+            case Code.IJUMP_FALSE:
+                m.jump(ClassFile.IFEQ, labels[code[pc + 1]]);
+                break;
+            case Code.I2D: m.op(ClassFile.I2D); break;
+            case Code.BOX_I:
+                box("java/lang/Integer", "(I)");
+                break;
+
+            case Code.DCONST:
+                m.push((Double) source.consts[code[pc + 1]]);
+                break;
+            case Code.DLOAD:
+                loadValue(code[pc + 1], "java/lang/Double", "doubleValue", "()D");
+                break;
+            case Code.DSTORE:
+                box("java/lang/Double", "(D)");
+                storeValue(code[pc + 1]);
+                break;
+            case Code.DADD: m.op(ClassFile.DADD); break;
+            case Code.DSUB: m.op(ClassFile.DSUB); break;
+            case Code.DMUL: m.op(ClassFile.DMUL); break;
+            case Code.DDIV: m.op(ClassFile.DDIV); break;
+            case Code.DEQ:
+                m.invoke(ClassFile.INVOKESTATIC, SUPER, "equal", "(DD)I");
+                return compare(ClassFile.IFNE, next);
+            case Code.DNE:
+                m.invoke(ClassFile.INVOKESTATIC, SUPER, "equal", "(DD)I");
+                return compare(ClassFile.IFEQ, next);
+            //dcmpg/dcmpl make comparisons with NaN false
+            case Code.DLT:
+                m.op(ClassFile.DCMPG);
+                return compare(ClassFile.IFLT, next);
+            case Code.DLE:
+                m.op(ClassFile.DCMPG);
+                return compare(ClassFile.IFLE, next);
+            case Code.DGT:
+                m.op(ClassFile.DCMPL);
+                return compare(ClassFile.IFGT, next);
+            case Code.DGE:
+                m.op(ClassFile.DCMPL);
+                return compare(ClassFile.IFGE, next);
+            case Code.DNEG: m.op(ClassFile.DNEG); break;
+            case Code.BOX_D:
+                box("java/lang/Double", "(D)");
+                break;
+
+            case Code.JUMP:
+            case Code.LOOP:
+                m.jump(ClassFile.GOTO, labels[code[pc + 1]]);
+                break;
+
+            case Code.CONST: {
+                Object value = source.consts[code[pc + 1]];
+                if (value instanceof String)
+                    m.push((String) value);
+                else
+                    constant(code[pc + 1]);
+                break;
+            }
+            case Code.NULL:
+                helper("newNull", "()" + OBJECT);
+                break;
+            case Code.LOAD:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push(code[pc + 1]);
+                m.push(code[pc + 2]);
+                constant(code[pc + 3]);
+                helper("load", "(" + PARSER + "III" + OBJECT + ")" + OBJECT);
+                reloadValues();
+                break;
+            case Code.STORE:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push(code[pc + 1]);
+                m.push(code[pc + 2]);
+                constant(code[pc + 3]);
+                helper("store", "(" + OBJECT + PARSER + "III" + OBJECT + ")V");
+                reloadValues();
+                break;
+            case Code.DEFINE:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push(code[pc + 1]);
+                m.push(code[pc + 2]);
+                m.push((String) source.consts[code[pc + 3]]);
+                helper("define", "(" + PARSER + "III" + STRING + ")V");
+                break;
+            case Code.INIT:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push(code[pc + 1]);
+                m.push((String) source.consts[code[pc + 2]]);
+                helper("init", "(" + OBJECT + PARSER + "II" + STRING + ")V");
+                break;
+            case Code.INDEX:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                constant(code[pc + 1]);
+                helper("index", "(" + OBJECT + PARSER + "I" + OBJECT + ")" + OBJECT);
+                reloadValues();
+                break;
+            case Code.STORE_INDEX:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                constant(code[pc + 1]);
+                helper("storeIndex", "(" + OBJECT + OBJECT + PARSER + "I" + OBJECT + ")V");
+                reloadValues();
+                break;
+            case Code.CALL:
+                call(code[pc + 1], code[pc + 2], line);
+                reloadValues();
+                break;
+            case Code.ICALL:
+            case Code.DCALL:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                constant(code[pc + 1]);
+                helper("call", "(" + ((op == Code.ICALL) ? "I" : "D") + PARSER + "I" + OBJECT + ")" + OBJECT);
+                reloadValues();
+                break;
+            case Code.POP:
+                m.op(ClassFile.POP);
+                break;
+            case Code.NEG:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                helper("negate", "(" + OBJECT + PARSER + "I)" + OBJECT);
+                break;
+            case Code.NOT:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                helper("not", "(" + OBJECT + PARSER + "I)" + OBJECT);
+                break;
+            case Code.BINOP:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push(code[pc + 1]);
+                helper("binop", "(" + OBJECT + OBJECT + PARSER + "II)" + OBJECT);
+                break;
+            case Code.JUMP_FALSE:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push((String) source.consts[code[pc + 2]]);
+                helper("condition", "(" + OBJECT + PARSER + "I" + STRING + ")I");
+                m.jump(ClassFile.IFEQ, labels[code[pc + 1]]);
+                break;
+            case Code.RETURN:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                helper("ret", "(" + OBJECT + PARSER + "I)V");
+                m.push(Code.RETURNED);
+                m.op(ClassFile.IRETURN);
+                break;
+            case Code.FUNC:
+                m.aload(PARSER_ARG);
+                m.push((String) source.consts[code[pc + 1]]);
+                constant(code[pc + 2]);
+                helper("func", "(" + PARSER + STRING + OBJECT + ")V");
+                break;
+            case Code.ERROR:
+                m.aload(PARSER_ARG);
+                m.push(line);
+                m.push((String) source.consts[code[pc + 1]]);
+                helper("error", "(" + PARSER + "I" + STRING + ")V");
+                break;
+            case Code.END:
+                m.push(Code.ENDED);
+                m.op(ClassFile.IRETURN);
+                break;
+            default:
+                throw new IllegalStateException("bad opcode " + op + " at " + pc);
+        }
+        return next;
+    }
+
+    /**
+     * Finishes a comparison, branch is the JVM branch taken when it is
+     * true. Followed by a jump when false the two become one branch,
+     * otherwise the result is pushed as 1 or 0.
+     */
+    private int compare(int branch, int next) {
+        final int[] code = source.code;
+        if (next < to && code[next] == Code.IJUMP_FALSE) {
+            m.jump(negate(branch), labels[code[next + 1]]);
+            return next + 2;
+        }
+        int isTrue = m.newLabel(), end = m.newLabel();
+        m.jump(branch, isTrue);
+        m.op(ClassFile.ICONST_0);
+        m.jump(ClassFile.GOTO, end);
+        m.mark(isTrue);
+        m.op(ClassFile.ICONST_0 + 1);
+        m.mark(end);
+        return next;
+    }
+
+    //the branch taken when the given one is not, the JVM has them in pairs
+    private static int negate(int branch) {
+        return ((branch - ClassFile.IFEQ) ^ 1) + ClassFile.IFEQ;
+    }
+
+    private void call(int site, int argc, int line) throws IOException {
+        if (argc <= 2) {
+            for (int n = argc; n < 2; n++)
+                m.op(ClassFile.ACONST_NULL);
+            m.aload(PARSER_ARG);
+            m.push(line);
+            constant(site);
+            m.push(argc);
+            helper("call", "(" + OBJECT + OBJECT + PARSER + "I" + OBJECT + "I)" + OBJECT);
+            return;
+        }
+        if (ARGS + argc > 0xff)
+            throw new IllegalStateException("too many arguments");
+        maxArgs = Math.max(maxArgs, argc);
+        for (int n = argc - 1; n >= 0; n--)
+            m.astore(ARGS + n);
+        m.push(argc);
+        m.type(ClassFile.ANEWARRAY, "java/lang/Object");
+        for (int n = 0; n < argc; n++) {
+            m.op(ClassFile.DUP);
+            m.push(n);
+            m.aload(ARGS + n);
+            m.op(ClassFile.AASTORE);
+        }
+        m.aload(PARSER_ARG);
+        m.push(line);
+        constant(site);
+        helper("call", "([" + OBJECT + PARSER + "I" + OBJECT + ")" + OBJECT);
+    }
+
+    //pushes a declared int/double variable from the frame
+    private void loadValue(int slot, String cls, String unbox, String desc) throws IOException {
+        m.aload(VALUES);
+        m.push(slot);
+        m.op(ClassFile.AALOAD);
+        m.type(ClassFile.CHECKCAST, cls);
+        m.invoke(ClassFile.INVOKEVIRTUAL, cls, unbox, desc);
+    }
+
+    //pops a boxed value into the frame
+    private void storeValue(int slot) throws IOException {
+        m.aload(VALUES);
+        m.op(ClassFile.SWAP);
+        m.push(slot);
+        m.op(ClassFile.SWAP);
+        m.op(ClassFile.AASTORE);
+    }
+
+    private void box(String cls, String args) throws IOException {
+        m.invoke(ClassFile.INVOKESTATIC, cls, "valueOf", args + "L" + cls + ";");
+    }
+
+    //pushes an entry of the constant pool of the Code
+    private void constant(int k) throws IOException {
+        m.aload(THIS);
+        m.field(ClassFile.GETFIELD, SUPER, "consts", "[" + OBJECT);
+        m.push(k);
+        m.op(ClassFile.AALOAD);
+    }
+
+    //the frame may have been grown by anything calling out
+    private void reloadValues() throws IOException {
+        m.aload(PARSER_ARG);
+        helper("values", "(" + PARSER + ")[Ljava/lang/Object;");
+        m.astore(VALUES);
+    }
+
+    private void helper(String name, String desc) throws IOException {
+        m.invoke(ClassFile.INVOKESTATIC, SUPER, name, desc);
+    }
+}
@@ -111,6 +111,11 @@ final class LexAnn {
      */
     Object value;
 
+    /**
+     * Offset of the current token in the line
+     */
+    int start;
+
     private boolean pBack;
     private final char[] cBuf;
     private char[] line;
@@ -123,13 +128,19 @@ final class LexAnn {
      * String representation of token
      */
     public String toString() {
-        Class<?> c = getClass();
+        return toString(ttype, value);
+    }
+
+    /**
+     * String representation of a token which is no longer current
+     */
+    static String toString(int ttype, Object value) {
         String tokenName = "";
         //try to get the human readable TT_* name via reflec magic
-        for (java.lang.reflect.Field f : c.getFields()) {
+        for (java.lang.reflect.Field f : LexAnn.class.getFields()) {
             try {
                 if (f.getName().startsWith("TT")) {
-                    if (ttype == f.getInt(this)) {
+                    if (ttype == f.getInt(null)) {
                         tokenName = f.getName();
                     }
                 }
@@ -169,6 +180,20 @@ final class LexAnn {
         c = 0;
     }
 
+    /**
+     * Sets the internal line buffer, lexing starts at the given offset
+     *
+     * @param str - the string to use
+     * @param offset - where the next token starts
+     */
+    void setString(char[] str, int offset) {
+        length = str.length;
+        line = str;
+        pos = offset;
+        c = 0;
+        pBack = false;
+    }
+
     /**
      * return the next char in the buffer
      */
@@ -227,6 +252,7 @@ final class LexAnn {
 
         while (ttype == 0) {
             getNext = true;
+            start = pos - 1;
             switch (c) {
                 // start of line of whitespace
                 case 0:
@@ -1,6 +1,8 @@
 package murlen.util.fscript;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.Reader;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -50,12 +52,55 @@ final class LineLoader {
     int curLine;
     String forError;
 
+    private Jump[] jumps;   // block keyword partners per line, null until findJumps() ran
+    private Map<Integer, String> errorTokens; // token a compiled line failed to parse at, by line
+
+    /**
+     * Partner positions of an if/elsif/else or while keyword
+     */
+    static final class Jump {
+        final int pos;      // offset of the keyword in its line
+        int nextLine = -1;  // next elsif/else/endif of an if clause, endwhile of a while
+        int nextPos;
+        int endLine = -1;   // endif which closes the whole if statement
+        int endPos;
+        Jump link;          // next keyword starting on the same line
+        Code loop;          // a while loop compiled once it got hot
+        Frame.Scope loopScope; // the scope it was compiled for
+
+        Jump(int pos) {
+            this.pos = pos;
+        }
+    }
+
     /**
      * Constructor
      */
     LineLoader() {
 
         lines = new ArrayList<>(200);
+        errorTokens = new ConcurrentHashMap<>();
+        curLine = 0;
+    }
+
+    /**
+     * A loader holding a single line, for code which is not part of a script
+     */
+    static LineLoader of(String line) {
+        char[] chars = line.toCharArray();
+        checkLine(chars);
+        LineLoader l = new LineLoader();
+        l.lines.add(chars);
+        return l;
+    }
+
+    /**
+     * A loader sharing the lines of another one, with a current line of its
+     * own. The lines must not be changed any more.
+     */
+    LineLoader(LineLoader source) {
+        lines = source.lines;
+        errorTokens = source.errorTokens;
         curLine = 0;
     }
 
@@ -85,7 +130,9 @@ final class LineLoader {
      */
     void reset() {
         lines = new ArrayList<>(200);
+        errorTokens = new ConcurrentHashMap<>();
         curLine = 0;
+        jumps = null;
     }
 
     /**
@@ -94,6 +141,7 @@ final class LineLoader {
      * @param s the line to load
      */
     void addLine(String s) {
+        jumps = null;
         if (!s.trim().equals("")) {
             if (s.endsWith("...") && !hasComment(s)) {
                 if (contLine != null) {
@@ -183,6 +231,29 @@ final class LineLoader {
         return new String(lines.get(curLine));
     }
 
+    /**
+     * Remembers the tokens at which compiling lines failed, the errors
+     * themselves are only raised when the lines are run. Tokens left from
+     * an earlier compile of the lines are dropped.
+     * @param from - the first line compiled
+     * @param to - the last line compiled
+     * @param tokens - the tokens by line
+     */
+    void setErrorTokens(int from, int to, Map<Integer, String> tokens) {
+        errorTokens.putAll(tokens);
+        errorTokens.keySet().removeIf(n -> n >= from && n <= to && !tokens.containsKey(n));
+    }
+
+    /**
+     * Returns the token an interpreter would be at when the compiled line
+     * fails: the one it could not parse, else the end of the line (a
+     * statement only fails once it was parsed completely)
+     */
+    String getToken(int n) {
+        String token = errorTokens.get(n);
+        return (token != null) ? token : LexAnn.toString(LexAnn.TT_EOL, null);
+    }
+
     /**
      * Returns the text of the requested line
      */
@@ -199,6 +270,101 @@ final class LineLoader {
         return new String(lines.get(n));
     }
 
+    /**
+     * Returns the partners of the block keyword at the given position
+     *
+     * @param n the line number
+     * @param pos the offset of the keyword in the line
+     * @return the partners, or null when the keyword does not start a
+     * (well formed) block
+     */
+    Jump getJump(int n, int pos) throws IOException {
+        if (jumps == null) findJumps();
+        if (n < 0 || n >= jumps.length) return null;
+        for (Jump j = jumps[n]; j != null; j = j.link) {
+            if (j.pos == pos) return j;
+        }
+        return null;
+    }
+
+    /**
+     * Matches every if/elsif/else with the next clause and the endif, and
+     * every while with its endwhile. Ifs and whiles are nested separately,
+     * just like the parser counts them when it has to skip a block.
+     */
+    private void findJumps() throws IOException {
+        Jump[] found = new Jump[lines.size()];
+        ArrayList<ArrayList<Jump>> ifs = new ArrayList<>(); // open ifs, with all their clauses
+        ArrayList<Jump> whiles = new ArrayList<>();
+        LexAnn tok = new LexAnn();
+
+        for (int n = 0; n < lines.size(); n++) {
+            tok.setString(lines.get(n));
+            tok.nextToken();
+            while (tok.ttype != LexAnn.TT_EOL) {
+                switch (tok.ttype) {
+                    case LexAnn.TT_IF: {
+                        ArrayList<Jump> clauses = new ArrayList<>(2);
+                        clauses.add(addJump(found, n, tok.start));
+                        ifs.add(clauses);
+                        break;
+                    }
+                    case LexAnn.TT_THEN: {
+                        //a then followed by a statement is a one line if
+                        tok.nextToken();
+                        if (tok.ttype != LexAnn.TT_EOL && !ifs.isEmpty()) ifs.remove(ifs.size() - 1);
+                        continue;
+                    }
+                    case LexAnn.TT_ELSIF:
+                    case LexAnn.TT_ELSE: {
+                        if (!ifs.isEmpty()) {
+                            ArrayList<Jump> clauses = ifs.get(ifs.size() - 1);
+                            Jump prev = clauses.get(clauses.size() - 1);
+                            prev.nextLine = n;
+                            prev.nextPos = tok.start;
+                            clauses.add(addJump(found, n, tok.start));
+                        }
+                        break;
+                    }
+                    case LexAnn.TT_EIF: {
+                        if (!ifs.isEmpty()) {
+                            ArrayList<Jump> clauses = ifs.remove(ifs.size() - 1);
+                            Jump last = clauses.get(clauses.size() - 1);
+                            last.nextLine = n;
+                            last.nextPos = tok.start;
+                            for (Jump j : clauses) {
+                                j.endLine = n;
+                                j.endPos = tok.start;
+                            }
+                        }
+                        break;
+                    }
+                    case LexAnn.TT_WHILE: {
+                        whiles.add(addJump(found, n, tok.start));
+                        break;
+                    }
+                    case LexAnn.TT_EWHILE: {
+                        if (!whiles.isEmpty()) {
+                            Jump j = whiles.remove(whiles.size() - 1);
+                            j.nextLine = n;
+                            j.nextPos = tok.start;
+                        }
+                        break;
+                    }
+                }
+                tok.nextToken();
+            }
+        }
+        jumps = found;
+    }
+
+    private static Jump addJump(Jump[] found, int n, int pos) {
+        Jump j = new Jump(pos);
+        j.link = found[n];
+        found[n] = j;
+        return j;
+    }
+
     /**
      * Checks line for correctly formed ( ) and "
      */
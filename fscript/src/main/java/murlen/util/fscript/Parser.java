@@ -3,6 +3,7 @@ package murlen.util.fscript;
 import java.io.*;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * <b>Parser - Does the parsing - i.e it's the brains of the code.</b>
@@ -82,6 +83,11 @@ public final class Parser {
         int endLine; //end line of function
         ArrayList<String> paramNames; //list of parameter names
         HashMap<String, Object> params; //hashmap of parameters
+        Code body; //compiled body, null when the function is interpreted from its lines
+        Frame.Scope scope; //slots of the compiled body's locals
+        int[] paramSlots; //slot of each parameter in scope
+        int calls; //times called while interpreted
+        Frame.Scope interpreted; //slots of the locals while interpreted, the same for every call
 
         FuncEntry() {
             startLine = 0;
@@ -100,14 +106,16 @@ public final class Parser {
 
     private LineLoader code; //the code
     private LexAnn tok; //tokenizer
+    private boolean inCode; //compiled code is running, tok is not where execution is
+    private boolean ranCode; //compiled code has run, tok may never have been set
 
     private int maxLine;
-    private final HashMap<String, Object> vars; //function local variables
-    private final HashMap<String, Object> gVars; //global variables
-    private static HashMap<Integer, Integer> opPrio; //operator priority table
+    final Frame vars; //function local variables
+    final Frame gVars; //global variables
+    private static final HashMap<Integer, Integer> opPrio = new HashMap<>(); //operator priority table
     private final FScript host; //link to hosting FScript object
     private final HashMap<String, FuncEntry> funcs; //function map
-    private Object retVal; //return value
+    Object retVal; //return value
 
     private Parser subParser;   //nested parser, for callback routines in FSParserExtension
 
@@ -116,16 +124,25 @@ public final class Parser {
      * @param h a reference to the FScript object
      */
     Parser(FScript h) {
-        vars = new HashMap<>();
+        vars = new Frame(new Frame.Scope());
         gVars = null;
         funcs = new HashMap<>();
         host = h;
+    }
 
-        setPrio();
+    /**
+     * A parser for running compiled code, with globals in the given scope
+     */
+    Parser(FScript h, LineLoader code, Frame.Scope globals) {
+        vars = new Frame(globals);
+        gVars = null;
+        funcs = new HashMap<>();
+        host = h;
+        this.code = code;
     }
 
     //only used for function calls - note it is private
-    private Parser(FScript h, HashMap<String, Object> l, HashMap<String, Object> g, HashMap<String, FuncEntry> f) {
+    private Parser(FScript h, Frame l, Frame g, HashMap<String, FuncEntry> f) {
         vars = l;
         gVars = g;
         funcs = f;
@@ -194,33 +211,115 @@ public final class Parser {
         return null;
     }
 
+    /**
+     * Runs compiled code in the scope of this parser
+     * @param block - the compiled code
+     * @param to - the line to leave as current when the block completes
+     * @return an Object depending on the return value of the code run, or null if none.
+     */
+    Object exec(Code block, int to) throws IOException, FSException {
+        vars.fit();
+        if (run(block))
+            return retVal;
+        code.setCurLine(to);
+        return null;
+    }
+
+    /**
+     * Evaluates a compiled expression against the globals of this parser
+     * @param args - the values of the expression's parameters
+     */
+    Object eval(CompiledExpression expr, Object[] args) throws IOException, FSException {
+        Frame globals = (gVars == null) ? vars : gVars;
+        if (expr.globals != globals.scope)
+            throw new IllegalArgumentException("expression compiled for another script: " + expr);
+        if (args.length != expr.paramCount)
+            parseError("Expected " + expr.paramCount + " parameters, Found " + args.length);
+
+        //a host callback from a script function sees its locals first, as
+        //getVar() does: interpret the expression in a copy of them
+        Parser inner = this;
+        while (inner.subParser != null)
+            inner = inner.subParser;
+
+        globals.fit();
+        Parser p;
+        if (inner != this) {
+            Frame locals = inner.vars.copy();
+            for (int n = 0; n < args.length; n++)
+                locals.put(expr.params.name(n), args[n]);
+            p = new Parser(host, locals, globals, funcs);
+        } else {
+            //run like the body of a function, the parameters are its locals
+            Frame locals = new Frame(expr.params);
+            System.arraycopy(args, 0, locals.values, 0, args.length);
+            p = new Parser(host, locals, globals, funcs);
+        }
+        p.setCode(new LineLoader(expr.line));
+        try {
+            return (inner != this) ? p.parse(0, 0) : p.exec(expr.code(), 0);
+        } catch (FSException e) {
+            if (p.error != null) error = p.error;
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a (compiled) function known to this parser
+     */
+    void addFunction(String name, FuncEntry fDef) {
+        funcs.put(name, fDef);
+    }
+
+    /**
+     * @return true when the script has defined a function of that name
+     */
+    boolean hasFunction(String name) {
+        return funcs.containsKey(name);
+    }
+
+    FScript getHost() {
+        return host;
+    }
+
+    /**
+     * Marks the line currently being executed by compiled code (for error reporting).
+     */
+    void setLine(int line) {
+        code.curLine = line;
+    }
+
     /**
      * Resets the parser state.
      */
     void reset() {
-        if (vars != null) vars.clear();
+        vars.clear();
         if (gVars != null) gVars.clear();
     }
 
+    /**
+     * @return the scope of the global variables, shared with compiled code
+     */
+    Frame.Scope getScope() {
+        return vars.scope;
+    }
+
     //builds the operator priority table
-    private void setPrio() {
-        if (opPrio == null) {
-            opPrio = new HashMap<>();
-            //from low to high
-            opPrio.put(LexAnn.TT_LOR, 1);
-            opPrio.put(LexAnn.TT_LAND, 2);
-            opPrio.put(LexAnn.TT_LEQ, 5);
-            opPrio.put(LexAnn.TT_LNEQ, 5);
-            opPrio.put(LexAnn.TT_LGR, 5);
-            opPrio.put(LexAnn.TT_LGRE, 5);
-            opPrio.put(LexAnn.TT_LLS, 5);
-            opPrio.put(LexAnn.TT_LLSE, 5);
-            opPrio.put(LexAnn.TT_PLUS, 10);
-            opPrio.put(LexAnn.TT_MINUS, 10);
-            opPrio.put(LexAnn.TT_MULT, 20);
-            opPrio.put(LexAnn.TT_DIV, 20);
-            opPrio.put(LexAnn.TT_MOD, 20);
-        }
+    static {
+        //from low to high
+        opPrio.put(LexAnn.TT_LOR, 1);
+        opPrio.put(LexAnn.TT_LAND, 2);
+        opPrio.put(LexAnn.TT_LEQ, 5);
+        opPrio.put(LexAnn.TT_LNEQ, 5);
+        opPrio.put(LexAnn.TT_LGR, 5);
+        opPrio.put(LexAnn.TT_LGRE, 5);
+        opPrio.put(LexAnn.TT_LLS, 5);
+        opPrio.put(LexAnn.TT_LLSE, 5);
+        opPrio.put(LexAnn.TT_PLUS, 10);
+        opPrio.put(LexAnn.TT_MINUS, 10);
+        opPrio.put(LexAnn.TT_MULT, 20);
+        opPrio.put(LexAnn.TT_DIV, 20);
+        opPrio.put(LexAnn.TT_MOD, 20);
     }
 
     //statement - top level thing
@@ -361,22 +460,97 @@ public final class Parser {
     }
 
     Object callFunction(String name, ArrayList<Object> params) throws IOException, FSException {
+        return callFunction(name, null, params);
+    }
+
+    //a call from compiled code, which caches the host function at its site
+    Object callFunction(HostSite site, ArrayList<Object> params) throws IOException, FSException {
+        return callFunction(site.name, site, params);
+    }
+
+    //a call of up to two arguments, passed without a list to a host function taking them so
+    Object callFunction(HostSite site, int argc, Object a, Object b) throws IOException, FSException {
+        return callFunction(site.name, site, argc, a, b);
+    }
+
+    //a call of more than two arguments, passed as an array to a host function taking one
+    Object callFunction(HostSite site, Object[] args) throws IOException, FSException {
+        if (funcs.containsKey(site.name))
+            return callFunction(site.name, site, new ArrayList<>(Arrays.asList(args)));
+        try {
+            return host.callFunctionEntry(site, args);
+        } catch (Exception e) {
+            parseError(e.getMessage());
+        }
+        return null;
+    }
+
+    //a call of one argument computed as an int, passed unboxed to a host function taking one
+    Object callFunction(HostSite site, int a) throws IOException, FSException {
+        if (funcs.containsKey(site.name))
+            return callFunction(site.name, site, FScript.arguments(1, a, null));
+        try {
+            return host.callFunctionEntry(site, a);
+        } catch (Exception e) {
+            parseError(e.getMessage());
+        }
+        return null;
+    }
+
+    //a call of one argument computed as a double, passed unboxed to a host function taking one
+    Object callFunction(HostSite site, double a) throws IOException, FSException {
+        if (funcs.containsKey(site.name))
+            return callFunction(site.name, site, FScript.arguments(1, a, null));
+        try {
+            return host.callFunctionEntry(site, a);
+        } catch (Exception e) {
+            parseError(e.getMessage());
+        }
+        return null;
+    }
+
+    private Object callFunction(String name, HostSite site, int argc, Object a, Object b) throws IOException, FSException {
+        if (funcs.containsKey(name))
+            return callFunction(name, site, FScript.arguments(argc, a, b));
+        try {
+            return (site != null) ? host.callFunctionEntry(site, argc, a, b) : host.callFunctionEntry(name, argc, a, b);
+        } catch (Exception e) {
+            parseError(e.getMessage());
+        }
+        return null;
+    }
+
+    private Object callFunction(String name, HostSite site, ArrayList<Object> params) throws IOException, FSException {
         Object val = null;
 
         //Check we have a definition for the function
-        if (funcs.containsKey(name)) {
-            FuncEntry fDef = funcs.get(name);
+        FuncEntry fDef = funcs.get(name);
+        if (fDef != null) {
+
+            //called often enough, compile it
+            if (fDef.body == null && ++fDef.calls == host.getCallThreshold())
+                compileFunction(fDef);
 
             //Check params and def match
             if (fDef.paramNames.size() != params.size())
                 parseError("Expected " + fDef.paramNames.size() + " parameters, Found " + params.size());
 
             //Create a new parser instance to handle call
-            HashMap<String, Object> locals = new HashMap<>();
+            Frame locals;
 
             //Push the params into the local scope
-            for (int n = 0; n < fDef.paramNames.size(); n++)
-                locals.put(fDef.paramNames.get(n), params.get(n));
+            if (fDef.scope != null) {
+                locals = new Frame(fDef.scope);
+                for (int n = 0; n < fDef.paramSlots.length; n++)
+                    locals.values[fDef.paramSlots[n]] = params.get(n);
+            } else {
+                //one scope for all calls, so hot loops compiled for it stay valid
+                if (fDef.interpreted == null)
+                    fDef.interpreted = new Frame.Scope();
+                locals = new Frame(fDef.interpreted);
+                for (int n = 0; n < fDef.paramNames.size(); n++)
+                    locals.put(fDef.paramNames.get(n), params.get(n));
+            }
 
             //watch for recursive calls
             Parser p = (gVars == null) ? new Parser(host, locals, vars, funcs) : new Parser(host, locals, gVars, funcs);
@@ -388,14 +562,14 @@ public final class Parser {
             subParser = p;
 
             //let it rip
-            val = p.parse(fDef.startLine + 1, fDef.endLine - 1);
+            val = (fDef.body != null) ? p.exec(fDef.body, fDef.endLine - 1) : p.parse(fDef.startLine + 1, fDef.endLine - 1);
 
             //reset execution point
             subParser = oldSubParser;
             code.setCurLine(oldLine);
         } else {//calls into super class  code...}
             try {
-                val = host.callFunctionEntry(name, params);
+                val = (site != null) ? host.callFunctionEntry(site, params) : host.callFunctionEntry(name, params);
             } catch (Exception e) {
                 parseError(e.getMessage());
             }
@@ -404,9 +578,27 @@ public final class Parser {
         return val;
     }
 
+    //gives an interpreted function a compiled body, when it compiles
+    private void compileFunction(FuncEntry fDef) throws IOException {
+        Frame globals = (gVars == null) ? vars : gVars;
+        Stmt.Block block = new ScriptCompiler(code, globals.scope).compile(fDef.startLine, fDef.endLine);
+        if (block.stmts.length != 1 || !(block.stmts[0] instanceof Stmt.FuncDef))
+            return;
+        CodeGen.generate(block);
+        FuncEntry compiled = ((Stmt.FuncDef) block.stmts[0]).entry;
+        //the body may use globals not given a slot yet
+        globals.fit();
+        fDef.scope = compiled.scope;
+        fDef.paramSlots = compiled.paramSlots;
+        fDef.body = compiled.body;
+    }
+
     //Handle calls to a function
     private Object parseCallFunc(String name) throws IOException, FSException {
-        ArrayList<Object> params = new ArrayList<>(4);
+        //the first two parameters are kept apart, most calls need no list
+        int argc = 0;
+        Object a = null, b = null;
+        ArrayList<Object> params = null;
         //Set up the parameters
         do {
             getNextToken();
@@ -415,9 +607,18 @@ public final class Parser {
             else if (tok.ttype == ')')
                 break;
 
-            params.add(parseExpr());
+            Object val = parseExpr();
+            if (argc == 0) {
+                a = val;
+            } else if (argc == 1) {
+                b = val;
+            } else {
+                if (params == null) params = FScript.arguments(2, a, b);
+                params.add(val);
+            }
+            argc++;
         } while (tok.ttype == ',');
-        return callFunction(name,params);
+        return (params != null) ? callFunction(name, params) : callFunction(name, null, argc, a, b);
     }
 
     //handles function definitions
@@ -536,9 +737,8 @@ public final class Parser {
                             }
                             //variables - resolve them
                             case LexAnn.TT_WORD: {
-                                if (hasVar((String) tok.value)) {
-                                    val = getVar((String) tok.value);
-                                } else {
+                                val = findVar((String) tok.value);
+                                if (val == null) {
                                     try {
                                         val = host.getVarEntry((String) tok.value, null);
                                     } catch (Exception e) {
@@ -556,27 +756,13 @@ public final class Parser {
 
                         //unary not
                         if (not) {
-                            if (val instanceof Integer) {
-                                val = ((Integer) val == 0) ? FS_TRUE : FS_FALSE;
-                                not = false;
-                            } else if (val instanceof FSObject && ((FSObject) val).getObject() instanceof Boolean) {
-                                val = ((FSObject)val).getObject().equals(Boolean.FALSE) ? FS_TRUE : FS_FALSE;
-                            } else if (val instanceof FSObject && ((FSObject)val).getObject() instanceof Integer) {
-                                val = ((Integer) ((FSObject) val).getObject() == 0) ? FS_TRUE : FS_FALSE;
-                            } else {
-                                parseError("Type mismatch for ! " + ((val instanceof FSObject) ? ("FSObject with "+ ((FSObject)val).getNullClass().getName()) : (val.getClass().getName())));
-                            }
+                            if (val instanceof Integer) not = false;
+                            val = evalNot(val);
                         }
 
                         //unary minus
                         if (negate) {
-                            if (val instanceof Integer) {
-                                val = -(Integer) val;
-                            } else if (val instanceof Double) {
-                                val = -(Double) val;
-                            } else {
-                                parseError("Type mistmatch for unary -");
-                            }
+                            val = evalNegate(val);
                         }
 
                         node.value = val;
@@ -680,13 +866,7 @@ public final class Parser {
                     val = parseExpr();
 
                     if (negate) {
-                        if (val instanceof Integer){
-                            val = -(Integer) val;
-                        } else if (val instanceof Double){
-                            val = -(Double) val;
-                        } else {
-                            parseError("Type mistmatch for unary -");
-                        }
+                        val = evalNegate(val);
                     }
 
                     ETreeNode node = new ETreeNode();
@@ -727,10 +907,52 @@ public final class Parser {
     }
 
     //convenience function to get operator priority
-    private int getPrio(int op){
+    static int getPrio(int op){
         return opPrio.get(op);
     }
 
+    //unary not
+    Object evalNot(Object val) throws FSException {
+        if (val instanceof Integer) {
+            return ((Integer) val == 0) ? FS_TRUE : FS_FALSE;
+        } else if (val instanceof FSObject && ((FSObject) val).getObject() instanceof Boolean) {
+            return ((FSObject)val).getObject().equals(Boolean.FALSE) ? FS_TRUE : FS_FALSE;
+        } else if (val instanceof FSObject && ((FSObject)val).getObject() instanceof Integer) {
+            return ((Integer) ((FSObject) val).getObject() == 0) ? FS_TRUE : FS_FALSE;
+        } else {
+            parseError("Type mismatch for ! " + ((val instanceof FSObject) ? ("FSObject with "+ ((FSObject)val).getNullClass().getName()) : (val.getClass().getName())));
+        }
+        return null;
+    }
+
+    //unary minus
+    Object evalNegate(Object val) throws FSException {
+        if (val instanceof Integer) {
+            return -(Integer) val;
+        } else if (val instanceof Double) {
+            return -(Double) val;
+        } else {
+            parseError("Type mistmatch for unary -");
+        }
+        return null;
+    }
+
+    //converts the value of an if/while condition to an int
+    int evalCondition(Object obj, String err) throws FSException {
+        if (obj instanceof Integer)
+            return (Integer)obj;
+        if (obj instanceof FSObject)
+            obj = ((FSObject)obj).getObject();
+        if (obj instanceof Boolean)
+            return (Boolean) obj ? FS_TRUE : FS_FALSE;
+        if (obj instanceof Integer) {
+            // test needed a second time 'cause it may have been an FSObject before
+            return (Integer)obj;
+        }
+        parseError(err);
+        return 0; // just to make sure the compiler doesn't complain
+    }
+
     //evaluates the expression tree recursively
     private Object evalETree(ETreeNode node) throws FSException {
         if (node == null) {
@@ -745,7 +967,12 @@ public final class Parser {
         Object lVal = evalETree(node.left);
         Object rVal = evalETree(node.right);
 
-        switch ((Integer) node.value) {
+        return evalOp((Integer) node.value, lVal, rVal);
+    }
+
+    //applies a binary operator
+    Object evalOp(int op, Object lVal, Object rVal) throws FSException {
+        switch (op) {
             //call the various eval functions
             case LexAnn.TT_PLUS: return evalPlus(lVal, rVal);
             case LexAnn.TT_MINUS: return evalMinus(lVal, rVal);
@@ -966,26 +1193,10 @@ public final class Parser {
         int val;
         int depth;
         boolean then = false;
-
+        LineLoader.Jump jump = code.getJump(code.getCurLine(), tok.start);
 
         getNextToken();
-        Object obj = parseExpr();
-        if (obj instanceof Integer)
-            val = (Integer)obj;
-        else {
-            if (obj instanceof FSObject)
-                obj = ((FSObject)obj).getObject();
-            if (obj instanceof Boolean)
-                val = (Boolean) obj ? FS_TRUE : FS_FALSE;
-            else if (obj instanceof Integer) {
-                // test needed a second time 'cause it may have been an FSObject before
-                val = (Integer)obj;
-            } else {
-                parseError("If condition needs to be Integer");
-                return; // just to make sure the compiler doesn't complain
-                // as we know parseError throws an exception (stupid compiler)
-            }
-        }
+        val = evalCondition(parseExpr(), "If condition needs to be Integer");
 
         //handle the one line if-then construct
         if (tok.ttype == LexAnn.TT_THEN) {
@@ -1015,15 +1226,42 @@ public final class Parser {
                     getNextToken();
                 }
                 if (tok.ttype == LexAnn.TT_ELSE || tok.ttype == LexAnn.TT_ELSIF) {
-                    //skip else clause -
-                    //have to do this taking into acount nesting
+                    //skip else clause - straight to the endif when it is known,
+                    //otherwise have to do this taking into acount nesting
+                    if (jump == null || !jumpTo(jump.endLine, jump.endPos)) {
+                        depth = 1;
+                        do {
+                            getNextToken();
+                            if (tok.ttype == LexAnn.TT_IF) depth++;
+                            if (tok.ttype == LexAnn.TT_EOF) parseError("can't find endif");
+                            if (tok.ttype == LexAnn.TT_EIF) depth--;
+
+                            //A then could indicate a one line
+                            //if - then construct, then we don't increment
+                            //depth
+                            if (tok.ttype == LexAnn.TT_THEN) {
+                                getNextToken();
+                                if (tok.ttype != LexAnn.TT_EOL) depth--;
+                                tok.pushBack();
+                            }
+
+                        } while(depth > 0);
+                    }
+                    getNextToken();
+                } else {
+                    getNextToken();
+                }
+
+            } else {
+                //skip to else clause
+                if (jump == null || !jumpTo(jump.nextLine, jump.nextPos)) {
                     depth = 1;
                     do {
                         getNextToken();
                         if (tok.ttype == LexAnn.TT_IF) depth++;
                         if (tok.ttype == LexAnn.TT_EOF) parseError("can't find endif");
                         if (tok.ttype == LexAnn.TT_EIF) depth--;
-
+                        if ((tok.ttype == LexAnn.TT_ELSE || tok.ttype == LexAnn.TT_ELSIF) && depth == 1) depth--;
                         //A then could indicate a one line
                         //if - then construct, then we don't increment
                         //depth
@@ -1032,32 +1270,9 @@ public final class Parser {
                             if (tok.ttype != LexAnn.TT_EOL) depth--;
                             tok.pushBack();
                         }
-
                     } while(depth > 0);
-                    getNextToken();
-                } else {
-                    getNextToken();
                 }
 
-            } else {
-                //skip to else clause
-                depth = 1;
-                do {
-                    getNextToken();
-                    if (tok.ttype == LexAnn.TT_IF) depth++;
-                    if (tok.ttype == LexAnn.TT_EOF) parseError("can't find endif");
-                    if (tok.ttype == LexAnn.TT_EIF) depth--;
-                    if ((tok.ttype == LexAnn.TT_ELSE || tok.ttype == LexAnn.TT_ELSIF) && depth == 1) depth--;
-                    //A then could indicate a one line
-                    //if - then construct, then we don't increment
-                    //depth
-                    if (tok.ttype == LexAnn.TT_THEN) {
-                        getNextToken();
-                        if (tok.ttype != LexAnn.TT_EOL) depth--;
-                        tok.pushBack();
-                    }
-                } while(depth > 0);
-
                 if (tok.ttype == LexAnn.TT_ELSE) {
                     getNextToken();
                     getNextToken();
@@ -1086,28 +1301,19 @@ public final class Parser {
         int startLine;
         //int endPos;
         int depth;
+        int iterations = 0;
 
         startLine = code.getCurLine();
+        LineLoader.Jump jump = code.getJump(startLine, tok.start);
 
         while (looping) {
-            getNextToken();     // a 'while' you would imagine
-            Object obj = parseExpr();
-            if (obj instanceof Integer)
-                val = (Integer)obj;
-            else {
-                if (obj instanceof FSObject)
-                    obj = ((FSObject)obj).getObject();
-                if (obj instanceof Boolean)
-                    val = (Boolean) obj ? FS_TRUE : FS_FALSE;
-                else if (obj instanceof Integer) {
-                    // test needed a second time 'cause it may have been an FSObject before
-                    val = (Integer)obj;
-                } else {
-                    parseError("While condition needs to be Integer");
-                    return; // just to make sure the compiler doesn't complain
-                    // as we know parseError throws an exception (stupid compiler)
-                }
+            //looped often enough, run the rest of the loop compiled
+            if (++iterations == host.getLoopThreshold() && jump != null && runLoop(startLine, jump)) {
+                code.setCurLine(startLine);
+                break;
             }
+            getNextToken();     // a 'while' you would imagine
+            val = evalCondition(parseExpr(), "While condition needs to be Integer");
             getNextToken();
 
             if (val == 0)
@@ -1124,18 +1330,55 @@ public final class Parser {
             }
         }
         //skip to endwhile
-        depth = 1;
-        do {
-            getNextToken();
-            if (tok.ttype == LexAnn.TT_WHILE) depth++;
-            if (tok.ttype == LexAnn.TT_EWHILE) depth--;
-            if (tok.ttype == LexAnn.TT_EOF) parseError("can't find endwhile");
-        } while (depth > 0);
+        if (jump == null || !jumpTo(jump.nextLine, jump.nextPos)) {
+            depth = 1;
+            do {
+                getNextToken();
+                if (tok.ttype == LexAnn.TT_WHILE) depth++;
+                if (tok.ttype == LexAnn.TT_EWHILE) depth--;
+                if (tok.ttype == LexAnn.TT_EOF) parseError("can't find endwhile");
+            } while (depth > 0);
+        }
 
         getNextToken();
     }
 
 
+    /**
+     * Compiles the while loop starting at a line (once for each scope it
+     * runs in: the globals, or the locals of an interpreted function) and
+     * runs it from the start of its next iteration
+     * @return false when the loop can not be compiled, nothing was run then
+     */
+    private boolean runLoop(int startLine, LineLoader.Jump jump) throws IOException, FSException, RetException {
+        if (jump.loopScope != vars.scope) {
+            if (jump.nextLine > maxLine)
+                return false;
+            Frame.Scope globals = (gVars == null) ? vars.scope : gVars.scope;
+            Stmt.Block block = new ScriptCompiler(code, globals, vars.scope).compile(startLine, jump.nextLine);
+            if (block.stmts.length != 1 || !(block.stmts[0] instanceof Stmt.While))
+                return false;
+            jump.loop = CodeGen.generate(block);
+            jump.loopScope = vars.scope;
+        }
+        vars.fit();
+        if (gVars != null) gVars.fit();
+        if (run(jump.loop))
+            throw new RetException();
+        return true;
+    }
+
+    private boolean run(Code block) throws IOException, FSException {
+        boolean outer = inCode;
+        inCode = true;
+        ranCode = true;
+        try {
+            return block.run(this);
+        } finally {
+            inCode = outer;
+        }
+    }
+
     private void parseVarDef() throws IOException, FSException {
         String name;
         int type = tok.ttype;
@@ -1177,13 +1420,14 @@ public final class Parser {
     }
 
     //format an error message and throw FSException
-    private void parseError(String s) throws FSException {
+    void parseError(String s) throws FSException {
         // set up our error block
         error = new String[6];
         error[0] = s;
         error[1] = (Integer.valueOf(code.getCurLine())).toString();
         error[2] = code.getLineAsString();
-        error[3] = tok.toString();
+        error[3] = currentToken();
+        if (error[3] == null) error[3] = "";
         error[4] = vars.toString();
         if (gVars != null)
             error[5] = gVars.toString();
@@ -1207,13 +1451,20 @@ public final class Parser {
             s += "\n\t\t\t> " + code.getLineAsString(l) + " <";
             s += "\n\t\t\t  " + code.getLineAsString(l + 1);
             s += "\n\t\t\t  " + code.getLineAsString(l + 2);
-            s = s + "\n\t\t current token:" + tok.toString();
+            String t = currentToken();
+            if (t != null) s = s + "\n\t\t current token:" + t;
             s = s + "\n\t\t Variable dump:" + vars;
             if (gVars != null) s = s + "\n\t\t Globals:" + gVars;
-        } else s += "\n\t\t\t> " + tok.getLine() + " <";
+        } else if (tok != null) s += "\n\t\t\t> " + tok.getLine() + " <";
         return s;
     }
 
+    //the token being parsed, for compiled code the one the statement of the current line would end at
+    private String currentToken() {
+        if (inCode || (tok == null && ranCode)) return code.getToken(code.getCurLine());
+        return (tok != null) ? tok.toString() : null;
+    }
+
     //return the error block
     String[] getError() {
         return error;
@@ -1241,24 +1492,36 @@ public final class Parser {
         tok.nextToken();
     }
 
+    //continues at a block keyword found by LineLoader, false if it is not within reach
+    private boolean jumpTo(int line, int pos) throws IOException {
+        if (line < code.getCurLine() || line > maxLine)
+            return false;
+        code.setCurLine(line);
+        tok.setString(code.getLine(), pos);
+        tok.nextToken();
+        return true;
+    }
+
     //variable access routines
     void addVar(String name, Object value) throws FSException {
-        if (vars.containsKey(name)) {
+        if (vars.indexOf(name) >= 0) {
             parseError("Already defined in this scope: " + name );
         }
         vars.put(name, value);
     }
 
+    //value of a script variable, null if it is not defined
+    private Object findVar(String name) {
+        if (subParser != null) return subParser.findVar(name);
+        Object val = vars.get(name);
+        if (val == null && gVars != null)
+            val = gVars.get(name);
+        return val;
+    }
 
     public Object getVar(String name) {
-        if (subParser != null) return subParser.getVar(name);
-        if (vars.containsKey(name)) {
-            return vars.get(name);
-        } else {
-            if (gVars != null) {
-                if (gVars.containsKey(name)) return gVars.get(name);
-            }
-        }
+        Object val = findVar(name);
+        if (val != null) return val;
 
         // variable not found, try extensions
         try {
@@ -1273,8 +1536,6 @@ public final class Parser {
     // OR you can assign a String, Integer or Double to an FSObject if the contained object already
     // has the same type. Note that you can change the type of the embedded object for "object" variables.
     public void setVar(String name, Object val) throws FSException {
-        Object obj;
-
         if (val == null) parseError("set variable " + name + " with null value");
 
         if (subParser != null) {
@@ -1282,42 +1543,78 @@ public final class Parser {
             return;
         }
 
-        if ((obj=vars.get(name)) != null) {
-            if (val.getClass() != obj.getClass()) {
-                //special case for FSObject allow asignment of either same
-                //class or _any_ class if FSObject is already null
-                //also allow assignment of null to any FSObject
-                if (obj instanceof FSObject) {
-                    if (((FSObject)obj).getObject() == null) {
-                        val = new FSObject(val);
-                    }
-                    else if(((FSObject)obj).getObject().getClass() == val.getClass()) {
-                        val = new FSObject(val);
-                    }
-                    else parseError("Incompatible types");
+        int n = vars.indexOf(name);
+        if (n >= 0) {
+            setLocal(n, val);
+        } else if (gVars != null && (n = gVars.indexOf(name)) >= 0) {
+            setGlobal(n, val);
+        }
+    }
+
+    public boolean hasVar(String name) {
+        return findVar(name) != null;
+    }
+
+    //slot based variable access, used by compiled code - local is a slot
+    //in this parser's frame, global a slot in the globals frame, -1 for none
+
+    //value of a script variable, null if it is not defined
+    Object getSlot(int local, int global) {
+        Object val;
+        if (local >= 0 && (val = vars.values[local]) != null)
+            return val;
+        if (global >= 0 && gVars != null)
+            return gVars.values[global];
+        return null;
+    }
+
+    //assigns a script variable, false if it is not defined
+    boolean setSlot(int local, int global, Object val) throws FSException {
+        if (local >= 0 && vars.values[local] != null) {
+            setLocal(local, val);
+            return true;
+        }
+        if (global >= 0 && gVars != null && gVars.values[global] != null) {
+            setGlobal(global, val);
+            return true;
+        }
+        return false;
+    }
+
+    //defines a variable in this parser's frame
+    void addSlot(int local, String name, Object value) throws FSException {
+        if (vars.values[local] != null) {
+            parseError("Already defined in this scope: " + name );
+        }
+        vars.values[local] = value;
+    }
+
+    private void setLocal(int n, Object val) throws FSException {
+        Object obj = vars.values[n];
+        if (val.getClass() != obj.getClass()) {
+            //special case for FSObject allow asignment of either same
+            //class or _any_ class if FSObject is already null
+            //also allow assignment of null to any FSObject
+            if (obj instanceof FSObject) {
+                if (((FSObject)obj).getObject() == null) {
+                    val = new FSObject(val);
                 }
-                else {
-                    parseError("Incompatible types");
+                else if(((FSObject)obj).getObject().getClass() == val.getClass()) {
+                    val = new FSObject(val);
                 }
+                else parseError("Incompatible types");
             }
-            vars.remove(name);
-            vars.put(name, val);
-        } else if ((obj = gVars.get(name)) != null) {
-            if (val.getClass() != obj.getClass())
+            else {
                 parseError("Incompatible types");
-            gVars.remove(name);
-            gVars.put(name, val);
+            }
         }
-
+        vars.values[n] = val;
     }
 
-    public boolean hasVar(String name) {
-        if (subParser != null) return subParser.hasVar(name);
-        if (gVars == null) {
-            return vars.containsKey(name);
-        } else {
-            return vars.containsKey(name) || gVars.containsKey(name);
-        }
+    private void setGlobal(int n, Object val) throws FSException {
+        if (val.getClass() != gVars.values[n].getClass())
+            parseError("Incompatible types");
+        gVars.values[n] = val;
     }
 
 }
@@ -0,0 +1,636 @@
+package murlen.util.fscript;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <p>ScriptCompiler - turns the lines held by a LineLoader into a tree of
+ * Stmt and Expr nodes</p>
+ * <p>
+ * The grammar handled is exactly the one of Parser, but every line is lexed
+ * and parsed only once. CodeGen turns the resulting tree into bytecode,
+ * which runs without touching the source again.</p>
+ * <p>
+ * A statement which does not compile is replaced by a Stmt.Error, so the
+ * error is only raised when (and if) the line is reached at run time, as
+ * it would be when interpreting the lines directly.</p>
+ * <p>
+ * Variables are resolved to frame slots: the locals of a function get slots
+ * in the function's own scope, everything else a slot in the globals scope
+ * shared with the Parser.</p>
+ * <p>
+ * A variable whose declaration has certainly been executed where it is used
+ * (declared earlier in the same or an enclosing block) keeps its declared
+ * type, which lets numeric expressions on it be compiled to typed code.</p>
+ */
+final class ScriptCompiler {
+    private final LineLoader code;
+    private final LexAnn tok = new LexAnn();
+    private int curLine;
+    private int maxLine;
+    private final Frame.Scope globals;
+    private Frame.Scope locals; //scope of the code being compiled, globals outside functions
+    private ArrayList<Frame.Ref> refs = new ArrayList<>(); //variables used by that code
+    private ArrayList<String> declared = new ArrayList<>(); //variables certainly declared at this point
+    private ArrayList<Integer> declaredTypes = new ArrayList<>(); //and their Expr.T_xxx types
+    private final HashMap<Integer, String> errorTokens = new HashMap<>(); //token of each line failing to compile
+    private final ArrayList<String> unknown; //when not null, globals without a slot get none and are listed here
+
+    ScriptCompiler(LineLoader code, Frame.Scope globals) {
+        this(code, globals, globals);
+    }
+
+    /**
+     * For code running in the frame of a function, with the given locals
+     */
+    ScriptCompiler(LineLoader code, Frame.Scope globals, Frame.Scope locals) {
+        this(code, globals, locals, null);
+    }
+
+    /**
+     * For code which must not add globals (expressions): names neither local
+     * nor global yet are looked up in the host, and added to unknown
+     */
+    ScriptCompiler(LineLoader code, Frame.Scope globals, Frame.Scope locals, ArrayList<String> unknown) {
+        this.code = code;
+        this.globals = globals;
+        this.locals = locals;
+        this.unknown = unknown;
+    }
+
+    /**
+     * Compiles a range of lines
+     * @param from - the start line number
+     * @param to - the end line number
+     * @return the compiled block
+     */
+    Stmt.Block compile(int from, int to) throws IOException {
+        maxLine = to;
+        if (code.lineCount() <= from)
+            return block(new ArrayList<>(), from);
+
+        curLine = from;
+        tok.setString(code.getLine(from));
+        getNextToken();
+        ArrayList<Stmt> stmts = new ArrayList<>();
+        while (tok.ttype != LexAnn.TT_EOF) {
+            addStmt(stmts);
+            getNextToken();
+        }
+        resolve();
+        code.setErrorTokens(from, to, errorTokens);
+        return block(stmts, from);
+    }
+
+    private Frame.Ref ref(String name) {
+        Frame.Ref r = new Frame.Ref(name);
+        refs.add(r);
+        return r;
+    }
+
+    //assigns slots to the variables used by the code just compiled
+    private void resolve() {
+        for (Frame.Ref r : refs) {
+            if (locals == globals) {
+                r.local = globals.define(r.name);
+            } else if (unknown == null) {
+                r.local = locals.indexOf(r.name);
+                r.global = globals.define(r.name);
+            } else {
+                r.local = locals.indexOf(r.name);
+                r.global = globals.indexOf(r.name);
+                if (r.local < 0 && r.global < 0 && !unknown.contains(r.name))
+                    unknown.add(r.name);
+            }
+        }
+        refs.clear();
+    }
+
+    // compiles statements until one of the given block keywords is found
+    private Stmt.Block parseBlock(int end1, int end2, int end3) throws IOException {
+        int line = curLine;
+        int mark = declared.size();
+        ArrayList<Stmt> stmts = new ArrayList<>();
+        while (tok.ttype != end1 && tok.ttype != end2 && tok.ttype != end3 && tok.ttype != LexAnn.TT_EOF) {
+            addStmt(stmts);
+            getNextToken();
+        }
+        endBlock(mark);
+        return block(stmts, line);
+    }
+
+    //forgets the declarations of a block once it is left
+    private void endBlock(int mark) {
+        while (declared.size() > mark) {
+            declared.remove(declared.size() - 1);
+            declaredTypes.remove(declaredTypes.size() - 1);
+        }
+    }
+
+    //type of a variable at this point of the code
+    private int typeOf(String name) {
+        int n = declared.lastIndexOf(name);
+        return (n < 0) ? Expr.T_ANY : declaredTypes.get(n);
+    }
+
+    private static Stmt.Block block(ArrayList<Stmt> stmts, int line) {
+        Stmt.Block b = new Stmt.Block(stmts.toArray(new Stmt[0]));
+        b.line = stmts.isEmpty() ? line : stmts.get(0).line;
+        return b;
+    }
+
+    // compiles one statement, defers errors to run time
+    private void addStmt(ArrayList<Stmt> stmts) throws IOException {
+        int size = stmts.size();
+        try {
+            parseStmt(stmts);
+        } catch (FSException e) {
+            while (stmts.size() > size)
+                stmts.remove(stmts.size() - 1);
+            Stmt err = new Stmt.Error(e.getMessage());
+            err.line = curLine;
+            stmts.add(err);
+            errorTokens.put(curLine, tok.toString());
+            //skip the rest of the line
+            while (tok.ttype != LexAnn.TT_EOL && tok.ttype != LexAnn.TT_EOF)
+                tok.nextToken();
+        }
+    }
+
+    //statement - top level thing
+    private void parseStmt(ArrayList<Stmt> stmts) throws IOException, FSException {
+        int line = curLine;
+        Stmt stmt;
+        switch (tok.ttype) {
+            case LexAnn.TT_DEFINT:
+            case LexAnn.TT_DEFSTRING:
+            case LexAnn.TT_DEFDOUBLE:
+            case LexAnn.TT_DEFOBJECT:
+                parseVarDef(stmts);
+                return;
+
+            case LexAnn.TT_IF:
+                stmt = parseIf();
+                break;
+
+            case LexAnn.TT_WHILE:
+                stmt = parseWhile();
+                break;
+
+            case LexAnn.TT_RETURN:
+                getNextToken();
+                stmt = new Stmt.Return(parseExpr());
+                break;
+
+            case LexAnn.TT_DEFFUNC:
+                stmt = parseFunctionDef();
+                break;
+
+            // endfunction without return, just return 1 (or true)
+            case LexAnn.TT_EDEFFUNC:
+                stmt = new Stmt.Return(new Expr.Const(Parser.FS_TRUE));
+                break;
+
+            case LexAnn.TT_EIF:
+                throw new FSException("unexpected endif");
+            case LexAnn.TT_EWHILE:
+                throw new FSException("unexpected endwhile");
+
+            case LexAnn.TT_FUNC: {
+                String name = (String) tok.value;
+                //should be a '('
+                getNextToken();
+                stmt = new Stmt.Call(parseCallFunc(name));
+                getNextToken();
+                break;
+            }
+
+            case LexAnn.TT_ARRAY: {
+                String name = (String) tok.value;
+                getNextToken(); // should be a '['
+                getNextToken(); // should be the index
+                Expr index = parseExpr();
+                getNextToken(); // should be a ']'
+                if (tok.ttype != LexAnn.TT_EQ)
+                    throw new FSException("Expected '='");
+                getNextToken();
+                stmt = new Stmt.ArrayAssign(name, index, parseExpr());
+                break;
+            }
+
+            case LexAnn.TT_WORD: {
+                String name = (String) tok.value;
+                getNextToken();
+                if (tok.ttype != LexAnn.TT_EQ)
+                    throw new FSException("Expected '='");
+                getNextToken();
+                stmt = new Stmt.Assign(ref(name), typeOf(name), parseExpr());
+                break;
+            }
+
+            case LexAnn.TT_EOL:
+                tok.nextToken();
+                return;
+
+            case LexAnn.TT_EOF:
+                // all done
+                return;
+
+            default:
+                throw new FSException("Expected identifier " + tok);
+        }
+        stmt.line = line;
+        stmts.add(stmt);
+    }
+
+    //handles 'int a = 1, b' style declarations, one Stmt per variable
+    private void parseVarDef(ArrayList<Stmt> stmts) throws IOException, FSException {
+        int type = tok.ttype;
+
+        do {
+            getNextToken();
+            if (tok.ttype != LexAnn.TT_WORD) throw new FSException("Expected variable name identifier,");
+
+            String name = (String) tok.value;
+            Expr init = null;
+
+            getNextToken();
+            if (tok.ttype == LexAnn.TT_EQ) {
+                getNextToken();
+                init = parseExpr();
+            } else if (tok.ttype != ',' && tok.ttype != LexAnn.TT_EOL) {
+                throw new FSException("Expected ','");
+            }
+
+            locals.define(name);
+            Stmt stmt = new Stmt.VarDef(ref(name), type, init);
+            declared.add(name);
+            declaredTypes.add((type == LexAnn.TT_DEFINT) ? Expr.T_INT : (type == LexAnn.TT_DEFDOUBLE) ? Expr.T_DOUBLE : Expr.T_ANY);
+            stmt.line = curLine;
+            stmts.add(stmt);
+        } while (tok.ttype != LexAnn.TT_EOL);
+    }
+
+    //if/elsif/else/endif or the single line if-then
+    private Stmt parseIf() throws IOException, FSException {
+        int line = curLine;
+        getNextToken();
+        Expr cond = parseExpr();
+
+        //handle the one line if-then construct
+        if (tok.ttype == LexAnn.TT_THEN) {
+            getNextToken();
+            //is this a single line then (or just a optional then)
+            if (tok.ttype != LexAnn.TT_EOL) {
+                ArrayList<Stmt> then = new ArrayList<>(1);
+                int mark = declared.size();
+                parseStmt(then);
+                endBlock(mark);
+                Stmt stmt = new Stmt.If(cond, block(then, line), null);
+                stmt.line = line;
+                return stmt;
+            }
+        }
+
+        getNextToken();
+        Stmt.Block then = parseBlock(LexAnn.TT_EIF, LexAnn.TT_ELSE, LexAnn.TT_ELSIF);
+        Stmt orElse = null;
+
+        if (tok.ttype == LexAnn.TT_EOF) {
+            throw new FSException("can't find endif");
+        } else if (tok.ttype == LexAnn.TT_ELSE) {
+            getNextToken();
+            getNextToken();
+            orElse = parseBlock(LexAnn.TT_EIF, LexAnn.TT_EIF, LexAnn.TT_EIF);
+            if (tok.ttype == LexAnn.TT_EOF)
+                throw new FSException("can't find endif");
+            getNextToken();
+        } else if (tok.ttype == LexAnn.TT_ELSIF) {
+            orElse = parseIf();
+        } else {
+            getNextToken();
+        }
+
+        Stmt stmt = new Stmt.If(cond, then, orElse);
+        stmt.line = line;
+        return stmt;
+    }
+
+    private Stmt parseWhile() throws IOException, FSException {
+        int line = curLine;
+        getNextToken();
+        Expr cond = parseExpr();
+        getNextToken();
+
+        Stmt.Block body = parseBlock(LexAnn.TT_EWHILE, LexAnn.TT_EWHILE, LexAnn.TT_EWHILE);
+        if (tok.ttype == LexAnn.TT_EOF)
+            throw new FSException("can't find endwhile");
+        getNextToken();
+
+        Stmt stmt = new Stmt.While(cond, body);
+        stmt.line = line;
+        return stmt;
+    }
+
+    //handles function definitions
+    private Stmt parseFunctionDef() throws IOException, FSException {
+        Parser.FuncEntry fDef = new Parser.FuncEntry();
+        fDef.startLine = curLine;
+        getNextToken();
+
+        //should be the function name
+        if (tok.ttype != LexAnn.TT_FUNC)
+            throw new FSException("Expected function start identifier");
+
+        String fName = (String) tok.value;
+        getNextToken();
+
+        //should be a '('
+        if (tok.ttype != '(')
+            throw new FSException("Expected (");
+
+        getNextToken();
+        //parse the header...
+        while (tok.ttype != ')') {
+            Object val = null;
+
+            switch (tok.ttype) {
+                case LexAnn.TT_DEFINT: val = Parser.FS_FALSE; break;
+                case LexAnn.TT_DEFSTRING: val = ""; break;
+                case LexAnn.TT_DEFOBJECT: val = new FSObject(); break;
+
+                default: throw new FSException("Expected type name");
+            }
+
+            getNextToken();
+
+            if (tok.ttype != LexAnn.TT_WORD)
+                throw new FSException("Expected function parameter name identifier");
+
+            String name = (String) tok.value;
+
+            fDef.paramNames.add(name);
+            fDef.params.put(name, val);
+
+            getNextToken();
+            if (tok.ttype == ',')
+                getNextToken();
+        }
+
+        //the body starts on the next line
+        while (tok.ttype != LexAnn.TT_EOL && tok.ttype != LexAnn.TT_EOF)
+            getNextToken();
+        getNextToken();
+
+        //the function body gets a scope of its own, parameters first
+        fDef.scope = new Frame.Scope();
+        fDef.paramSlots = new int[fDef.paramNames.size()];
+        for (int n = 0; n < fDef.paramSlots.length; n++)
+            fDef.paramSlots[n] = fDef.scope.define(fDef.paramNames.get(n));
+
+        Stmt.Block fBody;
+        Frame.Scope outerLocals = locals;
+        ArrayList<Frame.Ref> outerRefs = refs;
+        ArrayList<String> outerDeclared = declared;
+        ArrayList<Integer> outerTypes = declaredTypes;
+        locals = fDef.scope;
+        refs = new ArrayList<>();
+        //the globals may not be declared yet when the function gets called
+        declared = new ArrayList<>();
+        declaredTypes = new ArrayList<>();
+        try {
+            ArrayList<Stmt> body = new ArrayList<>();
+            int bodyLine = curLine;
+            while (tok.ttype != LexAnn.TT_EDEFFUNC && tok.ttype != LexAnn.TT_EOF) {
+                if (tok.ttype == LexAnn.TT_DEFFUNC)
+                    throw new FSException("Nested functions are illegal");
+                addStmt(body);
+                getNextToken();
+            }
+            resolve();
+            fDef.endLine = curLine;
+            fBody = block(body, bodyLine);
+        } finally {
+            locals = outerLocals;
+            refs = outerRefs;
+            declared = outerDeclared;
+            declaredTypes = outerTypes;
+        }
+        getNextToken();
+
+        return new Stmt.FuncDef(fName, fDef, fBody);
+    }
+
+    //Handle calls to a function
+    private Expr.Call parseCallFunc(String name) throws IOException, FSException {
+        ArrayList<Expr> params = new ArrayList<>(4);
+        //Set up the parameters
+        do {
+            getNextToken();
+            if (tok.ttype == ',')
+                getNextToken();
+            else if (tok.ttype == ')')
+                break;
+
+            params.add(parseExpr());
+        } while (tok.ttype == ',');
+        return new Expr.Call(name, params.toArray(new Expr[0]));
+    }
+
+    //builds the expression tree the same way Parser.parseExpr() does,
+    //with compiled operands instead of values
+    private Expr parseExpr() throws IOException, FSException {
+        ETreeNode curNode = null;
+        boolean end = false;
+        Expr val;
+        boolean negate = false; //flag for unary minus
+        boolean not = false;//flag for unary not.
+        boolean prevOp = true;//flag - true if previous value was an operator
+
+        while (!end) {
+            switch (tok.ttype) {
+                //the various possible 'values'
+                case LexAnn.TT_INTEGER:
+                case LexAnn.TT_DOUBLE:
+                case LexAnn.TT_STRING:
+                case LexAnn.TT_WORD:
+                case LexAnn.TT_FUNC:
+                case LexAnn.TT_NULL:
+                case LexAnn.TT_ARRAY: {
+                    if (!prevOp)
+                        throw new FSException("Expected Operator");
+
+                    val = null;
+                    switch (tok.ttype) {
+                        case LexAnn.TT_DOUBLE:
+                        case LexAnn.TT_INTEGER:
+                        case LexAnn.TT_STRING: {
+                            val = new Expr.Const(tok.value);
+                            break;
+                        }
+                        case LexAnn.TT_FUNC: {
+                            String name = (String) tok.value;
+                            getNextToken();
+                            val = parseCallFunc(name);
+                            break;
+                        }
+                        case LexAnn.TT_ARRAY: {
+                            String name = (String) tok.value;
+                            getNextToken(); //should be a '['
+                            getNextToken(); //should be the index
+                            val = new Expr.Index(name, parseExpr());
+                            break;
+                        }
+                        case LexAnn.TT_WORD: {
+                            String name = (String) tok.value;
+                            val = new Expr.Var(ref(name), typeOf(name));
+                            break;
+                        }
+                        case LexAnn.TT_NULL: {
+                            val = new Expr.Null();
+                            break;
+                        }
+                    }
+
+                    if (not) {
+                        val = new Expr.Not(val);
+                        not = false;
+                    }
+                    if (negate) {
+                        val = new Expr.Negate(val);
+                    }
+
+                    curNode = addValue(curNode, val);
+                    prevOp = false;
+                    break;
+                }
+
+                case LexAnn.TT_LEQ:
+                case LexAnn.TT_LNEQ:
+                case LexAnn.TT_MULT:
+                case LexAnn.TT_DIV:
+                case LexAnn.TT_MOD:
+                case LexAnn.TT_PLUS:
+                case LexAnn.TT_MINUS:
+                case LexAnn.TT_LGR:
+                case LexAnn.TT_LGRE:
+                case LexAnn.TT_LLSE:
+                case LexAnn.TT_LLS:
+                case LexAnn.TT_NOT:
+                case LexAnn.TT_LAND:
+                case LexAnn.TT_LOR: {
+                    if (prevOp) {
+                        if (tok.ttype == LexAnn.TT_MINUS) {
+                            negate = true;
+                        } else if (tok.ttype == LexAnn.TT_NOT) {
+                            not = true;
+                        } else {
+                            throw new FSException("Expected Expression");
+                        }
+                    } else {
+                        ETreeNode node = new ETreeNode();
+
+                        node.type = ETreeNode.E_OP;
+                        node.value = tok.ttype;
+
+                        if (curNode.parent != null) {
+                            int curPrio = Parser.getPrio(tok.ttype);
+                            int parPrio = Parser.getPrio((Integer) curNode.parent.value);
+
+                            if (curPrio <= parPrio) {
+                                node.parent = curNode.parent.parent;
+                                node.left = curNode.parent;
+                                if (curNode.parent.parent != null)
+                                    curNode.parent.parent.right = node;
+                            } else {
+                                curNode.parent.right = node;
+                                node.left = curNode;
+                                node.parent = curNode.parent;
+                            }
+
+                            curNode.parent = node;
+                            curNode = node;
+                        } else {
+                            node.left = curNode;
+                            curNode.parent = node;
+                            curNode = node;
+                        }
+                        prevOp = true;
+                    }
+                    break;
+                }
+
+                //start of an bracketed expression
+                case '(': {
+                    getNextToken();
+                    val = parseExpr();
+                    if (negate) {
+                        val = new Expr.Negate(val);
+                    }
+                    curNode = addValue(curNode, val);
+                    prevOp = false;
+                    break;
+                }
+
+                default: end = true;
+            }
+            if (!end) tok.nextToken();
+        }
+
+        //find the top of the tree we just built.
+        if (curNode == null)
+            throw new FSException("Missing Expression");
+        while (curNode.parent != null) {
+            curNode = curNode.parent;
+        }
+
+        return toExpr(curNode);
+    }
+
+    //hooks a value node into the expression tree
+    private static ETreeNode addValue(ETreeNode curNode, Expr val) {
+        ETreeNode node = new ETreeNode();
+        node.type = ETreeNode.E_VAL;
+        node.value = val;
+
+        if (curNode != null) {
+            if (curNode.left == null) {
+                curNode.left = node;
+                node.parent = curNode;
+                curNode = node;
+            } else if (curNode.right == null) {
+                curNode.right = node;
+                node.parent = curNode;
+                curNode = node;
+            }
+        } else {
+            curNode = node;
+        }
+        return curNode;
+    }
+
+    //converts the expression tree into Expr nodes
+    private static Expr toExpr(ETreeNode node) throws FSException {
+        if (node == null)
+            throw new FSException("Malformed expression");
+        if (node.type == ETreeNode.E_VAL)
+            return (Expr) node.value;
+        return new Expr.Binary((Integer) node.value, toExpr(node.left), toExpr(node.right));
+    }
+
+    //misc token access routines
+    private void getNextToken() throws IOException {
+        if (tok.ttype == LexAnn.TT_EOL) {
+            if (curLine < maxLine) {
+                curLine++;
+                tok.setString(code.getLine(curLine));
+                tok.nextToken();
+            } else {
+                tok.ttype = LexAnn.TT_EOF;
+            }
+        } else {
+            tok.nextToken();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package murlen.util.fscript;
+
+/**
+ * <p>Stmt - a compiled statement, as produced by ScriptCompiler</p>
+ * <p>
+ * Statements are syntax tree nodes, CodeGen turns them into bytecode for
+ * Code to run.</p>
+ */
+abstract class Stmt {
+    int line; //source line, for error reporting
+
+    //sequence of statements
+    static final class Block extends Stmt {
+        final Stmt[] stmts;
+
+        Block(Stmt[] stmts) {
+            this.stmts = stmts;
+        }
+    }
+
+    //int/string/double/object declaration, with optional initialiser
+    static final class VarDef extends Stmt {
+        final Frame.Ref var;
+        final int type; //LexAnn.TT_DEFxxx
+        final Expr init; //may be null
+
+        VarDef(Frame.Ref var, int type, Expr init) {
+            this.var = var;
+            this.type = type;
+            this.init = init;
+        }
+    }
+
+    //name = expr
+    static final class Assign extends Stmt {
+        final Frame.Ref var;
+        final int type; //Expr.T_xxx, known when the variable is certainly declared
+        final Expr value;
+
+        Assign(Frame.Ref var, int type, Expr value) {
+            this.var = var;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    //name[index] = expr
+    static final class ArrayAssign extends Stmt {
+        final String name;
+        final Expr index;
+        final Expr value;
+
+        ArrayAssign(String name, Expr index, Expr value) {
+            this.name = name;
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    //function call, return value is discarded
+    static final class Call extends Stmt {
+        final Expr.Call call;
+
+        Call(Expr.Call call) {
+            this.call = call;
+        }
+    }
+
+    //if/elsif/else - an elsif is an If in the orElse branch
+    static final class If extends Stmt {
+        final Expr cond;
+        final Stmt then;
+        final Stmt orElse; //may be null
+
+        If(Expr cond, Stmt then, Stmt orElse) {
+            this.cond = cond;
+            this.then = then;
+            this.orElse = orElse;
+        }
+    }
+
+    static final class While extends Stmt {
+        final Expr cond;
+        final Block body;
+
+        While(Expr cond, Block body) {
+            this.cond = cond;
+            this.body = body;
+        }
+    }
+
+    static final class Return extends Stmt {
+        final Expr value;
+
+        Return(Expr value) {
+            this.value = value;
+        }
+    }
+
+    //function definition - makes the function known when executed
+    static final class FuncDef extends Stmt {
+        final String name;
+        final Parser.FuncEntry entry;
+        final Block body;
+
+        FuncDef(String name, Parser.FuncEntry entry, Block body) {
+            this.name = name;
+            this.entry = entry;
+            this.body = body;
+        }
+    }
+
+    //a line which failed to compile, the error is raised when it is reached
+    static final class Error extends Stmt {
+        final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSDoubleFunction - a function from a double to a double</p>
+ * <p>
+ * Called as callDouble(a) when the argument is a number, Integers being
+ * widened, anything else is an error. Compiled code passes an argument it
+ * computed as an int or double without boxing it. See FSFunctionProvider
+ * for how it is found.</p>
+ */
+public interface FSDoubleFunction extends FSFunctionExtension {
+
+    double callDouble(double a) throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        if (params.size() != 1)
+            throw new FSException("Wrong amount of arguments, func -> " + name + "\n params -> " + params);
+        if (!(params.get(0) instanceof Number))
+            throw new FSException("Expected a numeric argument, func -> " + name + "\n params -> " + params);
+        return callDouble(((Number) params.get(0)).doubleValue());
+    }
+}
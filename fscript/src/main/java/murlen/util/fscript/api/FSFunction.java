@@ -0,0 +1,23 @@
+package murlen.util.fscript.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>FSFunction - marks a public method of a library as a script function,
+ * see FSAnnotatedExtension</p>
+ * <p>
+ * The arguments are converted to the parameter types of the method; a
+ * method taking a single Object... gets all arguments, however many.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FSFunction {
+
+    /**
+     * @return the name of the function in scripts, the method name if empty
+     */
+    String value() default "";
+}
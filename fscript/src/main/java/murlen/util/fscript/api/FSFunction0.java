@@ -0,0 +1,23 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSFunction0 - a function without arguments</p>
+ * <p>
+ * Called as call0() by the interpreter, without building a list of
+ * parameters. See FSFunctionProvider for how it is found.</p>
+ */
+public interface FSFunction0 extends FSFunctionExtension {
+
+    Object call0() throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        if (params.size() != 0)
+            throw new FSException("Wrong amount of arguments, func -> " + name + "\n params -> " + params);
+        return call0();
+    }
+}
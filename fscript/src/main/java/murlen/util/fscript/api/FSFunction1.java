@@ -0,0 +1,23 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSFunction1 - a function of one argument</p>
+ * <p>
+ * Called as call1(a) by the interpreter, without building a list of
+ * parameters. See FSFunctionProvider for how it is found.</p>
+ */
+public interface FSFunction1 extends FSFunctionExtension {
+
+    Object call1(Object a) throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        if (params.size() != 1)
+            throw new FSException("Wrong amount of arguments, func -> " + name + "\n params -> " + params);
+        return call1(params.get(0));
+    }
+}
@@ -0,0 +1,23 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSFunction2 - a function of two arguments</p>
+ * <p>
+ * Called as call2(a, b) by the interpreter, without building a list of
+ * parameters. See FSFunctionProvider for how it is found.</p>
+ */
+public interface FSFunction2 extends FSFunctionExtension {
+
+    Object call2(Object a, Object b) throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        if (params.size() != 2)
+            throw new FSException("Wrong amount of arguments, func -> " + name + "\n params -> " + params);
+        return call2(params.get(0), params.get(1));
+    }
+}
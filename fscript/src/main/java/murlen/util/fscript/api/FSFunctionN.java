@@ -0,0 +1,21 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSFunctionN - a function taking any number of arguments</p>
+ * <p>
+ * Called with the arguments in an array, which the function may keep. See
+ * FSFunctionProvider for how it is found.</p>
+ */
+public interface FSFunctionN extends FSFunctionExtension {
+
+    Object call(Object... args) throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        return call(params.toArray());
+    }
+}
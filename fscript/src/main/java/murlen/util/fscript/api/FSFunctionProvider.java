@@ -0,0 +1,22 @@
+package murlen.util.fscript.api;
+
+/**
+ * <p>FSFunctionProvider - an extension which hands out its functions as
+ * objects</p>
+ * <p>
+ * FScript asks it once for the function behind a name, then calls that
+ * directly. A function implementing FSFunction0, FSFunction1, FSFunction2,
+ * FSFunctionN, FSIntFunction or FSDoubleFunction gets its arguments as
+ * they are, without the list callFunction() takes; any other is called
+ * through callFunction(). The answer may be kept until extensions are
+ * registered or removed, so it must not change in between.</p>
+ */
+public interface FSFunctionProvider extends FSExtension {
+
+    /**
+     * @param name the name of the function
+     * @return the function, null when the name is not handled by this
+     * extension
+     */
+    FSFunctionExtension getFunction(String name);
+}
@@ -0,0 +1,26 @@
+package murlen.util.fscript.api;
+
+import murlen.util.fscript.FSException;
+
+import java.util.ArrayList;
+
+/**
+ * <p>FSIntFunction - a function from an int to an int</p>
+ * <p>
+ * Called as callInt(a) when the argument is an Integer, anything else is
+ * an error. Compiled code passes an argument it computed as an int
+ * without boxing it. See FSFunctionProvider for how it is found.</p>
+ */
+public interface FSIntFunction extends FSFunctionExtension {
+
+    int callInt(int a) throws FSException;
+
+    @Override
+    default Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        if (params.size() != 1)
+            throw new FSException("Wrong amount of arguments, func -> " + name + "\n params -> " + params);
+        if (!(params.get(0) instanceof Integer))
+            throw new FSException("Expected an integer argument, func -> " + name + "\n params -> " + params);
+        return callInt((Integer) params.get(0));
+    }
+}
@@ -0,0 +1,32 @@
+package murlen.util.fscript.api;
+
+import java.util.Collection;
+
+/**
+ * <p>FSNamedExtension - an extension which lists the names it handles</p>
+ * <p>
+ * Other extensions are tried in turn for every variable or function not
+ * defined in the script, until one does not throw FSUnsupportedException.
+ * A named extension is only called for its own names, which FScript looks
+ * up in an index built when the extension is registered. The names must
+ * therefore not change once it is registered.</p>
+ */
+public interface FSNamedExtension extends FSExtension {
+
+    /**
+     * @return the names of the variables handled by getVar(name) and
+     * setVar(name, value)
+     */
+    Collection<String> getVarNames();
+
+    /**
+     * @return the names of the arrays handled by getVar(name, index) and
+     * setVar(name, index, value)
+     */
+    Collection<String> getArrayNames();
+
+    /**
+     * @return the names of the functions handled by callFunction()
+     */
+    Collection<String> getFunctionNames();
+}
@@ -29,6 +29,9 @@ public interface FSParserExtension extends FSExtension {
     
     /**
      * set the parser which is used to parse the executed Fscript code
+     * <p>Called when the extension is registered, and again around each use
+     * of an ExecutionContext of the host, on the thread using it, with the
+     * parser of that context (and afterwards the one bound before).</p>
      * @param parser
      */
     void setParser(Parser parser);
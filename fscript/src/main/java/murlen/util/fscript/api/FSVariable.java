@@ -0,0 +1,24 @@
+package murlen.util.fscript.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>FSVariable - marks a public field of a library as a script variable,
+ * see FSAnnotatedExtension</p>
+ * <p>
+ * A final field is read only. A method without parameters may be marked
+ * to read the variable, a method with one parameter to set it.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface FSVariable {
+
+    /**
+     * @return the name of the variable in scripts, the field or method name
+     * if empty
+     */
+    String value() default "";
+}
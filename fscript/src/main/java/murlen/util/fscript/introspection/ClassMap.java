@@ -56,16 +56,18 @@ package murlen.util.fscript.introspection;
 
 import murlen.util.fscript.FSObject;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 /**
  * A cache of introspection information for a specific class instance.
- * Keys {@link java.lang.reflect.Method} objects by a concatenation of the
- * method name and the names of classes that make up the parameters.
+ * Keys {@link java.lang.reflect.Method} objects by the method name and
+ * the classes that make up the parameters.
  *
  * @author <a href="mailto:jvanzyl@apache.org">Jason van Zyl</a>
  * @author <a href="mailto:bob@werken.com">Bob McWhirter</a>
@@ -88,13 +90,38 @@ public class ClassMap {
     private final Class<?> clazz;
 
     /**
-     * Cache of Methods, or CACHE_MISS, keyed by method
-     * name and actual arguments used to find it.
+     * Cache of Methods, MethodInvokers or CACHE_MISS, keyed by
+     * method name and then by the classes of the actual arguments
+     * used to find it. Lookups do not lock or allocate; the arrays
+     * are replaced under the map's monitor when an entry is added.
      */
-    private final Map<String, Object> methodCache = new Hashtable<>();
+    private final Map<String, CacheEntry[]> methodCache = new ConcurrentHashMap<>();
 
     private final MethodMap methodMap = new MethodMap();
 
+    /**
+     * Invokers by Method, so that keys resolving to the same Method
+     * share one invoker.
+     */
+    private final Map<Method, MethodInvoker> invokerCache = new ConcurrentHashMap<>();
+
+    /**
+     * Accessors by property name, created on first use.
+     */
+    private final Map<String, PropertyAccessor> propertyCache = new ConcurrentHashMap<>();
+
+    /**
+     * Constructors by the classes of the arguments used to find them,
+     * replaced as a whole when an entry is added.
+     */
+    private volatile ConstructorEntry[] constructorCache = new ConstructorEntry[0];
+
+    /**
+     * When this map was last looked up, as System.nanoTime(), used by
+     * a bounded IntrospectorBase to pick the map to evict.
+     */
+    volatile long lastUsed;
+
     /**
      * Standard constructor
      */
@@ -111,46 +138,176 @@ public class ClassMap {
     }
 
     /**
-     * Find a Method using the methodKey
-     * provided.
+     * Find a Method using the name and the
+     * classes of the arguments provided.
      * <p>
-     * Look in the methodMap for an entry.  If found,
+     * Look in the methodCache for an entry.  If found,
      * it'll either be a CACHE_MISS, in which case we
-     * simply give up, or it'll be a Method, in which
-     * case, we return it.
+     * simply give up, or it'll be a Method (or the
+     * MethodInvoker wrapping it), in which case, we
+     * return it.
      * <p>
      * If nothing is found, then we must actually go
      * and introspect the method from the MethodMap.
      */
     public Method findMethod(String name, Object[] params) throws MethodMap.AmbiguousException {
-        String methodKey = makeMethodKey(name, params);
-        Object cacheEntry = methodCache.get(methodKey);
+        Object cacheEntry = findEntry(name, params).target;
 
         if (cacheEntry == CACHE_MISS) {
             return null;
         }
 
-        if (cacheEntry == null) {
-            try {
-                cacheEntry = methodMap.find(name, params);
-            } catch (MethodMap.AmbiguousException ae) {
-                /*
-                 *  that's a miss :)
-                 */
-                methodCache.put(methodKey, CACHE_MISS);
-                throw ae;
+        if (cacheEntry instanceof MethodInvoker) {
+            return ((MethodInvoker) cacheEntry).getMethod();
+        }
+
+        return (Method) cacheEntry;
+    }
+
+    /**
+     * Find a Method like {@link #findMethod(String, Object[])} and return
+     * an invoker for it. The invoker replaces the Method in the cache so
+     * later calls with the same arguments need a single lookup.
+     */
+    public MethodInvoker findInvoker(String name, Object[] params) throws MethodMap.AmbiguousException {
+        CacheEntry entry = findEntry(name, params);
+        Object cacheEntry = entry.target;
+
+        if (cacheEntry == CACHE_MISS) {
+            return null;
+        }
+
+        if (cacheEntry instanceof MethodInvoker) {
+            return (MethodInvoker) cacheEntry;
+        }
+
+        MethodInvoker invoker = invokerCache.computeIfAbsent((Method) cacheEntry, MethodInvoker::new);
+        entry.target = invoker;
+        return invoker;
+    }
+
+    /**
+     * Find the accessor for the property <code>name</code>, i.e. the
+     * methods <code>getname</code> and <code>setname</code> or the public
+     * field <code>name</code>.
+     */
+    public PropertyAccessor findProperty(String name) throws MethodMap.AmbiguousException {
+        PropertyAccessor accessor = propertyCache.get(name);
+
+        if (accessor == null) {
+            accessor = new PropertyAccessor(this, name);
+            propertyCache.put(name, accessor);
+        }
+
+        return accessor;
+    }
+
+    /**
+     * Find a constructor for the given (unwrapped) arguments, the first
+     * declared one whose parameters accept them. Primitive int and double
+     * parameters accept Integer and Double, and a null argument matches
+     * no constructor.
+     *
+     * @return the invoker for the constructor, or null if none matches
+     */
+    public ConstructorInvoker findConstructor(Object[] args) {
+        for (ConstructorEntry entry : constructorCache) {
+            if (entry.matches(args)) {
+                return entry.invoker;
             }
+        }
 
-            if (cacheEntry == null) {
-                methodCache.put(methodKey, CACHE_MISS);
-            } else {
-                methodCache.put(methodKey, cacheEntry);
+        ConstructorInvoker invoker = null;
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            if (accepts(constructor.getParameterTypes(), args)) {
+                invoker = new ConstructorInvoker(constructor);
+                break;
             }
         }
 
-        // Yes, this might just be null.
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = (args[i] == null) ? null : args[i].getClass();
+        }
 
-        return (Method) cacheEntry;
+        synchronized (this) {
+            ConstructorEntry[] entries = Arrays.copyOf(constructorCache, constructorCache.length + 1);
+            entries[entries.length - 1] = new ConstructorEntry(types, invoker);
+            constructorCache = entries;
+        }
+
+        return invoker;
+    }
+
+    private static boolean accepts(Class<?>[] c, Object[] o) {
+        // easy exit not the same length params
+        if (c.length != o.length) return false;
+
+        for (int n = 0; n < c.length; n++) {
+            if (!c[n].isInstance(o[n]) && !(c[n].equals(Integer.TYPE) && o[n] instanceof Integer) && !(c[n].equals(Double.TYPE) && o[n] instanceof Double)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true when the class has a public method called <code>name</code>
+     */
+    boolean hasMethod(String name) {
+        return methodMap.get(name) != null;
+    }
+
+    private CacheEntry findEntry(String name, Object[] params) throws MethodMap.AmbiguousException {
+        CacheEntry[] entries = methodCache.get(name);
+
+        if (entries != null) {
+            for (CacheEntry entry : entries) {
+                if (entry.matches(params)) {
+                    return entry;
+                }
+            }
+        }
+
+        Object method;
+        try {
+            method = methodMap.find(name, params);
+        } catch (MethodMap.AmbiguousException ae) {
+            /*
+             *  that's a miss :)
+             */
+            cache(name, argumentTypes(params), CACHE_MISS);
+            throw ae;
+        }
+
+        return cache(name, argumentTypes(params), (method == null) ? CACHE_MISS : method);
+    }
+
+    /**
+     * Adds an entry, or replaces the target of the entry with the same
+     * parameter classes.
+     */
+    private CacheEntry cache(String name, Class<?>[] types, Object target) {
+        synchronized (methodCache) {
+            CacheEntry[] entries = methodCache.get(name);
+
+            if (entries == null) {
+                entries = new CacheEntry[0];
+            }
+
+            for (CacheEntry entry : entries) {
+                if (Arrays.equals(entry.types, types)) {
+                    entry.target = target;
+                    return entry;
+                }
+            }
+
+            CacheEntry entry = new CacheEntry(types, target);
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = entry;
+            methodCache.put(name, entries);
+            return entry;
+        }
     }
 
     /**
@@ -177,74 +334,131 @@ public class ClassMap {
 
             if (publicMethod != null) {
                 methodMap.add(publicMethod);
-                methodCache.put(makeMethodKey(publicMethod), publicMethod);
+                cache(publicMethod.getName(), parameterTypes(publicMethod), publicMethod);
             }
         }
     }
 
     /**
-     * Make a methodKey for the given method using
-     * the concatenation of the name and the
-     * types of the method parameters.
+     * The parameter types of the given method, with primitive types
+     * converted to the corresponding Object type so introspection for
+     * methods with primitive types will work correctly.
      */
-    private String makeMethodKey(Method method) {
+    private static Class<?>[] parameterTypes(Method method) {
         Class<?>[] parameterTypes = method.getParameterTypes();
 
-        StringBuilder methodKey = new StringBuilder(method.getName());
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
 
-        for (Class<?> parameterType : parameterTypes) {
-            /*
-             * If the argument type is primitive then we want
-             * to convert our primitive type signature to the
-             * corresponding Object type so introspection for
-             * methods with primitive types will work correctly.
-             */
             if (parameterType.isPrimitive()) {
                 if (parameterType.equals(Boolean.TYPE))
-                    methodKey.append("java.lang.Boolean");
+                    parameterTypes[i] = Boolean.class;
                 else if (parameterType.equals(Byte.TYPE))
-                    methodKey.append("java.lang.Byte");
+                    parameterTypes[i] = Byte.class;
                 else if (parameterType.equals(Character.TYPE))
-                    methodKey.append("java.lang.Character");
+                    parameterTypes[i] = Character.class;
                 else if (parameterType.equals(Double.TYPE))
-                    methodKey.append("java.lang.Double");
+                    parameterTypes[i] = Double.class;
                 else if (parameterType.equals(Float.TYPE))
-                    methodKey.append("java.lang.Float");
+                    parameterTypes[i] = Float.class;
                 else if (parameterType.equals(Integer.TYPE))
-                    methodKey.append("java.lang.Integer");
+                    parameterTypes[i] = Integer.class;
                 else if (parameterType.equals(Long.TYPE))
-                    methodKey.append("java.lang.Long");
+                    parameterTypes[i] = Long.class;
                 else if (parameterType.equals(Short.TYPE))
-                    methodKey.append("java.lang.Short");
-            } else {
-                methodKey.append(parameterType.getName());
+                    parameterTypes[i] = Short.class;
             }
         }
 
-        return methodKey.toString();
+        return parameterTypes;
+    }
+
+    private static Class<?>[] argumentTypes(Object[] params) {
+        Class<?>[] types = new Class<?>[params.length];
+
+        for (int i = 0; i < params.length; i++) {
+            types[i] = argumentType(params[i]);
+        }
+
+        return types;
+    }
+
+    /**
+     * The class an argument is looked up by: typed nulls use their
+     * declared class, untyped nulls Object.
+     */
+    private static Class<?> argumentType(Object arg) {
+        Class<?> c;
+
+        if (arg == null) {
+            return Object.class;
+        } else if (arg instanceof FSObject) {
+            c = ((FSObject) arg).getNullClass();
+        } else {
+            c = arg.getClass();
+        }
+
+        return (c == null) ? Object.class : c;
     }
 
-    private static String makeMethodKey(String method, Object[] params) {
-        StringBuilder methodKey = new StringBuilder().append(method);
+    /**
+     * A cached constructor, or null for no match, for one combination
+     * of argument classes (null for a null argument).
+     */
+    private static final class ConstructorEntry {
+        final Class<?>[] types;
+        final ConstructorInvoker invoker;
 
-        for (Object param : params) {
-            Object arg = param;
+        ConstructorEntry(Class<?>[] types, ConstructorInvoker invoker) {
+            this.types = types;
+            this.invoker = invoker;
+        }
 
-            if (arg == null) {
-                arg = Object.class;
-            } else {
-                if (arg instanceof FSObject) {
-                    arg = ((FSObject) arg).getNullClass();
-                    if (arg == null) arg = Object.class;
-                } else {
-                    arg = arg.getClass();
+        boolean matches(Object[] args) {
+            if (types.length != args.length) {
+                return false;
+            }
+
+            for (int i = 0; i < args.length; i++) {
+                Object arg = args[i];
+                if (types[i] != ((arg == null) ? null : arg.getClass())) {
+                    return false;
                 }
             }
 
-            methodKey.append(((Class<?>) arg).getName());
+            return true;
         }
+    }
 
-        return methodKey.toString();
+    /**
+     * A cached lookup result for one combination of argument classes.
+     */
+    private static final class CacheEntry {
+        final Class<?>[] types;
+
+        /**
+         * A Method, its MethodInvoker or CACHE_MISS.
+         */
+        volatile Object target;
+
+        CacheEntry(Class<?>[] types, Object target) {
+            this.types = types;
+            this.target = target;
+        }
+
+        boolean matches(Object[] params) {
+            if (types.length != params.length) {
+                return false;
+            }
+
+            for (int i = 0; i < params.length; i++) {
+                if (types[i] != argumentType(params[i])) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
     }
 
     /**
@@ -0,0 +1,81 @@
+package murlen.util.fscript.introspection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A {@link Constructor} bound to a {@link MethodHandle}, creating an
+ * object from unwrapped arguments and returning it normalized like the
+ * result of a {@link MethodInvoker}.
+ * <p>
+ * Invokers are created once per constructor by {@link ClassMap} and
+ * reused for every <code>create()</code>.
+ */
+public final class ConstructorInvoker {
+    private final Constructor<?> constructor;
+    private final Class<?>[] types;
+
+    /**
+     * (Object[] args)Object, or null when the constructor could not be
+     * unreflected and has to go through Constructor.newInstance.
+     */
+    private final MethodHandle handle;
+
+    ConstructorInvoker(Constructor<?> constructor) {
+        this.constructor = constructor;
+        this.types = constructor.getParameterTypes();
+        this.handle = bind(constructor);
+    }
+
+    /**
+     * @return the constructor called by this invoker
+     */
+    public Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    /**
+     * Creates a new object.
+     *
+     * @param args the arguments, already unwrapped
+     * @return the normalized new object
+     * @throws InvocationTargetException if the constructor throws, as for Constructor.newInstance
+     * @throws InstantiationException    if the class is abstract
+     * @throws IllegalAccessException    if the constructor is not accessible
+     * @throws IllegalArgumentException  if the arguments do not fit, as for Constructor.newInstance
+     */
+    public Object newInstance(Object[] args)
+            throws InvocationTargetException, InstantiationException, IllegalAccessException {
+        if (handle == null) {
+            return MethodInvoker.normalize(constructor.newInstance(args), constructor.getDeclaringClass());
+        }
+        if (args.length != types.length) throw new IllegalArgumentException("wrong number of arguments");
+        for (int i = args.length - 1; i >= 0; i--) {
+            if (!MethodInvoker.accepts(types[i], args[i])) throw new IllegalArgumentException("argument type mismatch");
+        }
+        // checked like Constructor.newInstance does, so whatever is thrown now comes from the constructor
+        try {
+            return handle.invokeExact(args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private static MethodHandle bind(Constructor<?> constructor) {
+        MethodHandle mh;
+        try {
+            mh = MethodHandles.lookup().unreflectConstructor(constructor).asFixedArity();
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        int arity = constructor.getParameterCount();
+        mh = MethodHandles.filterReturnValue(mh.asType(MethodType.genericMethodType(arity)),
+                MethodHandles.insertArguments(MethodInvoker.NORMALIZE, 1, constructor.getDeclaringClass()));
+
+        return mh.asSpreader(Object[].class, arity)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+}
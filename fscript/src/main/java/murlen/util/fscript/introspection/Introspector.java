@@ -64,9 +64,8 @@ import java.lang.reflect.Method;
  * The first time the Introspector sees a
  * class it creates a class method map for the
  * class in question. Basically the class method map
- * is a Hastable where Method objects are keyed by a
- * concatenation of the method name and the names of
- * classes that make up the parameters.
+ * is a map where Method objects are keyed by the
+ * method name and the classes that make up the parameters.
  * <p>
  * For example, a method with the following signature:
  * <p>
@@ -74,7 +73,7 @@ import java.lang.reflect.Method;
  * <p>
  * would be mapped by the key:
  * <p>
- * "method" + "java.lang.String" + "java.lang.StringBuffer"
+ * "method", java.lang.String.class, java.lang.StringBuffer.class
  * <p>
  * This mapping is performed for all the methods in a class
  * and stored for
@@ -132,8 +131,7 @@ public class Introspector extends IntrospectorBase {
     }
 
     /**
-     * Clears the classmap and classname
-     * caches, and logs that we did so
+     * Clears the classmap cache
      */
     protected void clearCache() {
         super.clearCache();
@@ -0,0 +1,442 @@
+package murlen.util.fscript.introspection;
+
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2001 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Velocity", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This basic function of this class is to return a Method
+ * object for a particular class given the name of a method
+ * and the parameters to the method in the form of an Object[]
+ * <p>
+ * The first time the Introspector sees a
+ * class it creates a class method map for the
+ * class in question. Basically the class method map
+ * is a map where Method objects are keyed by the
+ * method name and the classes that make up the parameters.
+ * <p>
+ * For example, a method with the following signature:
+ * <p>
+ * public void method(String a, StringBuffer b)
+ * <p>
+ * would be mapped by the key:
+ * <p>
+ * "method", java.lang.String.class, java.lang.StringBuffer.class
+ * <p>
+ * This mapping is performed for all the methods in a class
+ * and stored for
+ * <p>
+ * Class maps are attached to their Class through a ClassValue, so
+ * lookups take no lock, classes loaded by different classloaders
+ * never share or flush each other's maps, and a map goes away with
+ * its class.
+ * <p>
+ * The number of class maps can optionally be bounded, in which case
+ * the least recently used map is evicted when the bound is exceeded.
+ * An evicted map is dropped from a small holder its class keeps, and
+ * made again on the next lookup. The holder itself stays, since removing
+ * a ClassValue entry sends the lookups of every other class down the
+ * slow path once.
+ * {@link #getStatistics()} reports the number of live maps and the
+ * hits, misses and evictions so far.
+ *
+ * @author <a href="mailto:jvanzyl@apache.org">Jason van Zyl</a>
+ * @author <a href="mailto:bob@werken.com">Bob McWhirter</a>
+ * @author <a href="mailto:szegedia@freemail.hu">Attila Szegedi</a>
+ * @author <a href="mailto:paulo.gaspar@krankikom.de">Paulo Gaspar</a>
+ * @version $Id: IntrospectorBase.java,v 1.1.1.1 2004/07/28 01:28:05 murlen Exp $
+ */
+public class IntrospectorBase {
+    /**
+     * Holds the method maps for the classes we know about, keyed by
+     * Class object.
+     */
+    private volatile ClassValue<Holder> classMethodMaps = newClassMethodMaps();
+
+    /**
+     * Maximum number of class maps, 0 for no bound.
+     */
+    private final int maxClasses;
+
+    /**
+     * Weak references to the live class maps, used for counting and,
+     * when bounded, for picking the map to evict. A map is reclaimed
+     * together with its class, at which point its reference is queued.
+     */
+    private final Set<Reference<ClassMap>> classMaps = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<ClassMap> reclaimed = new ReferenceQueue<>();
+    private final AtomicInteger entries = new AtomicInteger();
+
+    /**
+     * Classes by name for each classloader, see {@link #loadClass}. The
+     * classes are weakly referenced so they don't keep their loader, the
+     * key of the outer map, alive.
+     */
+    private final Map<ClassLoader, LoadedClasses> loadedClasses = new WeakHashMap<>();
+    private volatile LoadedClasses lastLoaded = new LoadedClasses(null);
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an introspector without a bound on the number of classes.
+     */
+    public IntrospectorBase() {
+        this(0);
+    }
+
+    /**
+     * Creates an introspector which keeps at most <code>maxClasses</code>
+     * class maps, evicting the least recently used one.
+     *
+     * @param maxClasses the maximum number of class maps, 0 for no bound
+     */
+    public IntrospectorBase(int maxClasses) {
+        if (maxClasses < 0) {
+            throw new IllegalArgumentException("maxClasses must not be negative: " + maxClasses);
+        }
+        this.maxClasses = maxClasses;
+    }
+
+    /**
+     * Gets the method defined by <code>name</code> and
+     * <code>params</code> for the Class <code>c</code>.
+     *
+     * @param c      Class in which the method search is taking place
+     * @param name   Name of the method being searched for
+     * @param params An array of Objects (not Classes) that describe the
+     *               the parameters
+     * @return The desired Method object.
+     */
+    public Method getMethod(Class<?> c, String name, Object[] params) throws Exception {
+        if (c == null) {
+            throw new Exception("Introspector.getMethod(): Class method key was null: " + name);
+        }
+
+        return getClassMap(c).findMethod(name, params);
+    }
+
+    /**
+     * Gets a cached invoker for the method defined by <code>name</code>
+     * and <code>params</code> for the Class <code>c</code>.
+     *
+     * @param c      Class in which the method search is taking place
+     * @param name   Name of the method being searched for
+     * @param params An array of Objects (not Classes) that describe the
+     *               the parameters
+     * @return The invoker for the desired method, or null.
+     */
+    public MethodInvoker getInvoker(Class<?> c, String name, Object[] params) throws Exception {
+        if (c == null) {
+            throw new Exception("Introspector.getInvoker(): Class method key was null: " + name);
+        }
+
+        return getClassMap(c).findInvoker(name, params);
+    }
+
+    /**
+     * Gets the cached accessor for the property <code>name</code> of the
+     * Class <code>c</code>.
+     *
+     * @param c    Class in which the property search is taking place
+     * @param name Name of the property, without get/set prefix
+     * @return The accessor, which may find neither methods nor a field.
+     */
+    public PropertyAccessor getProperty(Class<?> c, String name) throws Exception {
+        if (c == null) {
+            throw new Exception("Introspector.getProperty(): Class property key was null: " + name);
+        }
+
+        return getClassMap(c).findProperty(name);
+    }
+
+    /**
+     * Gets the cached invoker for the first declared constructor of the
+     * Class <code>c</code> which accepts <code>args</code>.
+     *
+     * @param c    Class of which an object is to be created
+     * @param args The unwrapped arguments
+     * @return The invoker, or null if no constructor matches.
+     */
+    public ConstructorInvoker getConstructor(Class<?> c, Object[] args) throws Exception {
+        if (c == null) {
+            throw new Exception("Introspector.getConstructor(): Class key was null");
+        }
+
+        return getClassMap(c).findConstructor(args);
+    }
+
+    /**
+     * Loads a class through <code>loader</code>, remembering the result
+     * so the loader is asked only once per name. The classes of the
+     * loader used last are found without locking.
+     *
+     * @param loader the classloader, usually the thread's context classloader
+     * @param name   the binary name of the class
+     * @return the class
+     */
+    public Class<?> loadClass(ClassLoader loader, String name) throws ClassNotFoundException {
+        LoadedClasses classes = lastLoaded;
+
+        if (classes.loader.get() != loader) {
+            synchronized (loadedClasses) {
+                classes = loadedClasses.get(loader);
+                if (classes == null) {
+                    classes = new LoadedClasses(loader);
+                    loadedClasses.put(loader, classes);
+                }
+            }
+            lastLoaded = classes;
+        }
+
+        Reference<Class<?>> ref = classes.classes.get(name);
+        Class<?> c = (ref == null) ? null : ref.get();
+
+        if (c == null) {
+            c = loader.loadClass(name);
+            classes.classes.put(name, new WeakReference<>(c));
+        }
+
+        return c;
+    }
+
+    /**
+     * Returns the class map for <code>c</code>, creating it on first use.
+     */
+    protected ClassMap getClassMap(Class<?> c) {
+        lookups.increment();
+        Holder holder = classMethodMaps.get(c);
+        ClassMap classMap = holder.classMap;
+        if (classMap == null) {
+            classMap = create(holder, c);
+        }
+        if (maxClasses > 0) {
+            classMap.lastUsed = System.nanoTime();
+        }
+        return classMap;
+    }
+
+    /**
+     * Creates a class map for specific class. Called once per class
+     * the first time it is looked up.
+     */
+    protected ClassMap createClassMap(Class<?> c) {
+        return new ClassMap(c);
+    }
+
+    /**
+     * Clears the classmap cache, so classes are introspected again
+     * on next use.
+     */
+    protected void clearCache() {
+        classMethodMaps = newClassMethodMaps();
+        classMaps.clear();
+        entries.set(0);
+    }
+
+    /**
+     * @return the current size of the cache and its hits, misses and
+     * evictions so far
+     */
+    public Statistics getStatistics() {
+        expungeReclaimed();
+        long miss = misses.sum();
+        return new Statistics(entries.get(), lookups.sum() - miss, miss, evictions.sum());
+    }
+
+    private static ClassValue<Holder> newClassMethodMaps() {
+        return new ClassValue<Holder>() {
+            @Override
+            protected Holder computeValue(Class<?> type) {
+                return new Holder();
+            }
+        };
+    }
+
+    /**
+     * Creates the map of a class seen for the first time, or again after
+     * its map was evicted.
+     */
+    private ClassMap create(Holder holder, Class<?> c) {
+        synchronized (holder) {
+            ClassMap classMap = holder.classMap;
+            if (classMap == null) {
+                holder.classMap = classMap = track(createClassMap(c));
+            }
+            return classMap;
+        }
+    }
+
+    private ClassMap track(ClassMap classMap) {
+        misses.increment();
+        expungeReclaimed();
+        classMap.lastUsed = System.nanoTime();
+        classMaps.add(new WeakReference<>(classMap, reclaimed));
+        if (entries.incrementAndGet() > maxClasses && maxClasses > 0) {
+            evictLeastRecentlyUsed();
+        }
+        return classMap;
+    }
+
+    /**
+     * Scans the live maps for the one used longest ago and removes it.
+     * Only called when a new map pushes the cache over its bound.
+     */
+    private void evictLeastRecentlyUsed() {
+        Reference<ClassMap> oldest = null;
+        long oldestUse = Long.MAX_VALUE;
+        for (Reference<ClassMap> ref : classMaps) {
+            ClassMap classMap = ref.get();
+            if (classMap != null && classMap.lastUsed < oldestUse) {
+                oldest = ref;
+                oldestUse = classMap.lastUsed;
+            }
+        }
+        ClassMap classMap = (oldest == null) ? null : oldest.get();
+        if (classMap != null && classMaps.remove(oldest)) {
+            Holder holder = classMethodMaps.get(classMap.getCachedClass());
+            if (holder.classMap == classMap) {
+                holder.classMap = null;
+            }
+            entries.decrementAndGet();
+            evictions.increment();
+        }
+    }
+
+    private void expungeReclaimed() {
+        Reference<? extends ClassMap> ref;
+        while ((ref = reclaimed.poll()) != null) {
+            if (classMaps.remove(ref)) {
+                entries.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The map of a class, null until it is created and after it was
+     * evicted.
+     */
+    private static final class Holder {
+        volatile ClassMap classMap;
+    }
+
+    private static final class LoadedClasses {
+        final Reference<ClassLoader> loader;
+        final Map<String, Reference<Class<?>>> classes = new ConcurrentHashMap<>();
+
+        LoadedClasses(ClassLoader loader) {
+            this.loader = new WeakReference<>(loader);
+        }
+    }
+
+    /**
+     * A snapshot of the introspection cache counters.
+     */
+    public static final class Statistics {
+        private final int entries;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Statistics(int entries, long hits, long misses, long evictions) {
+            this.entries = entries;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return the number of classes currently cached
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the number of lookups which found a cached class
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of lookups which had to introspect a class
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of classes evicted to keep the cache bounded
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public String toString() {
+            return "entries=" + entries + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+        }
+    }
+}
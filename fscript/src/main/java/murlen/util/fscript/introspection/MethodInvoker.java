@@ -0,0 +1,161 @@
+package murlen.util.fscript.introspection;
+
+import murlen.util.fscript.FSObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * A resolved {@link Method} bound to a {@link MethodHandle} that follows
+ * the FScript calling convention: FSObject arguments are unwrapped, the
+ * target is ignored for static methods and the result is normalized to
+ * an Integer, String, Double or FSObject.
+ * <p>
+ * Invokers are created once per method by {@link ClassMap} and reused
+ * for every call.
+ */
+public final class MethodInvoker {
+    static final MethodHandle UNWRAP;
+    static final MethodHandle NORMALIZE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            UNWRAP = lookup.findStatic(MethodInvoker.class, "unwrap",
+                    MethodType.methodType(Object.class, Object.class));
+            NORMALIZE = lookup.findStatic(MethodInvoker.class, "normalize",
+                    MethodType.methodType(Object.class, Object.class, Class.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Method method;
+    private final Class<?>[] types;
+
+    /**
+     * (Object target, Object[] params)Object, or null when the method
+     * could not be unreflected and has to go through Method.invoke.
+     */
+    private final MethodHandle handle;
+
+    MethodInvoker(Method method) {
+        this.method = method;
+        this.types = method.getParameterTypes();
+        this.handle = bind(method);
+    }
+
+    /**
+     * @return the method called by this invoker
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Calls the method.
+     *
+     * @param target the object to call the method on, ignored for static methods
+     * @param params the arguments, possibly FSObject wrapped
+     * @return the normalized result
+     * @throws InvocationTargetException if the called code throws, as for Method.invoke
+     * @throws IllegalAccessException    if the method is not accessible
+     * @throws IllegalArgumentException  if the target or the arguments do not fit, as for Method.invoke
+     */
+    public Object invoke(Object target, Object[] params)
+            throws InvocationTargetException, IllegalAccessException {
+        if (handle == null) {
+            Object[] args = new Object[params.length];
+            for (int i = params.length - 1; i >= 0; i--) {
+                args[i] = unwrap(params[i]);
+            }
+            return normalize(method.invoke(target, args), method.getReturnType());
+        }
+        if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(target)) {
+            if (target == null) throw new NullPointerException();
+            throw new IllegalArgumentException("object is not an instance of declaring class");
+        }
+        if (params.length != types.length) throw new IllegalArgumentException("wrong number of arguments");
+        for (int i = params.length - 1; i >= 0; i--) {
+            if (!accepts(types[i], unwrap(params[i]))) throw new IllegalArgumentException("argument type mismatch");
+        }
+        // checked like Method.invoke does, so whatever is thrown now comes from the method
+        try {
+            return handle.invokeExact(target, params);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private static MethodHandle bind(Method method) {
+        MethodHandle mh;
+        try {
+            mh = MethodHandles.lookup().unreflect(method).asFixedArity();
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            mh = MethodHandles.dropArguments(mh, 0, Object.class);
+        }
+        int arity = method.getParameterCount();
+        mh = mh.asType(MethodType.genericMethodType(arity + 1));
+
+        MethodHandle[] filters = new MethodHandle[arity];
+        Arrays.fill(filters, UNWRAP);
+        mh = MethodHandles.filterArguments(mh, 1, filters);
+        mh = MethodHandles.filterReturnValue(mh,
+                MethodHandles.insertArguments(NORMALIZE, 1, method.getReturnType()));
+
+        return mh.asSpreader(Object[].class, arity)
+                .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+    }
+
+    /**
+     * @return whether Method.invoke takes the value for a parameter of
+     * the type: an instance, or a wrapper unboxing and widening to it
+     */
+    static boolean accepts(Class<?> type, Object value) {
+        if (!type.isPrimitive()) return value == null || type.isInstance(value);
+        if (value == null) return false;
+        Class<?> c = value.getClass();
+        if (type == boolean.class || c == Boolean.class) return type == boolean.class && c == Boolean.class;
+        if (c == Character.class) return type == char.class || rank(type) >= rank(int.class);
+        return rank(c) > 0 && rank(c) <= rank(type);
+    }
+
+    //the order of the widening primitive conversions, 0 for other types
+    private static int rank(Class<?> c) {
+        if (c == byte.class || c == Byte.class) return 1;
+        if (c == short.class || c == Short.class) return 2;
+        if (c == int.class || c == Integer.class) return 3;
+        if (c == long.class || c == Long.class) return 4;
+        if (c == float.class || c == Float.class) return 5;
+        if (c == double.class || c == Double.class) return 6;
+        return 0;
+    }
+
+    static Object unwrap(Object o) {
+        return (o instanceof FSObject) ? ((FSObject) o).getObject() : o;
+    }
+
+    /**
+     * Ensures the right type is passed back to a script i.e. Integer,
+     * String, Double or FSObject.
+     *
+     * @param o the value returned by Java code
+     * @param c the declared type of the value
+     * @return the value as seen by the script
+     */
+    public static Object normalize(Object o, Class<?> c) {
+        if (o instanceof Integer || o instanceof String || o instanceof Double) {
+            return o;
+        } else {
+            return new FSObject(o, c);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package murlen.util.fscript.introspection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * How a property <code>name</code> of a class is read and written: a
+ * <code>getname()</code> method or the public field <code>name</code>
+ * for reading, and <code>setname(value)</code> or the field for writing.
+ * <p>
+ * Accessors are created once per class and property by {@link ClassMap},
+ * so the failed method lookups and the field lookup are done only once.
+ * Setters are still resolved per call, as the overload depends on the
+ * class of the value; that resolution is skipped when the class has no
+ * method of that name.
+ */
+public final class PropertyAccessor {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final ClassMap classMap;
+    private final String getterName;
+    private final String setterName;
+
+    private final MethodInvoker getter;
+    private final boolean hasSetter;
+
+    /**
+     * (Object)Object returning the normalized field value, or null
+     */
+    private final MethodHandle fieldGetter;
+
+    /**
+     * (Object, Object)void unwrapping the value, or null when there is no
+     * such field or it is final
+     */
+    private final MethodHandle fieldSetter;
+
+    private final Field field;
+
+    PropertyAccessor(ClassMap classMap, String name) throws MethodMap.AmbiguousException {
+        this.classMap = classMap;
+        getterName = "get" + name;
+        setterName = "set" + name;
+        getter = classMap.findInvoker(getterName, NO_ARGS);
+        hasSetter = classMap.hasMethod(setterName);
+
+        Field f = null;
+        try {
+            f = classMap.getCachedClass().getField(name);
+        } catch (NoSuchFieldException ignored) {}
+        field = f;
+
+        MethodHandle get = null;
+        MethodHandle set = null;
+        if (f != null) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                get = lookup.unreflectGetter(f);
+                if (!Modifier.isFinal(f.getModifiers())) {
+                    set = lookup.unreflectSetter(f);
+                }
+            } catch (IllegalAccessException ignored) {
+                get = null;
+                set = null;
+            }
+        }
+        if (get != null && Modifier.isStatic(f.getModifiers())) {
+            get = MethodHandles.dropArguments(get, 0, Object.class);
+            if (set != null) set = MethodHandles.dropArguments(set, 0, Object.class);
+        }
+        if (get != null) {
+            get = MethodHandles.filterReturnValue(get.asType(MethodType.genericMethodType(1)),
+                    MethodHandles.insertArguments(MethodInvoker.NORMALIZE, 1, f.getType()));
+        }
+        if (set != null) {
+            set = MethodHandles.filterArguments(
+                    set.asType(MethodType.methodType(void.class, Object.class, Object.class)), 1, MethodInvoker.UNWRAP);
+        }
+        fieldGetter = get;
+        fieldSetter = set;
+    }
+
+    /**
+     * @return the getter method, or null when there is none and the field is read
+     */
+    public MethodInvoker getGetter() {
+        return getter;
+    }
+
+    /**
+     * @return the name of the getter method, e.g. for error messages
+     */
+    public String getGetterName() {
+        return getterName;
+    }
+
+    /**
+     * @return the name of the setter method, e.g. for error messages
+     */
+    public String getSetterName() {
+        return setterName;
+    }
+
+    /**
+     * Finds the setter method for a value.
+     *
+     * @param args the value to set, possibly FSObject wrapped, as the only element
+     * @return the setter, or null when there is none and the field is written
+     */
+    public MethodInvoker getSetter(Object[] args) throws MethodMap.AmbiguousException {
+        return hasSetter ? classMap.findInvoker(setterName, args) : null;
+    }
+
+    /**
+     * @return true when the property can be read from a public field
+     */
+    public boolean hasField() {
+        return field != null;
+    }
+
+    /**
+     * Reads the public field.
+     *
+     * @param target the object, ignored for static fields
+     * @return the normalized value
+     */
+    public Object getField(Object target) throws Exception {
+        if (fieldGetter == null) {
+            return MethodInvoker.normalize(field.get(target), field.getType());
+        }
+        try {
+            return fieldGetter.invokeExact(target);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Writes the public field.
+     *
+     * @param target the object, ignored for static fields
+     * @param value  the value, possibly FSObject wrapped
+     */
+    public void setField(Object target, Object value) throws Exception {
+        if (fieldSetter == null) {
+            field.set(target, MethodInvoker.unwrap(value));
+            return;
+        }
+        try {
+            fieldSetter.invokeExact(target, value);
+        } catch (ClassCastException | NullPointerException e) {
+            Object v = MethodInvoker.unwrap(value);
+            if (field.getType().isPrimitive() && (v instanceof Number || v instanceof Character)) {
+                // the handle only unboxes the exact wrapper, Field.set also widens (e.g. short to int)
+                field.set(target, v);
+                return;
+            }
+            throw setFailed(target, v);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * The error Field.set gives for a value of the wrong type, so scripts
+     * see the same message whichever way the field is written.
+     */
+    private IllegalArgumentException setFailed(Object target, Object value) {
+        if (!Modifier.isStatic(field.getModifiers()) && !field.getDeclaringClass().isInstance(target)) {
+            // wrong object rather than wrong value, Field.set names the object's class then
+            value = target;
+        }
+        StringBuilder msg = new StringBuilder("Can not set");
+        if (Modifier.isStatic(field.getModifiers())) msg.append(" static");
+        msg.append(' ').append(field.getType().getName())
+                .append(" field ").append(field.getDeclaringClass().getName()).append('.').append(field.getName())
+                .append(" to ").append((value == null) ? "null value" : value.getClass().getName());
+        return new IllegalArgumentException(msg.toString());
+    }
+}
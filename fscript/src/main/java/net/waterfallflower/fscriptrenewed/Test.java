@@ -0,0 +1,22 @@
+package net.waterfallflower.fscriptrenewed;
+
+import murlen.util.fscript.BasicIO;
+import murlen.util.fscript.FSException;
+import net.waterfallflower.fscriptrenewed.common.Libraries;
+
+import java.io.FileReader;
+import java.io.IOException;
+
+public class Test {
+    public static void main(String[] args) throws IOException, FSException {
+        BasicIO basicIO = new BasicIO();
+
+        try (FileReader script = new FileReader("D:\\Games\\GithubDesktop_2nd\\FScriptRenewed\\src\\main\\resources\\primitve_test1.script")) {
+            Libraries.load(basicIO, script);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        basicIO.run();
+    }
+}
@@ -0,0 +1,27 @@
+package net.waterfallflower.fscriptrenewed.api;
+
+/**
+ * <p>FSLibrary - a library scripts can $import, found through ServiceLoader</p>
+ * <p>
+ * Implementations are listed in
+ * META-INF/services/net.waterfallflower.fscriptrenewed.api.FSLibrary and
+ * must be cheap to create: the extensions themselves are only made by
+ * getExtensions(), the first time a script imports the library.</p>
+ */
+public interface FSLibrary {
+
+    /**
+     * @return the name scripts import it by
+     */
+    String getName();
+
+    /**
+     * Creates the extensions of the library: FSExtensions are registered as
+     * they are, LibFunctionExtensions, LibVarExtensions and
+     * LibArrayExtensions are plugged into one FSFastExtension. They are
+     * shared by every FScript importing the library, unless one of them is
+     * an FSParserExtension.
+     * @return the extensions
+     */
+    Object[] getExtensions();
+}
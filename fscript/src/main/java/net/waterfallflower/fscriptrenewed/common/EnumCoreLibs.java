@@ -0,0 +1,24 @@
+package net.waterfallflower.fscriptrenewed.common;
+
+import murlen.util.fscript.BasicIO;
+
+/**
+ * @deprecated the core libraries are FSLibrary services now, imported
+ * through {@link Libraries}
+ */
+@Deprecated
+public enum EnumCoreLibs {
+    MATH_LIB("math"),
+    UNSAFE_LIB("unsafe"),
+    ;
+
+    public final String LIB_NAME;
+
+    EnumCoreLibs(String libName) {
+        this.LIB_NAME = libName;
+    }
+
+    public void access(BasicIO io) {
+        Libraries.importLibrary(io, LIB_NAME);
+    }
+}
@@ -0,0 +1,155 @@
+package net.waterfallflower.fscriptrenewed.common;
+
+import murlen.util.fscript.FSException;
+import murlen.util.fscript.FSFastExtension;
+import murlen.util.fscript.FScript;
+import murlen.util.fscript.api.FSExtension;
+import murlen.util.fscript.api.FSParserExtension;
+import net.waterfallflower.fscriptrenewed.api.FSLibrary;
+import net.waterfallflower.fscriptrenewed.api.LibArrayExtension;
+import net.waterfallflower.fscriptrenewed.api.LibFunctionExtension;
+import net.waterfallflower.fscriptrenewed.api.LibVarExtension;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Libraries - the libraries scripts can $import</p>
+ * <p>
+ * The FSLibrary providers on the class path are listed once, the first
+ * time a library is looked up. A library makes its extensions when it is
+ * first imported, and these are shared by every FScript importing it
+ * afterwards, so only the libraries scripts use cost anything.</p>
+ */
+public final class Libraries {
+    private static volatile HashMap<String, Entry> libraries;
+    //the libraries imported by each FScript
+    private static final WeakHashMap<FScript, Set<String>> imported = new WeakHashMap<>();
+
+    private Libraries() {
+    }
+
+    private static final class Entry {
+        final FSLibrary library;
+        private FSExtension[] extensions; //null until imported, or when not shared
+
+        Entry(FSLibrary library) {
+            this.library = library;
+        }
+
+        synchronized FSExtension[] extensions() {
+            if (extensions != null)
+                return extensions;
+            FSExtension[] made = make(library.getExtensions());
+            for (FSExtension extension : made) {
+                //has a parser of its own, cannot be shared
+                if (extension instanceof FSParserExtension)
+                    return made;
+            }
+            return extensions = made;
+        }
+    }
+
+    private static HashMap<String, Entry> libraries() {
+        HashMap<String, Entry> map = libraries;
+        if (map == null) {
+            synchronized (Libraries.class) {
+                map = libraries;
+                if (map == null) {
+                    map = new HashMap<>();
+                    for (FSLibrary library : ServiceLoader.load(FSLibrary.class, Libraries.class.getClassLoader()))
+                        map.putIfAbsent(library.getName(), new Entry(library));
+                    libraries = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    //registers the FSExtensions, and plugs the others into an FSFastExtension
+    private static FSExtension[] make(Object[] objects) {
+        ArrayList<FSExtension> extensions = new ArrayList<>();
+        FSFastExtension fastEx = null;
+        for (Object o : objects) {
+            if (o instanceof FSExtension) {
+                extensions.add((FSExtension) o);
+                continue;
+            }
+            if (fastEx == null)
+                fastEx = new FSFastExtension();
+            if (o instanceof LibArrayExtension)
+                fastEx.addArrayExtension(((LibArrayExtension) o).getName(), (LibArrayExtension) o);
+            if (o instanceof LibFunctionExtension)
+                fastEx.addFunctionExtension(((LibFunctionExtension) o).getName(), (LibFunctionExtension) o);
+            if (o instanceof LibVarExtension)
+                fastEx.addVarExtension(((LibVarExtension) o).getName(), (LibVarExtension) o);
+        }
+        if (fastEx != null) {
+            fastEx.freeze();
+            extensions.add(fastEx);
+        }
+        return extensions.toArray(new FSExtension[0]);
+    }
+
+    /**
+     * @return the names of the libraries found
+     */
+    public static Collection<String> getNames() {
+        return Collections.unmodifiableSet(libraries().keySet());
+    }
+
+    /**
+     * Registers the extensions of a library with an FScript, once
+     * @param host the FScript importing the library
+     * @param name the name of the library
+     * @return false if there is no such library
+     */
+    public static boolean importLibrary(FScript host, String name) {
+        Entry entry = libraries().get(name);
+        if (entry == null)
+            return false;
+        synchronized (imported) {
+            Set<String> names = imported.get(host);
+            if (names == null)
+                imported.put(host, names = new HashSet<>());
+            if (!names.add(name))
+                return true;
+        }
+        for (FSExtension extension : entry.extensions())
+            host.registerExtension(extension);
+        return true;
+    }
+
+    /**
+     * Loads a script into an FScript, importing the libraries named by its
+     * $import lines. Other lines starting with $ are ignored.
+     * @param host the FScript to load into
+     * @param script the script
+     * @throws FSException when a library is not found
+     */
+    public static void load(FScript host, Reader script) throws IOException, FSException {
+        BufferedReader in = new BufferedReader(script);
+        String s;
+        while ((s = in.readLine()) != null) {
+            if (s.trim().startsWith("$")) {
+                s = s.trim();
+                if (s.startsWith("$import")) {
+                    String[] parts = s.split("\\s+", 2);
+                    if (parts.length < 2 || !importLibrary(host, parts[1].trim()))
+                        throw new FSException("Unknown library in \"" + s + "\"");
+                }
+                continue;
+            }
+            host.loadLine(s);
+        }
+    }
+}
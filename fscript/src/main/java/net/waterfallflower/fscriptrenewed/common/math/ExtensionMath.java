@@ -0,0 +1,33 @@
+package net.waterfallflower.fscriptrenewed.common.math;
+
+import murlen.util.fscript.FSAnnotatedExtension;
+import murlen.util.fscript.api.FSFunction;
+import murlen.util.fscript.api.FSVariable;
+
+public class ExtensionMath extends FSAnnotatedExtension {
+    @FSVariable("math_PI")
+    public static final double PI = Math.PI;
+
+    @FSVariable("math_E")
+    public static final double E = Math.E;
+
+    @FSFunction
+    public static double abs(double a) {
+        return Math.abs(a);
+    }
+
+    @FSFunction
+    public static double floor(double a) {
+        return Math.floor(a);
+    }
+
+    @FSFunction
+    public static double ceil(double a) {
+        return Math.ceil(a);
+    }
+
+    @FSFunction
+    public static long round(double a) {
+        return Math.round(a);
+    }
+}
@@ -0,0 +1,15 @@
+package net.waterfallflower.fscriptrenewed.common.math;
+
+import net.waterfallflower.fscriptrenewed.api.FSLibrary;
+
+public class MathLibrary implements FSLibrary {
+    @Override
+    public String getName() {
+        return "math";
+    }
+
+    @Override
+    public Object[] getExtensions() {
+        return new ExtensionMathDispatch().extensions();
+    }
+}
@@ -0,0 +1,16 @@
+package net.waterfallflower.fscriptrenewed.common.unsafe;
+
+import net.waterfallflower.fscriptrenewed.api.FSLibrary;
+
+@Deprecated
+public class UnsafeLibrary implements FSLibrary {
+    @Override
+    public String getName() {
+        return "unsafe";
+    }
+
+    @Override
+    public Object[] getExtensions() {
+        return new Object[]{new ExtensionUnsafe()};
+    }
+}
@@ -0,0 +1,85 @@
+package net.waterfallflower.fscriptrenewed.script;
+
+import murlen.util.fscript.BasicIO;
+import murlen.util.fscript.FSException;
+import murlen.util.fscript.FSObject;
+import murlen.util.fscript.FSUnsupportedException;
+
+import javax.script.ScriptContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Host of one evaluation by FScriptEngine: variables the script does not
+ * define are looked up in the bindings of the ScriptContext, and println/readln
+ * use its writer and reader instead of stdout/stdin.
+ */
+class ContextHost extends BasicIO {
+    private final ScriptContext context;
+    private BufferedReader reader;
+
+    ContextHost(ScriptContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public Object getVar(String name) throws FSException {
+        if (context.getAttributesScope(name) < 0)
+            return super.getVar(name);
+        return toScript(context.getAttribute(name));
+    }
+
+    @Override
+    public void setVar(String name, Object value) throws FSException {
+        int scope = context.getAttributesScope(name);
+        if (scope < 0)
+            throw new FSUnsupportedException(name);
+        context.setAttribute(name, fromScript(value), scope);
+    }
+
+    @Override
+    public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+        switch (name) {
+            case "println": {
+                StringBuilder s = new StringBuilder();
+                for (Object o : params)
+                    s.append(o);
+                try {
+                    Writer out = context.getWriter();
+                    out.write(s.append(System.lineSeparator()).toString());
+                    out.flush();
+                } catch (IOException e) {
+                    throw new FSException(e.getMessage());
+                }
+                return null;
+            }
+
+            case "readln": {
+                try {
+                    if (reader == null)
+                        reader = new BufferedReader(context.getReader());
+                    return reader.readLine();
+                } catch (IOException e) {
+                    throw new FSException(e.getMessage());
+                }
+            }
+
+            default: return super.callFunction(name, params);
+        }
+    }
+
+    //values of the types FScript knows are used as they are, others wrapped
+    static Object toScript(Object value) {
+        if (value instanceof Integer || value instanceof String || value instanceof Double || value instanceof FSObject)
+            return value;
+        if (value instanceof Boolean)
+            return ((Boolean) value) ? 1 : 0;
+        return new FSObject(value);
+    }
+
+    static Object fromScript(Object value) {
+        return (value instanceof FSObject) ? ((FSObject) value).getObject() : value;
+    }
+}
@@ -0,0 +1,31 @@
+package net.waterfallflower.fscriptrenewed.script;
+
+import murlen.util.fscript.CompiledScript;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script compiled by FScriptEngine. It is parsed and compiled once, every
+ * eval() only runs it, in a context of its own.
+ */
+class FScriptCompiledScript extends javax.script.CompiledScript {
+    private final FScriptEngine engine;
+    private final CompiledScript script;
+
+    FScriptCompiledScript(FScriptEngine engine, CompiledScript script) {
+        this.engine = engine;
+        this.script = script;
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        return engine.run(script, context);
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
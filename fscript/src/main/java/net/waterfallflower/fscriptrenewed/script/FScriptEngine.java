@@ -0,0 +1,208 @@
+package net.waterfallflower.fscriptrenewed.script;
+
+import murlen.util.fscript.CompiledScript;
+import murlen.util.fscript.ExecutionContext;
+import murlen.util.fscript.FSException;
+import murlen.util.fscript.api.FSExtension;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>JSR-223 engine running FScript.</p>
+ * <p>
+ * Scripts are compiled once (see Compilable) and every evaluation runs in
+ * an ExecutionContext of its own, so evaluations may run concurrently.
+ * Variables not defined by the script are looked up in the bindings of the
+ * ScriptContext, println/readln use its writer and reader.</p>
+ * <p>
+ * Invocable calls the functions defined by the script evaluated last in
+ * the engine's own ScriptContext (see getContext()), in its execution
+ * context. Evaluations with other ScriptContexts do not change it, and
+ * calls from several threads take turns.</p>
+ */
+public class FScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final ScriptEngineFactory factory;
+    private final List<FSExtension> extensions = new CopyOnWriteArrayList<>();
+    private volatile Evaluation last; //in the engine's own context, for Invocable
+
+    private static final class Evaluation {
+        final ScriptContext context;
+        final ExecutionContext ctx;
+
+        Evaluation(ScriptContext context, ExecutionContext ctx) {
+            this.context = context;
+            this.ctx = ctx;
+        }
+    }
+
+    public FScriptEngine() {
+        this(new FScriptEngineFactory());
+    }
+
+    FScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Registers a language extension, used by all evaluations from now on
+     * @param extension the extension to register
+     */
+    public void registerExtension(FSExtension extension) {
+        extensions.add(extension);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return eval(new StringReader(script), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return run(load(reader), context);
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(String script) throws ScriptException {
+        return compile(new StringReader(script));
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(Reader script) throws ScriptException {
+        return new FScriptCompiledScript(this, load(script));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private static CompiledScript load(Reader reader) throws ScriptException {
+        try {
+            return new CompiledScript(reader);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        } catch (RuntimeException e) {
+            //a malformed line, e.g. mismatched brackets
+            ScriptException se = new ScriptException(e.getMessage());
+            se.initCause(e);
+            throw se;
+        }
+    }
+
+    Object run(CompiledScript script, ScriptContext context) throws ScriptException {
+        ContextHost host = new ContextHost(context);
+        for (FSExtension extension : extensions)
+            host.registerExtension(extension);
+
+        ExecutionContext ctx = script.newContext(host);
+        try {
+            return ContextHost.fromScript(ctx.run());
+        } catch (FSException e) {
+            throw error(ctx, e, (String) context.getAttribute(ScriptEngine.FILENAME));
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        } finally {
+            //the functions defined so far can be called, even when the run failed
+            if (context == this.context)
+                last = new Evaluation(context, ctx);
+        }
+    }
+
+    //the context of the script evaluated last in the engine's context, null if none
+    private ExecutionContext invocable() {
+        Evaluation l = last;
+        return (l != null && l.context == context) ? l.ctx : null;
+    }
+
+    //contexts are not thread safe, callers take turns
+    private static Object call(ExecutionContext ctx, String name, ArrayList<Object> params) throws IOException, FSException {
+        synchronized (ctx) {
+            return ContextHost.fromScript(ctx.callScriptFunction(name, params));
+        }
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        ExecutionContext ctx = invocable();
+        if (ctx == null || !ctx.hasScriptFunction(name))
+            throw new NoSuchMethodException(name);
+
+        ArrayList<Object> params = new ArrayList<>(Math.max(args == null ? 0 : args.length, 4));
+        if (args != null)
+            for (Object arg : args)
+                params.add(ContextHost.toScript(arg));
+        try {
+            return call(ctx, name, params);
+        } catch (FSException e) {
+            throw error(ctx, e, null);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) {
+        throw new IllegalArgumentException("FScript has no script objects with methods");
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> cls) {
+        if (cls == null || !cls.isInterface())
+            throw new IllegalArgumentException("not an interface: " + cls);
+        ExecutionContext ctx = invocable();
+        for (Method m : cls.getMethods()) {
+            if (ctx == null || !ctx.hasScriptFunction(m.getName()))
+                return null;
+        }
+
+        return cls.cast(Proxy.newProxyInstance(cls.getClassLoader(), new Class<?>[]{cls}, (proxy, m, args) -> {
+            if (m.getDeclaringClass() == Object.class) {
+                switch (m.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    default: return cls.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            ArrayList<Object> params = new ArrayList<>((args == null) ? Arrays.asList() : Arrays.asList(args));
+            for (int n = 0; n < params.size(); n++)
+                params.set(n, ContextHost.toScript(params.get(n)));
+            return call(ctx, m.getName(), params);
+        }));
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> cls) {
+        throw new IllegalArgumentException("FScript has no script objects with methods");
+    }
+
+    private static ScriptException error(ExecutionContext ctx, FSException e, String fileName) {
+        String[] error = ctx.getError();
+        ScriptException se = (error == null)
+                ? new ScriptException(e.getMessage(), fileName, -1)
+                : new ScriptException(error[0], fileName, Integer.parseInt(error[1]) + 1);
+        se.initCause(e);
+        return se;
+    }
+}
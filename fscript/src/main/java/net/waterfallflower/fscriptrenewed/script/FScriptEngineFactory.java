@@ -0,0 +1,87 @@
+package net.waterfallflower.fscriptrenewed.script;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JSR-223 factory of FScriptEngine, found by javax.script.ScriptEngineManager
+ * through META-INF/services.
+ */
+public class FScriptEngineFactory implements ScriptEngineFactory {
+    private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("fscript", "FScript"));
+    private static final List<String> EXTENSIONS = Collections.unmodifiableList(Arrays.asList("fscript", "script"));
+    private static final List<String> MIME_TYPES = Collections.singletonList("application/x-fscript");
+
+    @Override
+    public String getEngineName() {
+        return "FScript Renewed";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.7-Renewed";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "FScript";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.7";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return NAMES.get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            //every evaluation runs in an execution context of its own, Invocable calls take turns
+            case "THREADING": return "MULTITHREADED";
+
+            default: return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return obj + "." + m + "(" + String.join(",", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "println(\"" + toDisplay.replace("\\", "\\\\").replace("\"", "\\\"") + "\")";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return String.join("\n", statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new FScriptEngine(this);
+    }
+}
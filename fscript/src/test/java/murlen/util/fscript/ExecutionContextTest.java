@@ -0,0 +1,126 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompiledScripts run in ExecutionContexts, alone and from several threads.
+ */
+public class ExecutionContextTest {
+
+    private static CompiledScript compile(String... lines) throws IOException {
+        return new CompiledScript(new StringReader(String.join("\n", lines) + "\n"));
+    }
+
+    @Test
+    public void contextsHaveVariablesOfTheirOwn() throws IOException, FSException {
+        CompiledScript script = compile(
+                "int n = 0",
+                "function inc(int by)",
+                "  n = n + by",
+                "  return n",
+                "endfunction",
+                "inc(2)",
+                "return n");
+        FScript host = new FScript();
+        ExecutionContext a = script.newContext(host);
+        ExecutionContext b = script.newContext(host);
+        assertEquals(2, a.run());
+        assertEquals(2, b.run());
+        assertEquals(5, a.callScriptFunction("inc", new ArrayList<Object>(Arrays.asList(3))));
+        assertEquals(5, a.getScriptVar("n"));
+        assertEquals(2, b.getScriptVar("n"));
+        b.setScriptVar("n", 10);
+        assertEquals(10, b.getScriptVar("n"));
+        assertTrue(a.hasScriptFunction("inc"));
+        assertFalse(a.hasScriptFunction("dec"));
+        assertEquals(2, a.run());
+    }
+
+    @Test
+    public void reflectionSeesContextVariables() throws IOException, FSException {
+        CompiledScript script = compile(
+                "object o = create(\"java.util.ArrayList\")",
+                "o.add(\"x\")",
+                "return o.size()");
+        FScript host = new FScript();
+        host.registerExtension(new FSReflectionExtension());
+        assertEquals(1, script.newContext(host).run());
+
+        //and the host's own script is untouched by it
+        host.load(new StringReader("object o = create(\"java.util.HashMap\")\no.put(\"a\", 1)\nreturn o.size() + 1\n"));
+        assertEquals(2, host.run());
+        assertEquals(1, script.newContext(host).run());
+    }
+
+    @Test
+    public void hostCallbackSeesContextVariables() throws IOException, FSException {
+        CompiledScript script = compile(
+                "int x = 21",
+                "return peek()");
+        FScript host = new FScript() {
+            @Override
+            public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+                if (name.equals("peek"))
+                    return (Integer) getScriptVar("x") * 2;
+                return super.callFunction(name, params);
+            }
+        };
+        assertEquals(42, script.newContext(host).run());
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        final CompiledScript script = compile(
+                "int s = 0",
+                "int i = 0",
+                "object l = create(\"java.util.ArrayList\")",
+                "while i < n",
+                "  s = s + i",
+                "  l.add(i)",
+                "  i = i + 1",
+                "endwhile",
+                "return s + l.size()");
+        //one reflection extension for all, as FScriptEngine does
+        final FSReflectionExtension reflection = new FSReflectionExtension();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                final int n = 100 + t;
+                results.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        FScript host = new FScript() {
+                            @Override
+                            public Object getVar(String name) throws FSException {
+                                return name.equals("n") ? n : super.getVar(name);
+                            }
+                        };
+                        host.setCompileThresholds(1, 1);
+                        host.registerExtension(reflection);
+                        return (Integer) script.newContext(host).run();
+                    }
+                }));
+            }
+            for (int t = 0; t < 64; t++) {
+                int n = 100 + t;
+                assertEquals(n * (n - 1) / 2 + n, (int) results.get(t).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
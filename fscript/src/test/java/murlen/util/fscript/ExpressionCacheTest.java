@@ -0,0 +1,128 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Expressions evaluated by FScript, and the cache keeping them compiled.
+ */
+public class ExpressionCacheTest {
+
+    private static FScript load(FScript script, String... lines) throws IOException {
+        script.load(new StringReader(String.join("\n", lines) + "\n"));
+        return script;
+    }
+
+    @Test
+    public void evaluatesAgainstGlobals() throws IOException, FSException {
+        FScript script = load(new FScript(), "int a = 20", "string s = \"x\"");
+        script.run();
+        assertEquals(22, script.evaluateExpression("a + 2"));
+        assertEquals(22, script.evaluateExpression("a + 2"));
+        assertEquals("xy", script.evaluateExpression("s + \"y\""));
+
+        ExpressionCache cache = script.getExpressionCache();
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        CompiledExpression e = script.compileExpression("a * k", "k");
+        assertEquals(1, e.getParameterCount());
+        assertEquals(60, script.evaluate(e, 3));
+        try {
+            script.evaluate(e);
+            fail();
+        } catch (FSException expected) {
+        }
+    }
+
+    @Test
+    public void seesLocalsOfTheCallingFunction() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            FScript script = new FScript() {
+                @Override
+                public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+                    if (name.equals("peek")) {
+                        try {
+                            return evaluateExpression("loc * 2");
+                        } catch (IOException e) {
+                            throw new FSException(e.getMessage());
+                        }
+                    }
+                    return super.callFunction(name, params);
+                }
+            };
+            script.setCompiled(compiled);
+            load(script,
+                    "int loc = 1",
+                    "function f(int loc)",
+                    "  return peek()",
+                    "endfunction",
+                    "return f(21) + peek()");
+            assertEquals(44, script.run());
+        }
+    }
+
+    @Test
+    public void addsNoGlobals() throws IOException, FSException {
+        FScript script = load(new FScript(), "int a = 1");
+        script.run();
+        int globals = script.compileExpression("a").globals.size();
+        for (int n = 0; n < 100; n++) {
+            try {
+                script.evaluateExpression("nosuch" + n + " + a");
+                fail();
+            } catch (FSException expected) {
+            }
+            script.compileExpression("other" + n + " * 2");
+        }
+        assertEquals(globals, script.compileExpression("a").globals.size());
+    }
+
+    @Test
+    public void hostVariableBecomesGlobal() throws IOException, FSException {
+        FScript script = new FScript() {
+            @Override
+            public Object getVar(String name) throws FSException {
+                return name.equals("b") ? 5 : super.getVar(name);
+            }
+        };
+        load(script, "int a = 1");
+        script.run();
+        assertEquals(6, script.evaluateExpression("a + b"));
+
+        //the script now defines b, the cached expression finds it
+        script.loadLine("int b = 10");
+        script.run();
+        assertEquals(11, script.evaluateExpression("a + b"));
+        assertEquals(1, script.getExpressionCache().getHits());
+    }
+
+    @Test
+    public void keepsRecentlyUsed() throws IOException, FSException {
+        FScript script = new FScript();
+        ExpressionCache cache = script.getExpressionCache();
+        cache.setCapacity(16);
+        for (int n = 0; n < 200; n++) {
+            assertEquals(n, script.evaluateExpression(n + " + 0"));
+            assertEquals(1, script.evaluateExpression("1"));
+            assertTrue(cache.size() <= 16);
+        }
+        assertEquals(201, cache.getMisses());
+        assertEquals(199, cache.getHits());
+
+        cache.setCapacity(4);
+        assertTrue(cache.size() <= 4);
+        cache.setCapacity(0);
+        assertEquals(0, cache.size());
+        script.evaluateExpression("1");
+        assertEquals(0, cache.size());
+    }
+}
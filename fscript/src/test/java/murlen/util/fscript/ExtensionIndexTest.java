@@ -0,0 +1,132 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSNamedExtension;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Host names dispatched through the index of the registered extensions.
+ */
+public class ExtensionIndexTest {
+
+    //an extension counting its calls, handling the given names
+    private static class Unlisted extends BasicExtension {
+        final Collection<String> names;
+        int calls;
+
+        Unlisted(String... names) {
+            this.names = Arrays.asList(names);
+        }
+
+        @Override
+        public Object getVar(String name) throws FSException {
+            calls++;
+            if (names.contains(name)) return name + "!";
+            throw FSUnsupportedException.UNSUPPORTED;
+        }
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            calls++;
+            if (names.contains(name)) return name + params;
+            throw FSUnsupportedException.UNSUPPORTED;
+        }
+    }
+
+    //the same, listing its names
+    private static final class Listing extends Unlisted implements FSNamedExtension {
+        Listing(String... names) {
+            super(names);
+        }
+
+        public Collection<String> getVarNames() {
+            return names;
+        }
+
+        public Collection<String> getArrayNames() {
+            return Collections.emptyList();
+        }
+
+        public Collection<String> getFunctionNames() {
+            return names;
+        }
+    }
+
+    private static Object run(FScript script, String line) throws IOException, FSException {
+        script.load(new StringReader(line + "\n"));
+        try {
+            return script.run();
+        } finally {
+            script.reset();
+        }
+    }
+
+    @Test
+    public void namedExtensionsOnlyForTheirNames() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            FScript script = new FScript();
+            script.setCompiled(compiled);
+            Listing a = new Listing("a", "f");
+            Listing b = new Listing("b", "g");
+            script.registerExtension(a);
+            script.registerExtension(b);
+
+            assertEquals("b!", run(script, "return b"));
+            assertEquals("g[1]", run(script, "return g(1)"));
+            assertEquals("a!f[2, x]", run(script, "return a + f(2, \"x\")"));
+            assertEquals(2, a.calls);
+            assertEquals(2, b.calls);
+
+            try {
+                run(script, "return c");
+                fail();
+            } catch (FSException expected) {
+            }
+            assertEquals(2, a.calls);
+            assertEquals(2, b.calls);
+        }
+    }
+
+    @Test
+    public void unlistedExtensionsInRegistrationOrder() throws IOException, FSException {
+        FScript script = new FScript();
+        Unlisted first = new Unlisted("x");
+        Listing named = new Listing("x", "y");
+        Unlisted last = new Unlisted("y");
+        script.registerExtension(first);
+        script.registerExtension(named);
+        script.registerExtension(last);
+
+        assertEquals("x!", run(script, "return x"));
+        assertEquals(0, named.calls);
+        assertEquals("y!", run(script, "return y"));
+        assertEquals(0, last.calls);
+        assertEquals(2, first.calls);
+
+        //the index follows the extensions registered
+        script.unRegisterExtension(named);
+        assertEquals("y!", run(script, "return y"));
+        assertEquals(1, last.calls);
+        script.unRegisterExtension(first);
+        try {
+            run(script, "return x");
+            fail();
+        } catch (FSException expected) {
+        }
+    }
+
+    @Test
+    public void unsupportedWithoutStackTrace() {
+        assertEquals(0, new FSUnsupportedException("x").getStackTrace().length);
+        assertEquals(0, FSUnsupportedException.UNSUPPORTED.getStackTrace().length);
+    }
+}
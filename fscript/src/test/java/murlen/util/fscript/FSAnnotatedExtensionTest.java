@@ -0,0 +1,239 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSFunction;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunctionN;
+import murlen.util.fscript.api.FSVariable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Extensions made of annotated methods and fields.
+ */
+public class FSAnnotatedExtensionTest {
+
+    public static class Library {
+        @FSVariable
+        public int count = 1;
+
+        @FSVariable("limit")
+        public final int max = 10;
+
+        private String label = "x";
+
+        @FSFunction
+        public static int add(int a, int b) {
+            return a + b;
+        }
+
+        @FSFunction("twice")
+        public long doubled(long a) {
+            return a * 2;
+        }
+
+        @FSFunction
+        public double half(double a) {
+            return a / 2;
+        }
+
+        @FSFunction
+        public boolean positive(int a) {
+            return a > 0;
+        }
+
+        @FSFunction
+        public char first(String s) {
+            return s.charAt(0);
+        }
+
+        @FSFunction
+        public void bump() {
+            count++;
+        }
+
+        @FSFunction
+        public String join(String a, Object b, int c) {
+            return a + b + c;
+        }
+
+        @FSFunction
+        public int all(Object... args) {
+            return args.length;
+        }
+
+        @FSFunction
+        public String failing(String message) throws Exception {
+            throw new Exception(message);
+        }
+
+        @FSFunction
+        public String rejecting(String message) throws FSException {
+            throw new FSException(message);
+        }
+
+        @FSVariable("label")
+        public String getLabel() {
+            return label;
+        }
+
+        @FSVariable("label")
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+        public int unmarked() {
+            return 0;
+        }
+    }
+
+    public static class Statics {
+        @FSFunction
+        public static int neg(int a) {
+            return -a;
+        }
+
+        @FSFunction
+        public int instance() {
+            return 0;
+        }
+    }
+
+    //a subclass marking its own members
+    public static class Sub extends FSAnnotatedExtension {
+        @FSFunction
+        public String hello(String name) {
+            return "hello " + name;
+        }
+    }
+
+    private static Object call(FSAnnotatedExtension ext, String name, Object... params) throws FSException {
+        return ext.callFunction(name, new ArrayList<>(Arrays.asList(params)));
+    }
+
+    @Test
+    public void convertsArgumentsAndResults() throws FSException {
+        Library library = new Library();
+        FSAnnotatedExtension ext = new FSAnnotatedExtension(library);
+        assertEquals(5, call(ext, "add", 2, 3));
+        assertEquals(8, call(ext, "twice", 4));
+        assertEquals(1.5, call(ext, "half", 3));
+        assertEquals(1, call(ext, "positive", 2));
+        assertEquals(0, call(ext, "positive", -2));
+        assertEquals("a", call(ext, "first", "abc"));
+        assertEquals(1, call(ext, "bump"));
+        assertEquals(2, library.count);
+        assertEquals("ab3", call(ext, "join", "a", "b", 3));
+        assertEquals(4, call(ext, "all", 1, "2", 3.0, null));
+        assertEquals(0, call(ext, "all"));
+
+        //a long result too large for an Integer becomes a Double
+        assertEquals(2.0 * Integer.MAX_VALUE, call(ext, "twice", Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void functionObjects() throws FSException {
+        FSAnnotatedExtension ext = new FSAnnotatedExtension(new Library());
+        assertEquals(new HashSet<>(Arrays.asList("add", "twice", "half", "positive", "first", "bump", "join", "all", "failing", "rejecting")),
+                new HashSet<>(ext.getFunctionNames()));
+        assertEquals(1.5, ((FSFunction1) ext.getFunction("half")).call1(3));
+        assertEquals("xyz1", ((FSFunctionN) ext.getFunction("join")).call("x", "yz", 1));
+        assertNull(ext.getFunction("unmarked"));
+        assertNull(ext.getFunction("doubled"));
+    }
+
+    @Test
+    public void errors() {
+        FSAnnotatedExtension ext = new FSAnnotatedExtension(new Library());
+        String[][] calls = {{"failing", "boom"}, {"rejecting", "boom"}, {"join", "a"}, {"add", "1"}};
+        for (String[] c : calls) {
+            try {
+                call(ext, c[0], (Object[]) Arrays.copyOfRange(c, 1, c.length));
+                fail(c[0]);
+            } catch (FSUnsupportedException e) {
+                fail(c[0]);
+            } catch (FSException expected) {
+                if (c[1].equals("boom"))
+                    assertEquals("boom", expected.getMessage());
+            }
+        }
+        try {
+            call(ext, "unmarked");
+            fail();
+        } catch (FSUnsupportedException expected) {
+        } catch (FSException e) {
+            fail();
+        }
+    }
+
+    @Test
+    public void variables() throws FSException {
+        Library library = new Library();
+        FSAnnotatedExtension ext = new FSAnnotatedExtension(library);
+        assertEquals(new HashSet<>(Arrays.asList("count", "limit", "label")), new HashSet<>(ext.getVarNames()));
+        assertTrue(ext.getArrayNames().isEmpty());
+
+        assertEquals(1, ext.getVar("count"));
+        ext.setVar("count", 7);
+        assertEquals(7, library.count);
+        assertEquals(10, ext.getVar("limit"));
+        try {
+            ext.setVar("limit", 1);
+            fail();
+        } catch (FSUnsupportedException e) {
+            fail();
+        } catch (FSException expected) {
+        }
+        assertEquals("x", ext.getVar("label"));
+        ext.setVar("label", "y");
+        assertEquals("y", library.getLabel());
+        try {
+            ext.getVar("max");
+            fail();
+        } catch (FSUnsupportedException expected) {
+        }
+    }
+
+    @Test
+    public void staticsAndSubclasses() throws FSException {
+        FSAnnotatedExtension statics = new FSAnnotatedExtension(new Statics());
+        assertEquals(-2, call(statics, "neg", 2));
+        try {
+            new FSAnnotatedExtension(Statics.class);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("hello you", call(new Sub(), "hello", "you"));
+    }
+
+    @Test
+    public void calledFromScript() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            Library library = new Library();
+            FScript script = new FScript();
+            script.setCompiled(compiled);
+            script.setCompileThresholds(1, 1);
+            script.registerExtension(new FSAnnotatedExtension(library));
+            script.load(new StringReader(String.join("\n",
+                    "int i = 0",
+                    "while i < 3",
+                    "  bump()",
+                    "  i = i + 1",
+                    "endwhile",
+                    "label = join(\"n\", half(count), limit)",
+                    "return add(count, twice(all(1, 2, 3)))") + "\n"));
+            assertEquals(10, script.run());
+            assertEquals(4, library.count);
+            assertEquals("n2.010", library.getLabel());
+        }
+    }
+}
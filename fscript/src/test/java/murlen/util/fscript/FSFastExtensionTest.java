@@ -0,0 +1,202 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSArrayExtension;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunctionExtension;
+import murlen.util.fscript.api.FSVarExtension;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Lookups of FSFastExtension before and after freeze(), which moves the
+ * names into perfect hash tables.
+ */
+public class FSFastExtensionTest {
+
+    //"Aa" and "BB" have the same hash code, and so do all strings made of them
+    private static final String[] COLLIDING = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+
+    private static FSFunctionExtension function(final String name) {
+        return (FSFunction1) a -> name + a;
+    }
+
+    private static Map<String, FSFunctionExtension> addFunctions(FSFastExtension ext, String... names) {
+        Map<String, FSFunctionExtension> added = new HashMap<>();
+        for (String name : names) {
+            FSFunctionExtension f = function(name);
+            ext.addFunctionExtension(name, f);
+            added.put(name, f);
+        }
+        return added;
+    }
+
+    private static void assertFinds(FSFastExtension ext, Map<String, FSFunctionExtension> added) {
+        for (Map.Entry<String, FSFunctionExtension> e : added.entrySet()) {
+            //a copy of the name, so it is found by equals() rather than identity
+            assertSame(e.getKey(), e.getValue(), ext.getFunction(new String(e.getKey())));
+        }
+    }
+
+    private static String[] names(int n) {
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++)
+            names[i] = "fn" + i;
+        return names;
+    }
+
+    @Test
+    public void findsEveryName() {
+        for (int n : new int[]{1, 2, 3, 7, 8, 9, 100, 1000}) {
+            FSFastExtension ext = new FSFastExtension();
+            Map<String, FSFunctionExtension> added = addFunctions(ext, names(n));
+            assertFinds(ext, added);
+            ext.freeze();
+            assertTrue(ext.isFrozen());
+            assertFinds(ext, added);
+            assertNull(ext.getFunction("fn" + n));
+            assertNull(ext.getFunction(""));
+        }
+    }
+
+    @Test
+    public void collidingHashCodes() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+
+        FSFastExtension ext = new FSFastExtension();
+        String[] names = names(50);
+        Map<String, FSFunctionExtension> added = addFunctions(ext, names);
+        added.putAll(addFunctions(ext, COLLIDING));
+        ext.freeze();
+        assertFinds(ext, added);
+        assertNull(ext.getFunction("AaAaAa"));
+        assertNull(ext.getFunction("fn50"));
+    }
+
+    @Test
+    public void nameWithTheHashCodeOfAnother() {
+        //only one of each colliding pair is added, the other lands on its slot
+        FSFastExtension ext = new FSFastExtension();
+        Map<String, FSFunctionExtension> added = addFunctions(ext, "Aa", "AaBB", "x", "y", "z");
+        ext.freeze();
+        assertFinds(ext, added);
+        assertNull(ext.getFunction("BB"));
+        assertNull(ext.getFunction("BBAa"));
+        assertNull(ext.getFunction("AaAa"));
+    }
+
+    @Test
+    public void emptyTables() throws FSException {
+        FSFastExtension ext = new FSFastExtension();
+        ext.freeze();
+        assertNull(ext.getFunction("f"));
+        try {
+            ext.getVar("v");
+            fail();
+        } catch (FSUnsupportedException expected) {
+        }
+    }
+
+    @Test
+    public void variablesAndArrays() throws FSException {
+        final Map<String, Object> values = new HashMap<>();
+        FSVarExtension var = new FSVarExtension() {
+            public Object getVar(String name) {
+                return values.get(name);
+            }
+
+            public void setVar(String name, Object value) {
+                values.put(name, value);
+            }
+        };
+        FSArrayExtension array = new FSArrayExtension() {
+            public Object getVar(String name, Object index) {
+                return values.get(name + index);
+            }
+
+            public void setVar(String name, Object index, Object value) {
+                values.put(name + index, value);
+            }
+        };
+
+        FSFastExtension ext = new FSFastExtension();
+        for (String name : COLLIDING) {
+            ext.addVarExtension(name, var);
+            ext.addArrayExtension(name, array);
+        }
+        ext.addVarExtension("v", var);
+        ext.freeze();
+
+        for (String name : COLLIDING) {
+            ext.setVar(name, name.length());
+            assertEquals(name.length(), ext.getVar(name));
+            ext.setVar(name, 3, name);
+            assertEquals(name, ext.getVar(name, 3));
+        }
+        ext.setVar("v", 1);
+        assertEquals(1, ext.getVar("v"));
+        try {
+            ext.getVar("v", 0);
+            fail();
+        } catch (FSUnsupportedException expected) {
+        }
+        try {
+            ext.setVar("w", 1);
+            fail();
+        } catch (FSUnsupportedException expected) {
+        }
+    }
+
+    @Test
+    public void addingAfterFreeze() {
+        FSFastExtension ext = new FSFastExtension();
+        addFunctions(ext, "f");
+        ext.freeze();
+        FSFunctionExtension f = ext.getFunction("f");
+        ext.freeze();
+        assertSame(f, ext.getFunction("f"));
+
+        try {
+            ext.addFunctionExtension("g", function("g"));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            ext.addVarExtension("v", null);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            ext.addArrayExtension("a", null);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNull(ext.getFunction("g"));
+    }
+
+    @Test
+    public void calledFromScript() throws Exception {
+        FSFastExtension ext = new FSFastExtension();
+        addFunctions(ext, COLLIDING);
+        ext.freeze();
+        for (boolean compiled : new boolean[]{false, true}) {
+            FScript script = new FScript();
+            script.setCompiled(compiled);
+            script.registerExtension(ext);
+            script.load(new StringReader("return Aa(1) + BB(2) + AaBB(3)\n"));
+            assertEquals("Aa1BB2AaBB3", script.run());
+        }
+        assertFalse(new FSFastExtension().isFrozen());
+    }
+}
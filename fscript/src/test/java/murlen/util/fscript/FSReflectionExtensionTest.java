@@ -0,0 +1,351 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Dotted names reaching objects through FSReflectionExtension, read and
+ * written through fields or getters and setters, the objects made by
+ * create(), getClass() and null(), and arrays, Lists and Maps indexed by
+ * obj[i].
+ */
+public class FSReflectionExtensionTest {
+
+    private static final String NODE = "create(\"" + Node.class.getName() + "\")";
+
+    public static class Node {
+        public int value;
+        public Node next;
+        private String name = "";
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = "<" + name + ">";
+        }
+
+        public String kind(String s) {
+            return "string";
+        }
+
+        public String kind(Object o) {
+            return "object";
+        }
+    }
+
+    public static class Containers {
+        public Object[] objects = {"a", 1};
+        public String[] strings = {"x", "y"};
+        public int[] ints = {1, 2, 3};
+        public double[] doubles = {0.5, 1.5};
+        public long[] longs = {10, 20};
+        public boolean[] flags = {false, true};
+        public List<Object> list = new ArrayList<Object>(Arrays.asList(1, "b", 2.5));
+        public Map<Object, Object> map = new HashMap<>();
+        public Node node = new Node();
+    }
+
+    private static Object run(boolean compiled, String... lines) throws IOException, FSException {
+        FScript script = new FScript();
+        script.registerExtension(new FSReflectionExtension());
+        script.setCompiled(compiled);
+        script.setCompileThresholds(1, 1);
+        script.load(new StringReader(String.join("\n", lines) + "\n"));
+        return script.run();
+    }
+
+    @Test
+    public void fieldsAndProperties() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            assertEquals(5, run(compiled,
+                    "object a = " + NODE,
+                    "a.value = 2",
+                    "a.value = a.value + 3",
+                    "return a.value"));
+            //through setName and getName, the name is not capitalized
+            assertEquals("<x>", run(compiled,
+                    "object a = " + NODE,
+                    "a.Name = \"x\"",
+                    "return a.Name"));
+        }
+    }
+
+    @Test
+    public void chainedPaths() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            assertEquals(7, run(compiled,
+                    "object a = " + NODE,
+                    "a.next = " + NODE,
+                    "a.next.next = " + NODE,
+                    "a.next.next.value = 4",
+                    "a.next.value = a.next.next.value + 3",
+                    "return a.next.value"));
+            assertEquals("<y>", run(compiled,
+                    "object a = " + NODE,
+                    "a.next = " + NODE,
+                    "a.next.setName(\"y\")",
+                    "return a.next.getName()"));
+            try {
+                run(compiled,
+                        "object a = " + NODE,
+                        "return a.next.value");
+                fail();
+            } catch (FSException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("variable a.next is null"));
+            }
+        }
+    }
+
+    @Test
+    public void emptySegments() throws IOException {
+        String[] statements = {
+                "n = a.",
+                "n = a..value",
+                "a..value = 1",
+                "a.next..setName(\"z\")",
+                "n = a.next.",
+        };
+        for (boolean compiled : new boolean[]{false, true}) {
+            for (String statement : statements) {
+                try {
+                    run(compiled,
+                            "int n = 0",
+                            "object a = " + NODE,
+                            "a.next = " + NODE,
+                            statement);
+                    fail(statement);
+                } catch (FSException e) {
+                    assertTrue(statement + ": " + e.getMessage(), e.getMessage().contains("invalid name"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void createInLoops() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            Object all = run(compiled,
+                    "object all = create(\"java.util.ArrayList\", 5)",
+                    "object m",
+                    "int i = 0",
+                    "while i < 5",
+                    "  m = create(\"java.util.HashMap\")",
+                    "  m.put(\"i\", i)",
+                    "  all.add(m)",
+                    "  i = i + 1",
+                    "endwhile",
+                    "return all");
+            List<?> list = (List<?>) ((FSObject) all).getObject();
+            assertEquals(5, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                assertEquals(i, ((Map<?, ?>) list.get(i)).get("i"));
+                if (i > 0)
+                    assertNotSame(list.get(i - 1), list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void constructorsByArguments() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            assertEquals("ab", run(compiled,
+                    "object b = create(\"java.lang.StringBuilder\", \"a\")",
+                    "b = create(\"java.lang.StringBuilder\", 16)",
+                    "b.append(\"ab\")",
+                    "return b.toString()"));
+            //no constructor takes a double
+            assertNull(run(compiled, "return create(\"java.lang.StringBuilder\", 1.5)"));
+        }
+    }
+
+    @Test
+    public void classesAndTypedNulls() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            assertEquals(12, run(compiled,
+                    "object c = getClass(\"java.lang.Integer\")",
+                    "return c.parseInt(\"12\")"));
+            String[] missing = {
+                    "create(\"no.such.Missing\")",
+                    "getClass(\"no.such.Missing\")",
+            };
+            for (String call : missing) {
+                try {
+                    run(compiled, "object o = " + call);
+                    fail(call);
+                } catch (FSException e) {
+                    assertTrue(call + ": " + e.getMessage(), e.getMessage().contains("no.such.Missing"));
+                }
+            }
+        }
+    }
+
+    //scripts read null( as the null literal, so hosts call null() themselves
+    @Test
+    public void typedNulls() throws FSException {
+        FSReflectionExtension extension = new FSReflectionExtension();
+        for (String type : new String[]{"java.lang.String", "java.lang.Object"}) {
+            FSObject typed = (FSObject) extension.callFunction("null", new ArrayList<Object>(Arrays.asList(type)));
+            assertNull(typed.getObject());
+            assertEquals(type, typed.getNullClass().getName());
+            assertSame(typed.getNullClass(), ((FSObject) extension.callFunction("getClass", new ArrayList<Object>(Arrays.asList(type)))).getObject());
+        }
+        Object string = extension.callFunction("null", new ArrayList<Object>(Arrays.asList("java.lang.String")));
+        Object object = extension.callFunction("null", new ArrayList<Object>(Arrays.asList("java.lang.Object")));
+        assertEquals("string", extension.objectMethod(new Node(), "kind", new Object[]{string}));
+        assertEquals("object", extension.objectMethod(new Node(), "kind", new Object[]{object}));
+        try {
+            extension.callFunction("null", new ArrayList<Object>(Arrays.asList("no.such.Missing")));
+            fail();
+        } catch (FSException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no.such.Missing"));
+        }
+    }
+
+    @Test
+    public void classesOfTheContextLoader() throws Exception {
+        URL classes = Node.class.getProtectionDomain().getCodeSource().getLocation();
+        FScript script = new FScript();
+        script.registerExtension(new FSReflectionExtension());
+        script.load(new StringReader("return " + NODE + "\n"));
+        assertSame(Node.class, ((FSObject) script.run()).getObject().getClass());
+
+        //a loader with a copy of Node of its own, which the cache must not mix up
+        Thread thread = Thread.currentThread();
+        ClassLoader context = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, null)) {
+            thread.setContextClassLoader(loader);
+            Class<?> other = ((FSObject) script.run()).getObject().getClass();
+            assertEquals(Node.class.getName(), other.getName());
+            assertSame(loader, other.getClassLoader());
+            assertSame(other, ((FSObject) script.run()).getObject().getClass());
+        } finally {
+            thread.setContextClassLoader(context);
+        }
+        assertSame(Node.class, ((FSObject) script.run()).getObject().getClass());
+    }
+
+    @Test
+    public void indexedReads() throws IOException, FSException {
+        String make = "object c = create(\"" + Containers.class.getName() + "\")";
+        for (boolean compiled : new boolean[]{false, true}) {
+            assertEquals("a1xy", run(compiled, make,
+                    "object o = c.objects",
+                    "return o[0] + o[1] + c.strings[0] + c.strings[1]"));
+            assertEquals(6, run(compiled, make,
+                    "int s = 0",
+                    "int i = 0",
+                    "while i < 3",
+                    "  s = s + c.ints[i]",
+                    "  i = i + 1",
+                    "endwhile",
+                    "return s"));
+            assertEquals(2.0, run(compiled, make, "return c.doubles[0] + c.doubles[1]"));
+            //other primitive arrays, normalized like method results
+            assertEquals(20L, ((FSObject) run(compiled, make, "return c.longs[1]")).getObject());
+            assertEquals(true, ((FSObject) run(compiled, make, "return c.flags[1]")).getObject());
+            assertEquals("1b2.5", run(compiled, make,
+                    "object l = c.list",
+                    "return \"\" + l[0] + l[1] + l[2]"));
+            assertEquals(7, run(compiled, make,
+                    "object m = c.map",
+                    "m.put(\"k\", 7)",
+                    "return m[\"k\"]"));
+            //an FSObject index is unwrapped
+            assertEquals(2, run(compiled, make,
+                    "object i = create(\"java.lang.Integer\", 1)",
+                    "return c.ints[i]"));
+        }
+    }
+
+    @Test
+    public void indexedWrites() throws IOException, FSException {
+        String make = "object c = create(\"" + Containers.class.getName() + "\")";
+        for (boolean compiled : new boolean[]{false, true}) {
+            Containers c = (Containers) ((FSObject) run(compiled, make,
+                    "c.objects[0] = 4",
+                    "c.strings[1] = \"z\"",
+                    "c.ints[2] = c.ints[0] + 5",
+                    "c.doubles[0] = 3",
+                    "c.longs[1] = 5",
+                    "object l = c.list",
+                    "l[1] = \"q\"",
+                    "object m = c.map",
+                    "m[\"k\"] = 8",
+                    "m[2] = c.node",
+                    "return c")).getObject();
+            assertEquals(Arrays.asList(4, 1), Arrays.asList(c.objects));
+            assertEquals(Arrays.asList("x", "z"), Arrays.asList(c.strings));
+            assertEquals(6, c.ints[2]);
+            assertEquals(3.0, c.doubles[0], 0);
+            assertEquals(5L, c.longs[1]);
+            assertEquals(Arrays.asList(1, "q", 2.5), c.list);
+            assertEquals(8, c.map.get("k"));
+            //values and keys are unwrapped
+            assertSame(c.node, c.map.get(2));
+        }
+    }
+
+    @Test
+    public void indexedErrors() throws IOException {
+        String make = "object c = create(\"" + Containers.class.getName() + "\")";
+        String[][] cases = {
+                {"return c.ints[3]", "Could not access c.ints[3]"},
+                {"c.strings[-1] = \"a\"", "Could not access c.strings[-1]"},
+                {"return c.ints[\"a\"]", "index of c.ints is not an int"},
+                {"object l = c.list\nl[5] = 1", "Could not access l[5]"},
+                {"c.ints[0] = \"a\"", "Could not access c.ints[0]"},
+                {"return c.node[0]", "variable c.node is not an array, List or Map"},
+                {"c.node[0] = 1", "variable c.node is not an array, List or Map"},
+                {"c.node = c.node.next\nreturn c.node[0]", "variable c.node is null"},
+        };
+        for (boolean compiled : new boolean[]{false, true}) {
+            for (String[] test : cases) {
+                try {
+                    run(compiled, make, test[0]);
+                    fail(test[0]);
+                } catch (FSException e) {
+                    assertTrue(test[0] + ": " + e.getMessage(), e.getMessage().contains(test[1]));
+                }
+            }
+        }
+    }
+
+    //indexed names which are not script objects belong to the host
+    @Test
+    public void hostArrays() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            FScript script = new FScript() {
+                final int[] host = {5, 6};
+
+                @Override
+                public Object getVar(String name, Object index) throws FSException {
+                    if (name.equals("host")) return host[(Integer) index];
+                    return super.getVar(name, index);
+                }
+            };
+            script.registerExtension(new FSReflectionExtension());
+            script.setCompiled(compiled);
+            script.setCompileThresholds(1, 1);
+            script.load(new StringReader("int n = 1\nreturn host[0] + host[n]\n"));
+            assertEquals(11, script.run());
+        }
+    }
+}
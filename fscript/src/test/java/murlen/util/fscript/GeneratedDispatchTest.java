@@ -0,0 +1,173 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSExtension;
+import murlen.util.fscript.api.FSFunction;
+import murlen.util.fscript.api.FSFunction0;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunctionN;
+import murlen.util.fscript.api.FSVariable;
+import net.waterfallflower.fscriptrenewed.api.LibFunctionExtension;
+import net.waterfallflower.fscriptrenewed.api.LibVarExtension;
+import net.waterfallflower.fscriptrenewed.common.math.MathLibrary;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The dispatch classes ExtensionProcessor generates while compiling, which
+ * must behave like an FSAnnotatedExtension of the same library.
+ */
+public class GeneratedDispatchTest {
+
+    //generates DispatchedDispatch
+    public static class Dispatched {
+        @FSVariable
+        public int count;
+
+        @FSVariable("limit")
+        public static final int MAX = 3;
+
+        private String label = "x";
+
+        @FSFunction
+        public void bump() {
+            count++;
+        }
+
+        @FSFunction("twice")
+        public static long doubled(long a) {
+            return a * 2;
+        }
+
+        @FSFunction
+        public boolean positive(int a) {
+            return a > 0;
+        }
+
+        @FSFunction
+        public String join(String a, Object b, double c) {
+            return a + b + c;
+        }
+
+        @FSFunction
+        public int all(Object... args) {
+            return args.length;
+        }
+
+        @FSFunction
+        public char first(String s) throws Exception {
+            if (s.isEmpty())
+                throw new Exception("empty");
+            return s.charAt(0);
+        }
+
+        @FSVariable("label")
+        public String getLabel() {
+            return label;
+        }
+
+        @FSVariable("label")
+        public void setLabel(String label) {
+            this.label = label;
+        }
+    }
+
+    private static Object call(FSExtension ext, String name, Object... params) throws FSException {
+        return ext.callFunction(name, new ArrayList<>(Arrays.asList(params)));
+    }
+
+    //what a call gives, or which kind of error it raised
+    private static Object outcome(FSExtension ext, String name, Object... params) {
+        try {
+            return call(ext, name, params);
+        } catch (FSUnsupportedException e) {
+            return "unsupported";
+        } catch (FSException e) {
+            return "error";
+        }
+    }
+
+    @Test
+    public void functionObjects() throws FSException {
+        DispatchedDispatch ext = new DispatchedDispatch(new Dispatched());
+        assertEquals(new HashSet<>(Arrays.asList("bump", "twice", "positive", "join", "all", "first")),
+                new HashSet<>(ext.getFunctionNames()));
+        assertEquals(new HashSet<>(Arrays.asList("count", "limit", "label")), new HashSet<>(ext.getVarNames()));
+        assertTrue(ext.getArrayNames().isEmpty());
+        assertTrue(ext.getFunction("bump") instanceof FSFunction0);
+        assertTrue(ext.getFunction("twice") instanceof FSFunction1);
+        assertEquals("a21.5", ((FSFunctionN) ext.getFunction("join")).call("a", 2, 1.5));
+        assertEquals(2, ((FSFunctionN) ext.getFunction("all")).call(1, 2));
+        assertNull(ext.getFunction("doubled"));
+        assertEquals(ext.getFunctionNames().size() + ext.getVarNames().size(), ext.extensions().length);
+    }
+
+    @Test
+    public void sameAsAnnotatedExtension() throws FSException {
+        Dispatched generated = new Dispatched();
+        Dispatched reflected = new Dispatched();
+        FSExtension a = new DispatchedDispatch(generated);
+        FSExtension b = new FSAnnotatedExtension(reflected);
+        Object[][] calls = {
+                {"bump"}, {"bump", 1},
+                {"twice", 21}, {"twice", Integer.MAX_VALUE}, {"twice", "x"},
+                {"positive", 1}, {"positive", 0},
+                {"join", "a", "b", 2}, {"join", "a", "b"},
+                {"all"}, {"all", 1, 2, 3, 4},
+                {"first", "xy"}, {"first", ""},
+                {"nosuch"}};
+        for (Object[] c : calls) {
+            Object[] params = Arrays.copyOfRange(c, 1, c.length);
+            assertEquals(Arrays.toString(c), outcome(b, (String) c[0], params), outcome(a, (String) c[0], params));
+        }
+        assertEquals(reflected.count, generated.count);
+
+        for (FSExtension ext : new FSExtension[]{a, b}) {
+            assertEquals(3, ext.getVar("limit"));
+            ext.setVar("count", 7);
+            ext.setVar("label", "y");
+            try {
+                ext.setVar("limit", 1);
+                fail();
+            } catch (FSUnsupportedException e) {
+                fail();
+            } catch (FSException expected) {
+            }
+            try {
+                ext.getVar("nosuch");
+                fail();
+            } catch (FSUnsupportedException expected) {
+            }
+        }
+        assertEquals(7, generated.count);
+        assertEquals("y", generated.getLabel());
+    }
+
+    @Test
+    public void mathLibrary() throws IOException, FSException {
+        FSFastExtension ext = new FSFastExtension();
+        for (Object o : new MathLibrary().getExtensions()) {
+            if (o instanceof LibFunctionExtension)
+                ext.addFunctionExtension(((LibFunctionExtension) o).getName(), (LibFunctionExtension) o);
+            else
+                ext.addVarExtension(((LibVarExtension) o).getName(), (LibVarExtension) o);
+        }
+        ext.freeze();
+        for (boolean compiled : new boolean[]{false, true}) {
+            FScript script = new FScript();
+            script.setCompiled(compiled);
+            script.registerExtension(ext);
+            script.load(new StringReader("return abs(-2) + floor(math_PI) + ceil(0.5) + round(2.5)\n"));
+            assertEquals(9.0, script.run());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSExtension;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * The inline caches of compiled code calling the host.
+ */
+public class HostSiteTest {
+
+    //an extension handling nothing, counting how often it was asked
+    private static final class Declining implements FSExtension {
+        int asked;
+
+        public Object getVar(String name) throws FSException {
+            asked++;
+            throw new FSUnsupportedException(name);
+        }
+
+        public Object getVar(String name, Object index) throws FSException {
+            asked++;
+            throw new FSUnsupportedException(name);
+        }
+
+        public void setVar(String name, Object value) throws FSException {
+            asked++;
+            throw new FSUnsupportedException(name);
+        }
+
+        public void setVar(String name, Object index, Object value) throws FSException {
+            asked++;
+            throw new FSUnsupportedException(name);
+        }
+
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            asked++;
+            throw new FSUnsupportedException(name);
+        }
+    }
+
+    //an extension with one variable
+    private static final class Value implements FSExtension {
+        final Object value;
+
+        Value(Object value) {
+            this.value = value;
+        }
+
+        public Object getVar(String name) throws FSException {
+            if (name.equals("v")) return value;
+            throw new FSUnsupportedException(name);
+        }
+
+        public Object getVar(String name, Object index) throws FSException {
+            throw new FSUnsupportedException(name);
+        }
+
+        public void setVar(String name, Object value) throws FSException {
+            throw new FSUnsupportedException(name);
+        }
+
+        public void setVar(String name, Object index, Object value) throws FSException {
+            throw new FSUnsupportedException(name);
+        }
+
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            throw new FSUnsupportedException(name);
+        }
+    }
+
+    //a host knowing nothing, counting how often it was asked
+    private static final class Counting extends FScript {
+        int asked;
+
+        @Override
+        public Object getVar(String name) throws FSException {
+            asked++;
+            return super.getVar(name);
+        }
+
+        @Override
+        public void setVar(String name, Object value) throws FSException {
+            asked++;
+            super.setVar(name, value);
+        }
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            asked++;
+            return super.callFunction(name, params);
+        }
+    }
+
+    private static void runFailing(FScript script) throws IOException {
+        try {
+            script.run();
+            fail();
+        } catch (FSException expected) {
+        }
+    }
+
+    @Test
+    public void hostAskedOncePerAccess() throws IOException {
+        for (String line : new String[]{"return nosuch", "nosuch = 1", "return nosuch(1)", "return nosuch(1, 2, 3)"}) {
+            Counting script = new Counting();
+            Declining ext = new Declining();
+            script.registerExtension(ext);
+            script.load(new StringReader(line + "\n"));
+            for (int n = 1; n <= 3; n++) {
+                runFailing(script);
+                assertEquals(line, n, script.asked);
+                assertEquals(line, n, ext.asked);
+            }
+        }
+    }
+
+    @Test
+    public void handlerPerHost() throws IOException, FSException {
+        CompiledScript script = new CompiledScript(new StringReader("return v\n"));
+        FScript[] hosts = new FScript[3];
+        Declining[] declining = new Declining[hosts.length];
+        for (int n = 0; n < hosts.length; n++) {
+            hosts[n] = new FScript();
+            declining[n] = new Declining();
+            hosts[n].registerExtension(declining[n]);
+            hosts[n].registerExtension(new Value(n));
+        }
+        for (int round = 0; round < 4; round++) {
+            for (int n = 0; n < hosts.length; n++)
+                assertEquals(n, script.newContext(hosts[n]).run());
+        }
+        //each host looked the name up once
+        for (Declining d : declining)
+            assertEquals(1, d.asked);
+    }
+
+    @Test
+    public void keepsTheLastHosts() {
+        HostSite site = new HostSite("v");
+        FScript[] hosts = new FScript[10];
+        FSExtension[] extensions = new FSExtension[hosts.length];
+        for (int n = 0; n < hosts.length; n++) {
+            hosts[n] = new FScript();
+            extensions[n] = new Value(n);
+            site.setHandler(hosts[n], 1, extensions[n]);
+        }
+        assertNull(site.handler(hosts[0], 1));
+        assertNull(site.handler(hosts[1], 1));
+        for (int n = 2; n < hosts.length; n++)
+            assertSame(extensions[n], site.handler(hosts[n], 1).extension);
+        assertNull(site.handler(hosts[5], 2));
+
+        //a new handler of a host replaces its old one
+        site.setHandler(hosts[5], 2, null);
+        assertNull(site.handler(hosts[5], 2).extension);
+        assertSame(extensions[9], site.handler(hosts[9], 1).extension);
+    }
+}
@@ -0,0 +1,37 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The classes JavaGen defines, which the tier tests can not tell apart
+ * from Code running the same instructions.
+ */
+public class JavaGenTest {
+
+    private static Code compile(String... lines) throws IOException {
+        LineLoader code = new LineLoader();
+        for (String line : lines)
+            code.addLine(line);
+        return CodeGen.generate(new ScriptCompiler(code, new Frame.Scope()).compile(0, code.lineCount() - 1));
+    }
+
+    @Test
+    public void definesClassesInThePackage() throws IOException {
+        Code c = compile(
+                "int a = 1",
+                "while a < 10",
+                "  a = a + 1",
+                "endwhile");
+        JavaCode generated = JavaGen.generate(c, 0, c.code.length);
+        assertNotNull(generated);
+        assertTrue(generated.getClass().getName(), generated.getClass().getName().startsWith("murlen.util.fscript.GeneratedCode"));
+        assertFalse(Modifier.isPublic(JavaCode.class.getModifiers()));
+    }
+}
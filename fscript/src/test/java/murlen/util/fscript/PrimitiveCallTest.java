@@ -0,0 +1,176 @@
+package murlen.util.fscript;
+
+import murlen.util.fscript.api.FSDoubleFunction;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSFunctionExtension;
+import murlen.util.fscript.api.FSFunctionN;
+import murlen.util.fscript.api.FSFunctionProvider;
+import murlen.util.fscript.api.FSIntFunction;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Host functions called by compiled code without boxing an int or double
+ * argument, or building a list of more than two arguments.
+ */
+public class PrimitiveCallTest {
+
+    //interpreted, bytecode, and bytecode turned into JVM classes at once
+    private static final boolean[] COMPILED = {false, true, true};
+    private static final int[] THRESHOLD = {0, 0, 1};
+
+    //an int function, which the interpreter calls as an FSFunction1
+    private static final class Square implements FSIntFunction, FSFunction1 {
+        int unboxed, boxed;
+
+        public int callInt(int a) {
+            unboxed++;
+            return a * a;
+        }
+
+        public Object call1(Object a) throws FSException {
+            boxed++;
+            return FSConvert.toInt(a) * FSConvert.toInt(a);
+        }
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            return FSFunction1.super.callFunction(name, params);
+        }
+    }
+
+    //the same for doubles
+    private static final class Half implements FSDoubleFunction, FSFunction1 {
+        int unboxed, boxed;
+
+        public double callDouble(double a) {
+            unboxed++;
+            return a / 2;
+        }
+
+        public Object call1(Object a) throws FSException {
+            boxed++;
+            return FSConvert.toDouble(a) / 2;
+        }
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            return FSFunction1.super.callFunction(name, params);
+        }
+    }
+
+    //adds up its arguments, counting the calls given a list
+    private static final class Sum implements FSFunctionN {
+        int lists;
+
+        public Object call(Object... args) throws FSException {
+            int sum = 0;
+            for (Object o : args)
+                sum += FSConvert.toInt(o);
+            return sum;
+        }
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            lists++;
+            return FSFunctionN.super.callFunction(name, params);
+        }
+    }
+
+    private static final class Functions extends BasicExtension implements FSFunctionProvider {
+        final Square square = new Square();
+        final Half half = new Half();
+        final Sum sum = new Sum();
+
+        public FSFunctionExtension getFunction(String name) {
+            switch (name) {
+                case "sq": return square;
+                case "half": return half;
+                case "sum": return sum;
+                default: return null;
+            }
+        }
+    }
+
+    private static Object run(FScript script, String... lines) throws IOException, FSException {
+        script.load(new StringReader(String.join("\n", lines) + "\n"));
+        return script.run();
+    }
+
+    @Test
+    public void primitiveArguments() throws IOException, FSException {
+        for (int tier = 0; tier < COMPILED.length; tier++) {
+            FScript script = new FScript();
+            script.setCompiled(COMPILED[tier]);
+            script.setCompileThresholds(THRESHOLD[tier], THRESHOLD[tier]);
+            Functions f = new Functions();
+            script.registerExtension(f);
+            Object result = run(script,
+                    "function f(int n)",
+                    "  int i = 0",
+                    "  int s = 0",
+                    "  double d = 0.0",
+                    "  while i < n",
+                    "    s = s + sq(i)",
+                    "    d = d + half(i * 1.5) + half(i)",
+                    "    i = i + 1",
+                    "  endwhile",
+                    "  return s + \" \" + d",
+                    "endfunction",
+                    "return f(5) + \" \" + f(3)");
+            assertEquals("30 12.5 5 3.75", result);
+            if (COMPILED[tier]) {
+                assertEquals(8, f.square.unboxed);
+                assertEquals(16, f.half.unboxed);
+                assertEquals(0, f.square.boxed + f.half.boxed);
+            } else {
+                assertEquals(0, f.square.unboxed + f.half.unboxed);
+            }
+        }
+    }
+
+    @Test
+    public void manyArgumentsInAnArray() throws IOException, FSException {
+        for (int tier = 0; tier < COMPILED.length; tier++) {
+            FScript script = new FScript();
+            script.setCompiled(COMPILED[tier]);
+            script.setCompileThresholds(THRESHOLD[tier], THRESHOLD[tier]);
+            Functions f = new Functions();
+            script.registerExtension(f);
+            Object result = run(script,
+                    "function f(int n)",
+                    "  return sum(n, 2, 3) + sum(n, n, n, n, n)",
+                    "endfunction",
+                    "return f(1) + f(2)");
+            assertEquals(28, result);
+            if (COMPILED[tier])
+                assertEquals(0, f.sum.lists);
+        }
+    }
+
+    @Test
+    public void scriptFunctionFirst() throws IOException, FSException {
+        for (int tier = 0; tier < COMPILED.length; tier++) {
+            FScript script = new FScript();
+            script.setCompiled(COMPILED[tier]);
+            script.setCompileThresholds(THRESHOLD[tier], THRESHOLD[tier]);
+            Functions f = new Functions();
+            script.registerExtension(f);
+            Object result = run(script,
+                    "function sq(int n)",
+                    "  return n + 1",
+                    "endfunction",
+                    "function f(int n)",
+                    "  return sq(n) + sq(n * 2)",
+                    "endfunction",
+                    "return f(3) + f(4)");
+            assertEquals(4 + 7 + 5 + 9, result);
+            assertEquals(0, f.square.unboxed + f.square.boxed);
+        }
+    }
+}
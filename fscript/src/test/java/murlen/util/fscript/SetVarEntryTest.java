@@ -0,0 +1,100 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Assignments to host variables and arrays go to the first handler only.
+ */
+public class SetVarEntryTest {
+
+    //an extension storing the variables and arrays with the given names
+    private static final class Store extends BasicExtension {
+        final Map<String, Object> values = new HashMap<>();
+        final String prefix;
+
+        Store(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Object getVar(String name) throws FSException {
+            if (!name.startsWith(prefix)) throw FSUnsupportedException.UNSUPPORTED;
+            return values.get(name);
+        }
+
+        @Override
+        public void setVar(String name, Object value) throws FSException {
+            if (!name.startsWith(prefix)) throw FSUnsupportedException.UNSUPPORTED;
+            values.put(name, value);
+        }
+
+        @Override
+        public void setVar(String name, Object index, Object value) throws FSException {
+            if (!name.startsWith(prefix)) throw FSUnsupportedException.UNSUPPORTED;
+            values.put(name + "[" + index + "]", value);
+        }
+    }
+
+    //a host storing what no extension takes
+    private static final class Host extends FScript {
+        final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public void setVar(String name, Object value) {
+            values.put(name, value);
+        }
+
+        @Override
+        public void setVar(String name, Object index, Object value) {
+            values.put(name + "[" + index + "]", value);
+        }
+    }
+
+    @Test
+    public void firstHandlerOnly() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            Host script = new Host();
+            script.setCompiled(compiled);
+            Store a = new Store("a");
+            Store all = new Store("");
+            script.registerExtension(a);
+            script.registerExtension(all);
+            script.load(new StringReader("a1 = 1\nb1 = 2\na2[3] = 4\nb2[5] = 6\n"));
+            script.run();
+
+            assertEquals(1, a.values.get("a1"));
+            assertEquals(4, a.values.get("a2[3]"));
+            assertEquals(2, all.values.get("b1"));
+            assertEquals(6, all.values.get("b2[5]"));
+            assertNull(all.values.get("a1"));
+            assertNull(all.values.get("a2[3]"));
+            assertEquals(0, script.values.size());
+        }
+    }
+
+    @Test
+    public void hostTakesTheRest() throws IOException, FSException {
+        for (boolean compiled : new boolean[]{false, true}) {
+            Host script = new Host();
+            script.setCompiled(compiled);
+            Store a = new Store("a");
+            script.registerExtension(a);
+            script.load(new StringReader("a1 = 1\nb1 = 2\nb2[5] = 6\n"));
+            script.run();
+
+            assertEquals(1, a.values.get("a1"));
+            assertEquals(2, script.values.get("b1"));
+            //the indexed setVar, not the plain one
+            assertEquals(6, script.values.get("b2[5]"));
+            assertNull(script.values.get("b2"));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the same scripts interpreted, interpreted with hot loops compiled
+ * on the fly, compiled to bytecode, and compiled with hot code turned
+ * into JVM classes, and checks every tier gives the same output, result
+ * and error.
+ */
+public class TierParityTest {
+
+    private enum Tier {
+        INTERPRETED(false, 0),
+        INTERPRETED_HOT(false, 1),
+        COMPILED(true, 0),
+        COMPILED_HOT(true, 1);
+
+        final boolean compiled;
+        final int threshold;
+
+        Tier(boolean compiled, int threshold) {
+            this.compiled = compiled;
+            this.threshold = threshold;
+        }
+    }
+
+    //an FScript whose println writes to a buffer
+    private static final class Recorder extends FScript {
+        final StringBuilder out = new StringBuilder();
+
+        @Override
+        public Object callFunction(String name, ArrayList<Object> params) throws FSException {
+            if (name.equals("println")) {
+                for (Object o : params)
+                    out.append(o);
+                out.append('\n');
+                return null;
+            }
+            return super.callFunction(name, params);
+        }
+    }
+
+    //what a run shows of itself: the output, then the result or the error
+    private static String describe(Recorder script, Object result) {
+        return script.out + "result=" + result + ((result == null) ? "" : " (" + result.getClass().getSimpleName() + ")");
+    }
+
+    //not the token: compiled code only knows the last one of the statement
+    private static String describe(Recorder script, FSException e) {
+        String[] error = script.getError();
+        String s = script.out + "error=" + e.getMessage().trim().split("\n")[0];
+        if (error != null)
+            s += " line=" + error[1] + " text=" + error[2].trim();
+        return s;
+    }
+
+    private static Recorder load(Tier tier, String... lines) throws IOException {
+        Recorder script = new Recorder();
+        script.setCompiled(tier.compiled);
+        script.setCompileThresholds(tier.threshold, tier.threshold);
+        script.load(new StringReader(String.join("\n", lines) + "\n"));
+        return script;
+    }
+
+    //runs the script twice in a tier, the second run finding hot code already compiled
+    private static String run(Tier tier, String... lines) throws IOException {
+        Recorder script = load(tier, lines);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            script.out.setLength(0);
+            try {
+                s.append(describe(script, script.run()));
+            } catch (FSException e) {
+                s.append(describe(script, e));
+            }
+            s.append("\n--\n");
+        }
+        return s.toString();
+    }
+
+    //checks all tiers agree, and returns what they gave
+    private static String assertSameInAllTiers(String... lines) throws IOException {
+        String expected = run(Tier.INTERPRETED, lines);
+        for (Tier tier : Tier.values())
+            assertEquals(tier.name() + " differs", expected, run(tier, lines));
+        return expected;
+    }
+
+    private static void assertResult(String expected, String... lines) throws IOException {
+        String s = assertSameInAllTiers(lines);
+        String first = s.substring(0, s.indexOf("\n--\n"));
+        assertEquals(expected, first.substring(first.lastIndexOf('\n') + 1));
+    }
+
+    @Test
+    public void arithmetic() throws IOException {
+        assertResult("result=13 (Integer)",
+                "int a = 3",
+                "println(a + 2 * 3, \" \", 10 - 4 - 3, \" \", 7 / 2, \" \", 7 % 3, \" \", -a + 4)",
+                "println((2 + 3) * 4, \" \", 2 * (3 + 4) - 1, \" \", 100000 * 3)",
+                "println(1 < 2, 2 <= 2, 3 > 4, 3 >= 3, 1 == 1, 1 != 1, !0, !1)",
+                "println(1 == 1 && 2 == 3, 1 == 1 || 2 == 3)",
+                "println(\"a\" < \"b\", \"x\" + 1 + 2)",
+                "return a + 10");
+    }
+
+    @Test
+    public void intDoubleMixing() throws IOException {
+        assertResult("result=17.5 (Double)",
+                "int a = 7",
+                "double d = 2.5",
+                "println(a * d, \" \", d + a, \" \", d - a, \" \", a / d, \" \", 7.0 / 2, \" \", a / 2)",
+                "double x = 3.0",
+                "println(x, \" \", x / 2, \" \", x * a, \" \", x == 3.0, \" \", d < 3.0)",
+                "int i = 0",
+                "double acc = 0.0",
+                "while i < 100",
+                "  acc = acc + i * 0.5",
+                "  i = i + 1",
+                "endwhile",
+                "println(acc, \" \", i)",
+                "return a * d");
+    }
+
+    @Test
+    public void loops() throws IOException {
+        assertResult("result=1093 (Integer)",
+                "int i = 0",
+                "int s = 0",
+                "while i < 10",
+                "  i = i + 1",
+                "  if i % 2 == 0 then s = s + i",
+                "  if i == 3",
+                "    s = s + 100",
+                "  elseif i == 4",
+                "    s = s + 1000",
+                "  elseif i == 5",
+                "    s = s + 10000",
+                "  else",
+                "    if i == 9",
+                "      s = s - 10037",
+                "    endif",
+                "  endif",
+                "endwhile",
+                "return s");
+    }
+
+    @Test
+    public void loopEntersCompiledCodeWhileRunning() throws IOException {
+        //long enough for a hot loop to move on halfway, with its variables live
+        assertResult("result=4999950000 (String)",
+                "int i = 0",
+                "int s = 0",
+                "int hi = 0",
+                "string t = \"\"",
+                "while i < 100000",
+                "  s = s + i",
+                "  if s > 1000000000",
+                "    s = s - 1000000000",
+                "    hi = hi + 1",
+                "  endif",
+                "  i = i + 1",
+                "endwhile",
+                "int j = 0",
+                "while j < 3",
+                "  int k = 0",
+                "  while k < 4",
+                "    k = k + 1",
+                "  endwhile",
+                "  j = j + k",
+                "endwhile",
+                "println(i, \" \", j)",
+                "t = t + hi",
+                "if s < 100000000 then t = t + \"0\"",
+                "return t + s");
+    }
+
+    @Test
+    public void loopReturnsFromFunction() throws IOException {
+        assertResult("result=8 (Integer)",
+                "function first(int limit)",
+                "  int i = 1",
+                "  while 1",
+                "    if i * i > limit",
+                "      return i",
+                "    endif",
+                "    i = i + 1",
+                "  endwhile",
+                "endfunction",
+                "println(first(10), \" \", first(30))",
+                "return first(50)");
+    }
+
+    @Test
+    public void recursion() throws IOException {
+        assertResult("result=55 (Integer)",
+                "int calls = 0",
+                "function fib(int n)",
+                "  calls = calls + 1",
+                "  if n < 2",
+                "    return n",
+                "  endif",
+                "  return fib(n - 1) + fib(n - 2)",
+                "endfunction",
+                "function half(int n, int depth)",
+                "  if depth == 0",
+                "    return n * 1.0",
+                "  endif",
+                "  return half(n, depth - 1) / 2",
+                "endfunction",
+                "function noret(string s)",
+                "  println(\"noret \", s)",
+                "endfunction",
+                "println(fib(15), \" \", calls)",
+                "println(half(10, 3))",
+                "println(noret(\"x\"))",
+                "return fib(10)");
+    }
+
+    @Test
+    public void typeMismatch() throws IOException {
+        assertSameInAllTiers(
+                "int g = 1",
+                "int x = \"a\"");
+    }
+
+    @Test
+    public void mixedComparison() throws IOException {
+        String s = assertSameInAllTiers(
+                "int a = 7",
+                "double d = 2.5",
+                "println(d > 2.0)",
+                "println(a > d)");
+        assertEquals("1\nerror=Type Mismatch for operator > line=3 text=println(a > d)",
+                s.substring(0, s.indexOf("\n--\n")));
+    }
+
+    @Test
+    public void typeMismatchInLoop() throws IOException {
+        String s = assertSameInAllTiers(
+                "int i = 0",
+                "while i < 5",
+                "  i = i + 1",
+                "  println(i)",
+                "  if i == 3",
+                "    string s = \"a\" - 1",
+                "  endif",
+                "endwhile");
+        assertEquals("1\n2\n3\nerror=", s.substring(0, s.indexOf("error=") + 6));
+    }
+
+    @Test
+    public void errorInFunction() throws IOException {
+        assertSameInAllTiers(
+                "function f(int n)",
+                "  if n == 2",
+                "    return nosuch(n)",
+                "  endif",
+                "  return n",
+                "endfunction",
+                "int i = 0",
+                "while i < 4",
+                "  println(f(i))",
+                "  i = i + 1",
+                "endwhile");
+    }
+
+    @Test
+    public void syntaxError() throws IOException {
+        assertSameInAllTiers(
+                "int a = 1",
+                "println(a)",
+                "a = 2 * * 3",
+                "println(a)");
+    }
+
+    @Test
+    public void callScriptFunction() throws IOException, FSException {
+        String expected = null;
+        for (Tier tier : Tier.values()) {
+            Recorder script = load(tier,
+                    "function sq(int n)",
+                    "  return n * n",
+                    "endfunction");
+            script.run();
+            ArrayList<Object> values = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+                values.add(script.callScriptFunction("sq", new ArrayList<Object>(Arrays.asList(i))));
+            if (expected == null)
+                expected = values.toString();
+            assertEquals(tier.name() + " differs", expected, values.toString());
+        }
+        assertEquals("[0, 1, 4, 9, 16]", expected);
+    }
+
+    //the token of a failing line comes from the code compiled last
+    private static String errorToken(FScript script, String line) throws IOException {
+        script.load(new StringReader(line + "\n"));
+        try {
+            script.run();
+        } catch (FSException e) {
+            return script.getError()[3];
+        }
+        return null;
+    }
+
+    @Test
+    public void errorTokenAfterReset() throws IOException {
+        FScript script = new FScript();
+        assertEquals("TT_PLUS:null", errorToken(script, "int a = 1 + + 2"));
+        script.reset();
+        assertEquals(errorToken(new FScript(), "int a = \"x\""), errorToken(script, "int a = \"x\""));
+        assertEquals("TT_EOL:null", script.getError()[3]);
+    }
+}
@@ -0,0 +1,43 @@
+package murlen.util.fscript;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * When interpreted code moves on to compiled code.
+ */
+public class TieringTest {
+
+    @Test
+    public void loopOfInterpretedFunctionCompiledOnce() throws IOException, FSException {
+        FScript host = new FScript();
+        host.setCompiled(false);
+        host.setCompileThresholds(0, 1); //the function stays interpreted, its loop does not
+
+        LineLoader code = new LineLoader();
+        code.addLine("function f(int n)");
+        code.addLine("  int i = 0");
+        code.addLine("  while i < n");
+        code.addLine("    i = i + 1");
+        code.addLine("  endwhile");
+        code.addLine("  return i");
+        code.addLine("endfunction");
+        code.addLine("return f(5)");
+        code.addLine("return f(7) + f(3)");
+        Parser p = new Parser(host);
+        p.setCode(code);
+        assertEquals(5, p.parse(0, 7));
+
+        LineLoader.Jump loop = code.getJump(2, 2);
+        assertNotNull(loop.loop);
+        Code compiled = loop.loop;
+
+        assertEquals(10, p.parse(8, 8));
+        assertSame(compiled, loop.loop);
+    }
+}
@@ -0,0 +1,141 @@
+package murlen.util.fscript.introspection;
+
+import murlen.util.fscript.FSObject;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Methods and constructors cached by the classes of the arguments.
+ */
+public class ClassMapTest {
+
+    public static class Overloads {
+        public Overloads() {
+        }
+
+        public Overloads(int n) {
+        }
+
+        public Overloads(String s) {
+        }
+
+        public String m(Integer a, Object b) {
+            return "io";
+        }
+
+        public String m(Object a, Integer b) {
+            return "oi";
+        }
+
+        public String n(String s) {
+            return "s";
+        }
+
+        public String n(Object o) {
+            return "o";
+        }
+    }
+
+    @Test
+    public void methodsByArgumentClasses() throws Exception {
+        ClassMap map = new ClassMap(String.class);
+        Method byString = String.class.getMethod("indexOf", String.class);
+        Method byChar = String.class.getMethod("indexOf", int.class);
+        for (int n = 0; n < 2; n++) {
+            assertEquals(byString, map.findMethod("indexOf", new Object[]{"b"}));
+            assertEquals(byChar, map.findMethod("indexOf", new Object[]{98}));
+            assertNull(map.findMethod("indexOf", new Object[]{1.5}));
+            assertNull(map.findMethod("nosuch", new Object[0]));
+        }
+        //the name is compared by equals, not identity
+        assertEquals(byString, map.findMethod(new String("indexOf"), new Object[]{"b"}));
+    }
+
+    @Test
+    public void nullArguments() throws Exception {
+        ClassMap map = new ClassMap(Overloads.class);
+        Method s = Overloads.class.getMethod("n", String.class);
+        Method o = Overloads.class.getMethod("n", Object.class);
+        assertEquals(o, map.findMethod("n", new Object[]{null}));
+        assertEquals(s, map.findMethod("n", new Object[]{new FSObject(null, String.class)}));
+        assertEquals(o, map.findMethod("n", new Object[]{new FSObject(null)}));
+        assertEquals(s, map.findMethod("n", new Object[]{new FSObject("x")}));
+    }
+
+    @Test
+    public void invokersShared() throws Exception {
+        ClassMap map = new ClassMap(ArrayList.class);
+        MethodInvoker a = map.findInvoker("add", new Object[]{"x"});
+        assertSame(a, map.findInvoker("add", new Object[]{"y"}));
+        //another key resolving to the same method
+        assertSame(a, map.findInvoker("add", new Object[]{1}));
+        assertEquals(a.getMethod(), map.findMethod("add", new Object[]{"z"}));
+        assertNotSame(a, map.findInvoker("add", new Object[]{1, "x"}));
+        assertNull(map.findInvoker("add", new Object[0]));
+    }
+
+    @Test
+    public void ambiguousOnce() throws Exception {
+        ClassMap map = new ClassMap(Overloads.class);
+        try {
+            map.findMethod("m", new Object[]{1, 2});
+            fail();
+        } catch (MethodMap.AmbiguousException expected) {
+        }
+        //remembered as a miss
+        assertNull(map.findMethod("m", new Object[]{1, 2}));
+        assertEquals("io", map.findInvoker("m", new Object[]{1, "x"}).invoke(new Overloads(), new Object[]{1, "x"}));
+    }
+
+    @Test
+    public void constructors() {
+        ClassMap map = new ClassMap(Overloads.class);
+        for (int n = 0; n < 2; n++) {
+            assertEquals(0, map.findConstructor(new Object[0]).getConstructor().getParameterCount());
+            assertEquals(int.class, map.findConstructor(new Object[]{1}).getConstructor().getParameterTypes()[0]);
+            assertEquals(String.class, map.findConstructor(new Object[]{"x"}).getConstructor().getParameterTypes()[0]);
+            assertNull(map.findConstructor(new Object[]{1.5}));
+            assertNull(map.findConstructor(new Object[]{null}));
+        }
+        assertSame(map.findConstructor(new Object[]{"x"}), map.findConstructor(new Object[]{"y"}));
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        final ClassMap map = new ClassMap(StringBuilder.class);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<MethodInvoker>> results = new ArrayList<>();
+            for (int n = 0; n < 64; n++) {
+                final Object arg = (n % 2 == 0) ? "x" : (Object) 1;
+                results.add(pool.submit(new Callable<MethodInvoker>() {
+                    public MethodInvoker call() throws Exception {
+                        return map.findInvoker("append", new Object[]{arg});
+                    }
+                }));
+            }
+            MethodInvoker[] seen = new MethodInvoker[2];
+            for (int n = 0; n < results.size(); n++) {
+                MethodInvoker invoker = results.get(n).get();
+                if (seen[n % 2] == null)
+                    seen[n % 2] = map.findInvoker("append", new Object[]{(n % 2 == 0) ? "x" : (Object) 1});
+                assertSame(seen[n % 2], invoker);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package murlen.util.fscript.introspection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The class maps IntrospectorBase keeps per class.
+ */
+public class IntrospectorBaseTest {
+
+    public static class Probe {
+        public int value() {
+            return 1;
+        }
+    }
+
+    //defines its own copy of Probe, counting how often it is asked for it
+    static final class ProbeLoader extends ClassLoader {
+        int asked;
+
+        ProbeLoader() {
+            super(IntrospectorBaseTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Probe.class.getName()))
+                return super.loadClass(name, resolve);
+            asked++;
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c != null)
+                    return c;
+                try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    for (int n; (n = in.read(buffer)) > 0; )
+                        bytes.write(buffer, 0, n);
+                    return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+    }
+
+    //counts the class maps created
+    static final class Counting extends IntrospectorBase {
+        int created;
+
+        Counting() {
+        }
+
+        Counting(int maxClasses) {
+            super(maxClasses);
+        }
+
+        @Override
+        protected synchronized ClassMap createClassMap(Class<?> c) {
+            created++;
+            return super.createClassMap(c);
+        }
+    }
+
+    @Test
+    public void oneMapPerClass() throws Exception {
+        Counting introspector = new Counting();
+        ClassMap map = introspector.getClassMap(String.class);
+        assertSame(map, introspector.getClassMap(String.class));
+        assertSame(String.class, map.getCachedClass());
+        assertNotSame(map, introspector.getClassMap(Integer.class));
+        assertEquals(2, introspector.created);
+        assertEquals(String.class.getMethod("length"), introspector.getMethod(String.class, "length", new Object[0]));
+
+        //another introspector has maps of its own
+        assertNotSame(map, new IntrospectorBase().getClassMap(String.class));
+
+        introspector.clearCache();
+        assertNotSame(map, introspector.getClassMap(String.class));
+        assertEquals(3, introspector.created);
+    }
+
+    @Test
+    public void classesOfOtherLoaders() throws Exception {
+        Counting introspector = new Counting();
+        Class<?> a = new ProbeLoader().loadClass(Probe.class.getName());
+        Class<?> b = new ProbeLoader().loadClass(Probe.class.getName());
+        assertNotSame(a, b);
+        ClassMap mapA = introspector.getClassMap(a);
+        ClassMap mapB = introspector.getClassMap(b);
+        ClassMap own = introspector.getClassMap(Probe.class);
+        assertNotSame(mapA, mapB);
+        //the same name under another Class does not flush the others
+        assertSame(mapA, introspector.getClassMap(a));
+        assertSame(own, introspector.getClassMap(Probe.class));
+        assertEquals(3, introspector.created);
+        assertEquals(a, introspector.getInvoker(a, "value", new Object[0]).getMethod().getDeclaringClass());
+        assertEquals(1, introspector.getInvoker(b, "value", new Object[0]).invoke(b.getDeclaredConstructor().newInstance(), new Object[0]));
+    }
+
+    @Test
+    public void sameMapFromThreads() throws Exception {
+        final IntrospectorBase introspector = new IntrospectorBase();
+        final Class<?>[] classes = {String.class, Integer.class, ArrayList.class, Probe.class};
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ClassMap>> results = new ArrayList<>();
+            for (int n = 0; n < 200; n++) {
+                final Class<?> c = classes[n % classes.length];
+                results.add(pool.submit(new Callable<ClassMap>() {
+                    public ClassMap call() {
+                        return introspector.getClassMap(c);
+                    }
+                }));
+            }
+            for (int n = 0; n < results.size(); n++)
+                assertSame(introspector.getClassMap(classes[n % classes.length]), results.get(n).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void loadsClassesOncePerLoader() throws Exception {
+        IntrospectorBase introspector = new IntrospectorBase();
+        ProbeLoader first = new ProbeLoader();
+        ProbeLoader second = new ProbeLoader();
+        Class<?> c = introspector.loadClass(first, Probe.class.getName());
+        assertSame(c, introspector.loadClass(first, Probe.class.getName()));
+        assertEquals(1, first.asked);
+
+        Class<?> other = introspector.loadClass(second, Probe.class.getName());
+        assertNotSame(c, other);
+        assertSame(c, introspector.loadClass(first, Probe.class.getName()));
+        assertSame(other, introspector.loadClass(second, Probe.class.getName()));
+        assertEquals(1, first.asked);
+        assertEquals(1, second.asked);
+    }
+
+    @Test
+    public void boundedLeastRecentlyUsed() throws Exception {
+        Counting introspector = new Counting(2);
+        ClassMap string = introspector.getClassMap(String.class);
+        ClassMap integer = introspector.getClassMap(Integer.class);
+        Thread.sleep(1);
+        assertSame(string, introspector.getClassMap(String.class));
+        //Integer was used longest ago
+        introspector.getClassMap(Long.class);
+        assertSame(string, introspector.getClassMap(String.class));
+        ClassMap again = introspector.getClassMap(Integer.class);
+        assertNotSame(integer, again);
+        assertSame(again, introspector.getClassMap(Integer.class));
+        assertEquals(4, introspector.created);
+
+        IntrospectorBase.Statistics stats = introspector.getStatistics();
+        assertEquals(2, stats.getEntries());
+        assertEquals(4, stats.getMisses());
+        assertEquals(3, stats.getHits());
+        assertEquals(2, stats.getEvictions());
+    }
+
+    @Test
+    public void unboundedNeverEvicts() {
+        IntrospectorBase introspector = new IntrospectorBase();
+        Class<?>[] classes = {String.class, Integer.class, Long.class, Double.class, Object.class};
+        for (int round = 0; round < 2; round++) {
+            for (Class<?> c : classes)
+                introspector.getClassMap(c);
+        }
+        IntrospectorBase.Statistics stats = introspector.getStatistics();
+        assertEquals(classes.length, stats.getEntries());
+        assertEquals(classes.length, stats.getHits());
+        assertEquals(0, stats.getEvictions());
+        try {
+            new IntrospectorBase(-1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void doesNotKeepClasses() throws Exception {
+        IntrospectorBase introspector = new IntrospectorBase();
+        ProbeLoader loader = new ProbeLoader();
+        Class<?> c = introspector.loadClass(loader, Probe.class.getName());
+        introspector.getInvoker(c, "value", new Object[0]);
+        assertEquals(1, introspector.getStatistics().getEntries());
+        WeakReference<ClassLoader> ref = new WeakReference<>(loader);
+        loader = null;
+        c = null;
+        for (int n = 0; n < 50 && ref.get() != null; n++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        for (int n = 0; n < 50 && introspector.getStatistics().getEntries() > 0; n++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, introspector.getStatistics().getEntries());
+    }
+}
@@ -0,0 +1,117 @@
+package murlen.util.fscript.introspection;
+
+import murlen.util.fscript.FSException;
+import murlen.util.fscript.FSObject;
+import murlen.util.fscript.FSReflectionExtension;
+import murlen.util.fscript.FScript;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Method and constructor invokers, which must fail like Method.invoke and
+ * Constructor.newInstance do.
+ */
+public class InvokerTest {
+
+    private static MethodInvoker method(Class<?> c, String name, Class<?>... types) throws NoSuchMethodException {
+        return new MethodInvoker(c.getMethod(name, types));
+    }
+
+    private static void assertRejected(MethodInvoker invoker, Object target, Object... params) throws Exception {
+        try {
+            invoker.invoke(target, params);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        //the same as reflection
+        try {
+            invoker.getMethod().invoke(target, params);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void callsAndNormalizes() throws Exception {
+        MethodInvoker size = method(ArrayList.class, "size");
+        assertEquals(2, size.invoke(new ArrayList<>(Arrays.asList(1, 2)), new Object[0]));
+        //FSObjects unwrapped, primitives widened, results wrapped
+        MethodInvoker max = method(Math.class, "max", double.class, double.class);
+        assertEquals(3.0, max.invoke(null, new Object[]{1, new FSObject(3)}));
+        Object o = method(Long.class, "valueOf", long.class).invoke("ignored", new Object[]{5});
+        assertTrue(o instanceof FSObject);
+        assertEquals(5L, ((FSObject) o).getObject());
+    }
+
+    @Test
+    public void rejectsLikeMethodInvoke() throws Exception {
+        MethodInvoker size = method(ArrayList.class, "size");
+        assertRejected(size, ArrayList.class);
+        assertRejected(size, "x");
+        assertRejected(size, new ArrayList<>(), 1);
+        try {
+            size.invoke(null, new Object[0]);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        MethodInvoker max = method(Math.class, "max", double.class, double.class);
+        assertRejected(max, null, 1, "2");
+        assertRejected(max, null, 1, null);
+        assertRejected(max, null, 1);
+        assertRejected(method(Character.class, "isDigit", char.class), null, 1);
+        assertRejected(method(Boolean.class, "toString", boolean.class), null, 1);
+    }
+
+    @Test
+    public void exceptionsOfTheMethod() throws Exception {
+        try {
+            method(Integer.class, "parseInt", String.class).invoke(null, new Object[]{"x"});
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    @Test
+    public void constructors() throws Exception {
+        ConstructorInvoker builder = new ConstructorInvoker(StringBuilder.class.getConstructor(String.class));
+        assertEquals("ab", ((FSObject) builder.newInstance(new Object[]{"ab"})).getObject().toString());
+        for (Object[] args : new Object[][]{{1}, {"a", "b"}, {}}) {
+            try {
+                builder.newInstance(args);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        ConstructorInvoker list = new ConstructorInvoker(ArrayList.class.getConstructor(int.class));
+        try {
+            list.newInstance(new Object[]{-1});
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void messageInScripts() throws IOException {
+        FScript script = new FScript();
+        script.registerExtension(new FSReflectionExtension());
+        script.load(new StringReader("object c = getClass(\"java.util.ArrayList\")\nreturn c.size()\n"));
+        try {
+            script.run();
+            fail();
+        } catch (FSException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Error calling method size object is not an instance of declaring class"));
+        }
+    }
+}
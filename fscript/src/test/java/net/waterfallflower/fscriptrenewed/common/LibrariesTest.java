@@ -0,0 +1,145 @@
+package net.waterfallflower.fscriptrenewed.common;
+
+import murlen.util.fscript.BasicExtension;
+import murlen.util.fscript.FSException;
+import murlen.util.fscript.FSUnsupportedException;
+import murlen.util.fscript.FScript;
+import murlen.util.fscript.Parser;
+import murlen.util.fscript.api.FSExtension;
+import murlen.util.fscript.api.FSFunction1;
+import murlen.util.fscript.api.FSParserExtension;
+import net.waterfallflower.fscriptrenewed.api.FSLibrary;
+import net.waterfallflower.fscriptrenewed.api.LibFunctionExtension;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Libraries found through ServiceLoader, see the FSLibrary services of the
+ * test resources.
+ */
+public class LibrariesTest {
+
+    //a library of one function, counting how often it made its extensions
+    public static class Shared implements FSLibrary {
+        static int made;
+
+        public String getName() {
+            return "test_shared";
+        }
+
+        public Object[] getExtensions() {
+            made++;
+            return new Object[]{new Inc()};
+        }
+    }
+
+    public static class Inc implements LibFunctionExtension, FSFunction1 {
+        public String getName() {
+            return "inc";
+        }
+
+        public Object call1(Object a) {
+            return (Integer) a + 1;
+        }
+    }
+
+    //a library with a parser extension, which cannot be shared
+    public static class WithParser implements FSLibrary {
+        static int made;
+
+        public String getName() {
+            return "test_parser";
+        }
+
+        public Object[] getExtensions() {
+            made++;
+            return new Object[]{new ParserAware()};
+        }
+    }
+
+    public static class ParserAware extends BasicExtension implements FSParserExtension {
+        public void setParser(Parser parser) {
+        }
+
+        @Override
+        public Object getVar(String name) throws FSException {
+            if (name.equals("aware")) return 1;
+            throw FSUnsupportedException.UNSUPPORTED;
+        }
+    }
+
+    //a host recording the extensions registered
+    private static final class Host extends FScript {
+        final List<FSExtension> registered = new ArrayList<>();
+
+        @Override
+        public void registerExtension(FSExtension extension) {
+            registered.add(extension);
+            super.registerExtension(extension);
+        }
+    }
+
+    @Test
+    public void findsProviders() {
+        assertTrue(Libraries.getNames().contains("math"));
+        assertTrue(Libraries.getNames().contains("test_shared"));
+        assertTrue(Libraries.getNames().contains("test_parser"));
+        assertFalse(Libraries.importLibrary(new FScript(), "nosuch"));
+    }
+
+    @Test
+    public void extensionsSharedAndMadeOnce() {
+        Host a = new Host();
+        Host b = new Host();
+        assertTrue(Libraries.importLibrary(a, "test_shared"));
+        assertTrue(Libraries.importLibrary(a, "test_shared"));
+        assertTrue(Libraries.importLibrary(b, "test_shared"));
+        assertEquals(1, a.registered.size());
+        assertSame(a.registered.get(0), b.registered.get(0));
+        //by the first import of any test
+        assertEquals(1, Shared.made);
+    }
+
+    @Test
+    public void parserExtensionsNotShared() {
+        Host a = new Host();
+        Host b = new Host();
+        int made = WithParser.made;
+        assertTrue(Libraries.importLibrary(a, "test_parser"));
+        assertTrue(Libraries.importLibrary(a, "test_parser"));
+        assertTrue(Libraries.importLibrary(b, "test_parser"));
+        assertEquals(2, WithParser.made - made);
+        assertEquals(1, a.registered.size());
+        assertNotSame(a.registered.get(0), b.registered.get(0));
+    }
+
+    @Test
+    public void loadImports() throws IOException, FSException {
+        FScript script = new FScript();
+        Libraries.load(script, new StringReader("$import test_shared\n$import math\n$other\nreturn inc(1) + floor(2.5)\n"));
+        assertEquals(4.0, script.run());
+
+        script = new FScript();
+        Libraries.load(script, new StringReader("$import test_shared\n  $import  test_parser\nreturn inc(2) + aware\n"));
+        assertEquals(4, script.run());
+
+        for (String line : new String[]{"$import nosuch", "$import"}) {
+            try {
+                Libraries.load(new FScript(), new StringReader(line + "\n"));
+                fail(line);
+            } catch (FSException expected) {
+            }
+        }
+    }
+}
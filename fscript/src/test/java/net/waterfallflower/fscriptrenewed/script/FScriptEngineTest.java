@@ -0,0 +1,175 @@
+package net.waterfallflower.fscriptrenewed.script;
+
+import murlen.util.fscript.FSReflectionExtension;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * FScriptEngine through the javax.script API.
+ */
+public class FScriptEngineTest {
+
+    public interface Inc {
+        int inc(int n);
+    }
+
+    @Test
+    public void foundByName() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("fscript");
+        assertNotNull(engine);
+        assertEquals("MULTITHREADED", engine.getFactory().getParameter("THREADING"));
+    }
+
+    @Test
+    public void evalWithBindings() throws ScriptException {
+        FScriptEngine engine = new FScriptEngine();
+        engine.put("x", 20);
+        assertEquals(22, engine.eval("return x + 2\n"));
+
+        engine.eval("x = x * 2\n");
+        assertEquals(40, engine.get("x"));
+
+        Bindings b = engine.createBindings();
+        b.put("x", 1);
+        assertEquals(3, engine.eval("return x + 2\n", b));
+        assertEquals(40, engine.get("x"));
+    }
+
+    @Test
+    public void printlnUsesTheWriter() throws ScriptException {
+        FScriptEngine engine = new FScriptEngine();
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        engine.eval("println(\"a\", 1)\n");
+        assertEquals("a1" + System.lineSeparator(), out.toString());
+    }
+
+    @Test
+    public void compiledOnceRunMany() throws ScriptException {
+        FScriptEngine engine = new FScriptEngine();
+        CompiledScript script = engine.compile("int s = 0\nint i = 0\nwhile i < n\n  s = s + i\n  i = i + 1\nendwhile\nreturn s\n");
+        for (int n = 0; n < 20; n++) {
+            Bindings b = engine.createBindings();
+            b.put("n", n);
+            assertEquals(n * (n - 1) / 2, script.eval(b));
+        }
+    }
+
+    @Test
+    public void malformedLineIsAScriptException() {
+        FScriptEngine engine = new FScriptEngine();
+        try {
+            engine.eval("z = q(\n");
+            fail();
+        } catch (ScriptException expected) {
+            assertNotNull(expected.getCause());
+        }
+        try {
+            engine.compile("z = q(\n");
+            fail();
+        } catch (ScriptException expected) {
+        }
+    }
+
+    @Test
+    public void runtimeErrorHasTheLine() {
+        FScriptEngine engine = new FScriptEngine();
+        try {
+            engine.eval("int a = 1\nint b = \"x\"\n");
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(2, e.getLineNumber());
+        }
+    }
+
+    @Test
+    public void reflectionExtension() throws ScriptException {
+        FScriptEngine engine = new FScriptEngine();
+        engine.registerExtension(new FSReflectionExtension());
+        assertEquals(2, engine.eval("object o = create(\"java.util.ArrayList\")\no.add(\"a\")\no.add(\"b\")\nreturn o.size()\n"));
+    }
+
+    @Test
+    public void invocable() throws ScriptException, NoSuchMethodException {
+        FScriptEngine engine = new FScriptEngine();
+        engine.eval("function sq(int n)\n  return n * n\nendfunction\n");
+        assertEquals(9, engine.invokeFunction("sq", 3));
+        assertNull(engine.getInterface(Inc.class));
+
+        engine.eval("function inc(int n)\n  return n + 1\nendfunction\n");
+        assertEquals(5, engine.getInterface(Inc.class).inc(4));
+        try {
+            engine.invokeFunction("sq", 3);
+            fail();
+        } catch (NoSuchMethodException expected) {
+        }
+    }
+
+    @Test
+    public void otherContextsDoNotRetargetInvocable() throws ScriptException, NoSuchMethodException {
+        FScriptEngine engine = new FScriptEngine();
+        engine.eval("function f(int n)\n  return n\nendfunction\n");
+
+        ScriptContext other = new SimpleScriptContext();
+        engine.eval("function g(int n)\n  return n\nendfunction\n", other);
+        engine.eval("int k = 1\n", engine.createBindings());
+        assertEquals(1, engine.invokeFunction("f", 1));
+
+        //nothing was evaluated in a context set later
+        engine.setContext(other);
+        try {
+            engine.invokeFunction("f", 1);
+            fail();
+        } catch (NoSuchMethodException expected) {
+        }
+    }
+
+    @Test
+    public void invocableFromThreads() throws Exception {
+        final FScriptEngine engine = new FScriptEngine();
+        engine.eval("int calls = 0\nfunction count(int n)\n  calls = calls + 1\n  return n\nendfunction\n"
+                + "function total(int n)\n  return calls\nendfunction\n");
+        final CompiledScript other = engine.compile("function count(int n)\n  return 0 - n\nendfunction\n");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                final int n = t;
+                results.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        other.eval(engine.createBindings());
+                        int s = 0;
+                        for (int i = 0; i < 100; i++)
+                            s += (Integer) engine.invokeFunction("count", n);
+                        return s;
+                    }
+                }));
+            }
+            for (int t = 0; t < 64; t++)
+                assertEquals(100 * t, (int) results.get(t).get());
+            //no call was lost to another
+            assertEquals(6400, engine.invokeFunction("total", 0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}